@@ -0,0 +1,68 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.gmx.nosefish.fishylib.worldmath.FishyChunk;
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
+import net.gmx.nosefish.fishylib.worldmath.PackedPosition;
+
+/**
+ * Location to chunk conversions, object and packed.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkBenchmark {
+	private FishyLocationInt[] locations;
+	private long[] packed;
+	private FishyChunk chunk;
+	
+	@Setup
+	public void setup() {
+		locations = Fixtures.scatteredLocations(1024, 2000, 42L);
+		packed = new long[locations.length];
+		for (int i = 0; i < locations.length; i++) {
+			packed[i] = locations[i].toPackedPosition();
+		}
+		chunk = FishyChunk.getChunkContaining(locations[0]);
+	}
+	
+	@Benchmark
+	public void chunkContaining(Blackhole bh) {
+		for (FishyLocationInt location : locations) {
+			bh.consume(FishyChunk.getChunkContaining(location));
+		}
+	}
+	
+	@Benchmark
+	public void chunkContains(Blackhole bh) {
+		for (FishyLocationInt location : locations) {
+			bh.consume(chunk.contains(location));
+		}
+	}
+	
+	@Benchmark
+	public void packedChunkKey(Blackhole bh) {
+		for (long position : packed) {
+			bh.consume(PackedPosition.toChunkKey(position));
+		}
+	}
+}
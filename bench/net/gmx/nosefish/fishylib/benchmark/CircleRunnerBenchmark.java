@@ -0,0 +1,91 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.gmx.nosefish.fishylib.worldmath.CircleRunner;
+import net.gmx.nosefish.fishylib.worldmath.CircleRunner.IRunnableSpan;
+import net.gmx.nosefish.fishylib.worldmath.CircleRunner.IRunnableXY;
+import net.gmx.nosefish.fishylib.worldmath.IntTriConsumer;
+import net.gmx.nosefish.fishylib.worldmath.ShapeStencil;
+
+/**
+ * CircleRunner shapes, replayed from the cache and computed from scratch.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircleRunnerBenchmark {
+	@Param({"4", "16", "64"})
+	public int radius;
+	
+	private long sum;
+	
+	private final IRunnableXY point = new IRunnableXY() {
+		@Override
+		public void run(int x, int y) {
+			sum += x ^ y;
+		}
+	};
+	
+	private final IRunnableSpan span = new IRunnableSpan() {
+		@Override
+		public void run(int y, int xStart, int xEnd) {
+			sum += y ^ xStart ^ xEnd;
+		}
+	};
+	
+	private final IntTriConsumer block = new IntTriConsumer() {
+		@Override
+		public void accept(int x, int y, int z) {
+			sum += x ^ y ^ z;
+		}
+	};
+	
+	@Benchmark
+	public long filledCircle() {
+		CircleRunner.runOnCircle(100, -50, radius, true, point);
+		return sum;
+	}
+	
+	@Benchmark
+	public long circleOutline() {
+		CircleRunner.runOnCircle(100, -50, radius, false, point);
+		return sum;
+	}
+	
+	@Benchmark
+	public long filledCircleSpans() {
+		CircleRunner.runOnCircleSpans(100, -50, radius, true, span);
+		return sum;
+	}
+	
+	@Benchmark
+	public long sphere() {
+		CircleRunner.runOnSphere(100, 64, -50, radius, true, block);
+		return sum;
+	}
+	
+	@Benchmark
+	public void computeDiscStencil(Blackhole bh) {
+		ShapeStencil.clearCache();
+		bh.consume(ShapeStencil.get(ShapeStencil.Shape.DISC, radius));
+	}
+}
@@ -0,0 +1,97 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.gmx.nosefish.fishylib.worldmath.CuboidRTree;
+import net.gmx.nosefish.fishylib.worldmath.FishyCuboidInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
+
+/**
+ * "Which regions contain this location": R-tree against the linear
+ * containsLocation scan.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CuboidRTreeBenchmark {
+	@Param({"100", "1000", "10000"})
+	public int regions;
+	
+	private List<FishyCuboidInt> cuboids;
+	private CuboidRTree<FishyCuboidInt> tree;
+	private FishyLocationInt[] probes;
+	private int hits;
+	
+	private final CuboidRTree.Visitor<FishyCuboidInt> counter = new CuboidRTree.Visitor<FishyCuboidInt>() {
+		@Override
+		public boolean visit(FishyCuboidInt cuboid) {
+			hits++;
+			return true;
+		}
+	};
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(11L);
+		cuboids = new ArrayList<>(regions);
+		for (int i = 0; i < regions; i++) {
+			int x = random.nextInt(10000) - 5000;
+			int y = random.nextInt(100);
+			int z = random.nextInt(10000) - 5000;
+			cuboids.add(new FishyCuboidInt(Fixtures.WORLD,
+					x, y, z,
+					x + 4 + random.nextInt(60), y + 4 + random.nextInt(40), z + 4 + random.nextInt(60)));
+		}
+		tree = CuboidRTree.bulkLoad(Fixtures.WORLD, cuboids);
+		probes = Fixtures.scatteredLocations(1024, 5000, 13L);
+	}
+	
+	@Benchmark
+	public int linearScan() {
+		hits = 0;
+		for (FishyLocationInt probe : probes) {
+			for (FishyCuboidInt cuboid : cuboids) {
+				if (cuboid.containsLocation(probe)) {
+					hits++;
+				}
+			}
+		}
+		return hits;
+	}
+	
+	@Benchmark
+	public int rTree() {
+		hits = 0;
+		for (FishyLocationInt probe : probes) {
+			tree.queryContaining(probe, counter);
+		}
+		return hits;
+	}
+	
+	@Benchmark
+	public void bulkLoad(Blackhole bh) {
+		bh.consume(CuboidRTree.bulkLoad(Fixtures.WORLD, cuboids));
+	}
+}
@@ -0,0 +1,84 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.gmx.nosefish.fishylib.worldmath.FishyDirection;
+import net.gmx.nosefish.fishylib.worldmath.FishyVectorInt;
+
+/**
+ * FishyDirection lookups and conversions.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirectionBenchmark {
+	private double[] yaws;
+	private FishyVectorInt[] vectors;
+	private FishyDirection[] directions;
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(7L);
+		yaws = new double[1024];
+		vectors = new FishyVectorInt[1024];
+		for (int i = 0; i < yaws.length; i++) {
+			yaws[i] = random.nextDouble() * 720.0 - 360.0;
+			vectors[i] = new FishyVectorInt(random.nextInt(33) - 16, 0, random.nextInt(33) - 16);
+		}
+		directions = FishyDirection.cardinalDirections.toArray(new FishyDirection[0]);
+	}
+	
+	@Benchmark
+	public void nearestDirection(Blackhole bh) {
+		for (double yaw : yaws) {
+			bh.consume(FishyDirection.nearestDirection(yaw));
+		}
+	}
+	
+	@Benchmark
+	public void vectorNearestDirection(Blackhole bh) {
+		for (FishyVectorInt vector : vectors) {
+			bh.consume(vector.getNearestFishyDirection());
+		}
+	}
+	
+	@Benchmark
+	public void opposite(Blackhole bh) {
+		for (FishyDirection direction : directions) {
+			bh.consume(direction.opposite());
+		}
+	}
+	
+	@Benchmark
+	public void unitDoubleVector(Blackhole bh) {
+		for (FishyDirection direction : directions) {
+			bh.consume(direction.toUnitDoubleVector());
+		}
+	}
+	
+	@Benchmark
+	public void toCanaryDirection(Blackhole bh) {
+		for (FishyDirection direction : directions) {
+			bh.consume(direction.toCanaryDirection());
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.Random;
+
+import net.canarymod.api.world.DimensionType;
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyWorld;
+
+/**
+ * Shared test data. Nothing in here touches the server, so the
+ * benchmarks run without one.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+final class Fixtures {
+	static final FishyWorld WORLD = FishyWorld.factory("benchmark", DimensionType.fromName("NORMAL"));
+	
+	private Fixtures() {
+		// static methods only
+	}
+	
+	/**
+	 * Locations scattered over a square area, the way signs and
+	 * chests are scattered over a server's built-up area.
+	 * 
+	 * @param count
+	 * @param halfSize half the side length of the square
+	 * @param seed
+	 * @return the locations
+	 */
+	static FishyLocationInt[] scatteredLocations(int count, int halfSize, long seed) {
+		Random random = new Random(seed);
+		FishyLocationInt[] locations = new FishyLocationInt[count];
+		for (int i = 0; i < count; i++) {
+			locations[i] = new FishyLocationInt(WORLD,
+					random.nextInt(2 * halfSize) - halfSize,
+					random.nextInt(128),
+					random.nextInt(2 * halfSize) - halfSize);
+		}
+		return locations;
+	}
+	
+	/**
+	 * A dense block of locations, like a storage wall or a redstone build.
+	 * 
+	 * @param sizeX
+	 * @param sizeY
+	 * @param sizeZ
+	 * @return the locations
+	 */
+	static FishyLocationInt[] gridLocations(int sizeX, int sizeY, int sizeZ) {
+		FishyLocationInt[] locations = new FishyLocationInt[sizeX * sizeY * sizeZ];
+		int i = 0;
+		for (int x = 0; x < sizeX; x++) {
+			for (int y = 0; y < sizeY; y++) {
+				for (int z = 0; z < sizeZ; z++) {
+					locations[i++] = new FishyLocationInt(WORLD, x, 64 + y, z);
+				}
+			}
+		}
+		return locations;
+	}
+}
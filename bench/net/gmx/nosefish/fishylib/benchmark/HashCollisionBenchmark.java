@@ -0,0 +1,166 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.gmx.nosefish.fishylib.worldmath.FishyChunk;
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
+
+/**
+ * HashMap lookups keyed by locations and chunks on typical coordinate
+ * sets, with the current hash and with the old
+ * <code>Arrays.hashCode(coordinates) * 89 + worldName.hashCode()</code>.
+ * The setup prints the average and longest bucket chain of both.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashCollisionBenchmark {
+	public static enum CoordinateSet {
+		/** a solid 64 x 16 x 64 block of blocks, e.g. a redstone build */
+		BLOCK_GRID,
+		/** the 256 x 256 surface at y = 64 */
+		SURFACE,
+		/** 64 x 64 chunks around spawn */
+		CHUNK_GRID,
+		/** full-height columns, one per chunk, e.g. one machine per chunk */
+		CHUNK_COLUMNS
+	}
+	
+	@Param
+	public CoordinateSet coordinates;
+	
+	private Object[] keys;
+	private Object[] legacyKeys;
+	private Map<Object, Object> map;
+	private Map<Object, Object> legacyMap;
+	
+	@Setup
+	public void setup() {
+		List<FishyLocationInt> locations = new ArrayList<>();
+		switch (coordinates) {
+		case BLOCK_GRID:
+			for (FishyLocationInt location : Fixtures.gridLocations(64, 16, 64)) {
+				locations.add(location);
+			}
+			break;
+		case SURFACE:
+			for (int x = -128; x < 128; x++) {
+				for (int z = -128; z < 128; z++) {
+					locations.add(new FishyLocationInt(Fixtures.WORLD, x, 64, z));
+				}
+			}
+			break;
+		case CHUNK_GRID:
+			for (int x = -32; x < 32; x++) {
+				for (int z = -32; z < 32; z++) {
+					locations.add(new FishyChunk(Fixtures.WORLD, x, z));
+				}
+			}
+			break;
+		case CHUNK_COLUMNS:
+			for (int x = -8; x < 8; x++) {
+				for (int z = -8; z < 8; z++) {
+					for (int y = 0; y < 256; y++) {
+						locations.add(new FishyLocationInt(Fixtures.WORLD, x * 16, y, z * 16));
+					}
+				}
+			}
+			break;
+		}
+		keys = new Object[locations.size()];
+		legacyKeys = new Object[locations.size()];
+		map = new HashMap<>();
+		legacyMap = new HashMap<>();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = locations.get(i);
+			legacyKeys[i] = new LegacyKey(locations.get(i));
+			map.put(keys[i], keys[i]);
+			legacyMap.put(legacyKeys[i], legacyKeys[i]);
+		}
+		System.out.println();
+		System.out.println(coordinates + " current: " + chainStatistics(keys));
+		System.out.println(coordinates + " legacy:  " + chainStatistics(legacyKeys));
+	}
+	
+	@Benchmark
+	public void hashMapGet(Blackhole bh) {
+		for (Object key : keys) {
+			bh.consume(map.get(key));
+		}
+	}
+	
+	@Benchmark
+	public void legacyHashMapGet(Blackhole bh) {
+		for (Object key : legacyKeys) {
+			bh.consume(legacyMap.get(key));
+		}
+	}
+	
+	/**
+	 * Simulates HashMap's bucket selection.
+	 */
+	private static String chainStatistics(Object[] keys) {
+		int buckets = Integer.highestOneBit((int) (keys.length / 0.75F) - 1) << 1;
+		int[] chains = new int[buckets];
+		for (Object key : keys) {
+			int h = key.hashCode();
+			chains[(h ^ (h >>> 16)) & (buckets - 1)]++;
+		}
+		long comparisons = 0;
+		int longest = 0;
+		for (int chain : chains) {
+			comparisons += (long) chain * (chain + 1) / 2;
+			longest = Math.max(longest, chain);
+		}
+		return String.format("%.2f comparisons per successful lookup, longest chain %d", 
+				(double) comparisons / keys.length, longest);
+	}
+	
+	/**
+	 * Location key with the hash FishyLocationInt and FishyChunk used before.
+	 */
+	private static final class LegacyKey {
+		private final FishyLocationInt location;
+		
+		LegacyKey(FishyLocationInt location) {
+			this.location = location;
+		}
+		
+		@Override
+		public int hashCode() {
+			// Arrays.hashCode of the coordinate array, unrolled
+			int h = 31 + location.getIntX();
+			h = 31 * h + location.getIntY();
+			h = 31 * h + location.getIntZ();
+			return h * 89 + location.getWorld().hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return (other instanceof LegacyKey) && ((LegacyKey) other).location.equals(this.location);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.canarymod.api.world.DimensionType;
+import net.gmx.nosefish.fishylib.worldmath.FishyCuboidInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationDouble;
+import net.gmx.nosefish.fishylib.worldmath.FishyWorld;
+import net.gmx.nosefish.fishylib.worldmath.IFishyLocation;
+import net.gmx.nosefish.fishylib.worldmath.LocationBatch;
+
+/**
+ * Bulk distance and bounding box filtering, LocationBatch against
+ * a list of FishyLocationDouble objects.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationBatchBenchmark {
+	@Param({"1000", "10000"})
+	public int locations;
+	
+	private static final int CENTRES = 8;
+	private static final double RADIUS = 48.0;
+	
+	private List<FishyLocationDouble> objects;
+	private LocationBatch batch;
+	private IFishyLocation[] centres;
+	private FishyCuboidInt cuboid;
+	private int[] indices;
+	private double[] distances;
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(17L);
+		// a few locations in another world, like entities in the nether
+		FishyWorld nether = FishyWorld.factory("benchmark_NETHER", DimensionType.fromName("NETHER"));
+		objects = new ArrayList<>(locations);
+		batch = new LocationBatch(locations);
+		for (int i = 0; i < locations; i++) {
+			FishyLocationDouble location = new FishyLocationDouble(
+					(i % 10 == 0) ? nether : Fixtures.WORLD,
+					random.nextDouble() * 512.0 - 256.0,
+					random.nextDouble() * 128.0,
+					random.nextDouble() * 512.0 - 256.0);
+			objects.add(location);
+			batch.add(location);
+		}
+		centres = new IFishyLocation[CENTRES];
+		for (int c = 0; c < CENTRES; c++) {
+			centres[c] = new FishyLocationDouble(Fixtures.WORLD,
+					random.nextDouble() * 512.0 - 256.0,
+					64.0,
+					random.nextDouble() * 512.0 - 256.0);
+		}
+		cuboid = new FishyCuboidInt(Fixtures.WORLD, -64, 0, -64, 63, 127, 63);
+		indices = new int[locations];
+		distances = new double[locations];
+	}
+	
+	@Benchmark
+	public int objectsWithinDistance() {
+		int total = 0;
+		double limit = RADIUS * RADIUS;
+		for (IFishyLocation centre : centres) {
+			int count = 0;
+			for (int i = 0; i < objects.size(); i++) {
+				FishyLocationDouble location = objects.get(i);
+				if (location.getWorld().equals(centre.getWorld())) {
+					double dx = location.getDoubleX() - centre.getDoubleX();
+					double dy = location.getDoubleY() - centre.getDoubleY();
+					double dz = location.getDoubleZ() - centre.getDoubleZ();
+					if (dx * dx + dy * dy + dz * dz <= limit) {
+						indices[count++] = i;
+					}
+				}
+			}
+			total += count;
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public int batchWithinDistance() {
+		int total = 0;
+		for (IFishyLocation centre : centres) {
+			total += batch.filterWithinDistance(centre, RADIUS, indices);
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public double[] batchDistancesSquared() {
+		for (IFishyLocation centre : centres) {
+			batch.distancesSquared(centre, distances);
+		}
+		return distances;
+	}
+	
+	@Benchmark
+	public int objectsInCuboid() {
+		int count = 0;
+		for (int i = 0; i < objects.size(); i++) {
+			if (cuboid.containsLocation(objects.get(i))) {
+				indices[count++] = i;
+			}
+		}
+		return count;
+	}
+	
+	@Benchmark
+	public int batchInCuboid() {
+		return batch.filterInCuboid(cuboid, indices);
+	}
+	
+	@Benchmark
+	public int[] objectsNearestCentre() {
+		for (int i = 0; i < objects.size(); i++) {
+			FishyLocationDouble location = objects.get(i);
+			int nearest = -1;
+			double best = Double.POSITIVE_INFINITY;
+			for (int c = 0; c < centres.length; c++) {
+				if (location.getWorld().equals(centres[c].getWorld())) {
+					double dx = location.getDoubleX() - centres[c].getDoubleX();
+					double dy = location.getDoubleY() - centres[c].getDoubleY();
+					double dz = location.getDoubleZ() - centres[c].getDoubleZ();
+					double d = dx * dx + dy * dy + dz * dz;
+					if (d < best) {
+						best = d;
+						nearest = c;
+					}
+				}
+			}
+			indices[i] = nearest;
+		}
+		return indices;
+	}
+	
+	@Benchmark
+	public int[] batchNearestCentre() {
+		batch.nearestCentres(centres, indices, distances);
+		return indices;
+	}
+}
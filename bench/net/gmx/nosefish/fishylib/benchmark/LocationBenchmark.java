@@ -0,0 +1,71 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
+
+/**
+ * Hashing and equality of block locations, alone and in a HashSet.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationBenchmark {
+	private FishyLocationInt[] locations;
+	private FishyLocationInt[] copies;
+	private Set<FishyLocationInt> set;
+	
+	@Setup
+	public void setup() {
+		locations = Fixtures.gridLocations(32, 8, 32);
+		copies = new FishyLocationInt[locations.length];
+		for (int i = 0; i < locations.length; i++) {
+			copies[i] = new FishyLocationInt(locations[i].getWorld(), locations[i]);
+		}
+		set = new HashSet<>();
+		for (FishyLocationInt location : locations) {
+			set.add(location);
+		}
+	}
+	
+	@Benchmark
+	public void hashCodes(Blackhole bh) {
+		for (FishyLocationInt location : locations) {
+			bh.consume(location.hashCode());
+		}
+	}
+	
+	@Benchmark
+	public void equalsOtherInstance(Blackhole bh) {
+		for (int i = 0; i < locations.length; i++) {
+			bh.consume(locations[i].equals(copies[i]));
+		}
+	}
+	
+	@Benchmark
+	public void hashSetContains(Blackhole bh) {
+		for (FishyLocationInt copy : copies) {
+			bh.consume(set.contains(copy));
+		}
+	}
+}
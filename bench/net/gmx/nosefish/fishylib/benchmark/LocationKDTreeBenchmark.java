@@ -0,0 +1,91 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
+import net.gmx.nosefish.fishylib.worldmath.LocationKDTree;
+
+/**
+ * Nearest-neighbour queries, KD-tree against a linear scan,
+ * and the cost of rebuilding the tree.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationKDTreeBenchmark {
+	@Param({"100", "1000", "10000"})
+	public int locations;
+	
+	private List<FishyLocationInt> list;
+	private LocationKDTree<FishyLocationInt> tree;
+	private final LocationKDTree.Neighbours<FishyLocationInt> result = new LocationKDTree.Neighbours<>();
+	private FishyLocationInt[] probes;
+	
+	@Setup
+	public void setup() {
+		list = Arrays.asList(Fixtures.scatteredLocations(locations, 2000, 19L));
+		tree = LocationKDTree.build(Fixtures.WORLD, list);
+		probes = Fixtures.scatteredLocations(256, 2000, 23L);
+	}
+	
+	@Benchmark
+	public double linearNearest() {
+		double sum = 0.0;
+		for (FishyLocationInt probe : probes) {
+			double best = Double.POSITIVE_INFINITY;
+			for (FishyLocationInt location : list) {
+				double dx = location.getDoubleX() - probe.getDoubleX();
+				double dy = location.getDoubleY() - probe.getDoubleY();
+				double dz = location.getDoubleZ() - probe.getDoubleZ();
+				best = Math.min(best, dx * dx + dy * dy + dz * dz);
+			}
+			sum += best;
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	public double treeNearest() {
+		double sum = 0.0;
+		for (FishyLocationInt probe : probes) {
+			tree.nearest(probe, 1, result);
+			sum += result.getDistanceSquared(0);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	public int treeNearest8() {
+		int count = 0;
+		for (FishyLocationInt probe : probes) {
+			count += tree.nearest(probe, 8, result);
+		}
+		return count;
+	}
+	
+	@Benchmark
+	public LocationKDTree<FishyLocationInt> rebuild() {
+		tree.rebuild(list);
+		return tree;
+	}
+}
@@ -0,0 +1,122 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.gmx.nosefish.fishylib.datastructures.IntSet;
+import net.gmx.nosefish.fishylib.datastructures.LongSet;
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
+
+/**
+ * The primitive sets against the boxed collections they replaced:
+ * block id lookups and block position lookups.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveCollectionsBenchmark {
+	private final Set<Integer> boxedIds = new TreeSet<>();
+	private final IntSet ids = new IntSet();
+	private int[] probeIds;
+	
+	private final Set<FishyLocationInt> boxedPositions = new HashSet<>();
+	private final LongSet positions = new LongSet();
+	private FishyLocationInt[] probeLocations;
+	private long[] probePositions;
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(3L);
+		for (int i = 0; i < 48; i++) {
+			int id = random.nextInt(176);
+			boxedIds.add(id);
+			ids.add(id);
+		}
+		probeIds = new int[1024];
+		for (int i = 0; i < probeIds.length; i++) {
+			probeIds[i] = random.nextInt(176);
+		}
+		FishyLocationInt[] stored = Fixtures.scatteredLocations(100000, 1000, 5L);
+		for (FishyLocationInt location : stored) {
+			boxedPositions.add(location);
+			positions.add(location.toPackedPosition());
+		}
+		probeLocations = new FishyLocationInt[1024];
+		probePositions = new long[probeLocations.length];
+		for (int i = 0; i < probeLocations.length; i++) {
+			// half hits, half (likely) misses
+			FishyLocationInt source = (i % 2 == 0)
+					? stored[random.nextInt(stored.length)]
+					: Fixtures.scatteredLocations(1, 1000, i)[0];
+			probeLocations[i] = new FishyLocationInt(source.getWorld(), source);
+			probePositions[i] = source.toPackedPosition();
+		}
+	}
+	
+	@Benchmark
+	public void idsTreeSet(Blackhole bh) {
+		for (int id : probeIds) {
+			bh.consume(boxedIds.contains(id));
+		}
+	}
+	
+	@Benchmark
+	public void idsIntSet(Blackhole bh) {
+		for (int id : probeIds) {
+			bh.consume(ids.contains(id));
+		}
+	}
+	
+	@Benchmark
+	public void positionsHashSet(Blackhole bh) {
+		for (FishyLocationInt location : probeLocations) {
+			bh.consume(boxedPositions.contains(location));
+		}
+	}
+	
+	@Benchmark
+	public void positionsLongSet(Blackhole bh) {
+		for (long position : probePositions) {
+			bh.consume(positions.contains(position));
+		}
+	}
+	
+	@Benchmark
+	public Set<FishyLocationInt> fillHashSet() {
+		Set<FishyLocationInt> set = new HashSet<>();
+		for (FishyLocationInt location : probeLocations) {
+			set.add(location);
+		}
+		return set;
+	}
+	
+	@Benchmark
+	public LongSet fillLongSet() {
+		LongSet set = new LongSet();
+		for (long position : probePositions) {
+			set.add(position);
+		}
+		return set;
+	}
+}
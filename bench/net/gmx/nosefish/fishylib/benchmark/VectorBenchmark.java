@@ -0,0 +1,73 @@
+package net.gmx.nosefish.fishylib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyVectorDouble;
+import net.gmx.nosefish.fishylib.worldmath.FishyVectorInt;
+import net.gmx.nosefish.fishylib.worldmath.MutableVectorInt;
+
+/**
+ * Vector arithmetic, immutable versus in-place.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorBenchmark {
+	private final FishyVectorInt a = new FishyVectorInt(12, 64, -7);
+	private final FishyVectorInt b = new FishyVectorInt(-3, 1, 5);
+	private final FishyVectorDouble c = new FishyVectorDouble(0.5, 64.25, -7.75);
+	private final MutableVectorInt scratch = new MutableVectorInt();
+	private final FishyLocationInt origin = new FishyLocationInt(Fixtures.WORLD, 100, 64, -200);
+	
+	@Benchmark
+	public FishyVectorInt intAdd() {
+		return a.addInt(b);
+	}
+	
+	@Benchmark
+	public FishyVectorInt intScalarMult() {
+		return a.scalarIntMult(3);
+	}
+	
+	@Benchmark
+	public MutableVectorInt mutableAdd() {
+		return scratch.set(a).addInPlace(b);
+	}
+	
+	@Benchmark
+	public FishyVectorDouble doubleAdd() {
+		return c.add(a);
+	}
+	
+	@Benchmark
+	public FishyVectorDouble doubleScalarMult() {
+		return c.scalarMult(1.5);
+	}
+	
+	@Benchmark
+	public double intLengthSquared() {
+		return a.lengthSquared();
+	}
+	
+	@Benchmark
+	public FishyLocationInt locationAddIntVector() {
+		return origin.addIntVector(b);
+	}
+}
@@ -1,15 +1,26 @@
 package net.gmx.nosefish.fishylib;
 
 import net.canarymod.plugin.Plugin;
+import net.gmx.nosefish.fishylib.blocks.RedstoneGraph;
+import net.gmx.nosefish.fishylib.blocks.RedstoneListener;
+import net.gmx.nosefish.fishylib.inventory.InventoryListener;
+import net.gmx.nosefish.fishylib.worldmath.WorldListener;
 
 public class FishyLib extends Plugin {
 
 	@Override
 	public void disable() {
+		RedstoneListener.unregister();
+		InventoryListener.unregister();
+		RedstoneGraph.closeAll();
+		WorldListener.unregister(this);
 	}
 
 	@Override
 	public boolean enable() {
+		WorldListener.register(this);
+		RedstoneListener.register(this);
+		InventoryListener.register(this);
 		return true;
 	}
 
@@ -0,0 +1,130 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+import net.canarymod.api.world.blocks.BlockType;
+import net.gmx.nosefish.fishylib.worldmath.FishyDirection;
+
+/**
+ * What a block id and data value mean, precomputed for every combination.
+ * <p>
+ * The tables are indexed by <code>key(blockId, dataValue)</code>, that is
+ * <code>(blockId &lt;&lt; 4) | dataValue</code>, and built once when the
+ * class is loaded. A lookup is a single array load, for scanners that decode
+ * lots of blocks. The BlockInfo methods with the same names use these tables
+ * for valid ids and data values.
+ * <p>
+ * The tables only depend on the redstone traits in <code>BlockTraits</code>,
+ * which can't change at runtime. Thread-safe.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class BlockDecodeTables {
+	/**
+	 * Number of keys, all valid keys are below.
+	 */
+	public static final int SIZE = (BlockTraits.MAX_BLOCK_ID + 1) << 4;
+
+	private static final FishyDirection[] DIRECTIONS = FishyDirection.values();
+	private static final byte NO_DIRECTION = -1;
+
+	private static final byte[] power = new byte[SIZE];
+	// sides a wire connects to the block from, as RedstoneWireConnections bits
+	private static final byte[] connectorSides = new byte[SIZE];
+	// FishyDirection ordinals
+	private static final byte[] signDirection = new byte[SIZE];
+
+	static {
+		int wallSign = BlockType.WallSign.getId();
+		int signPost = BlockType.SignPost.getId();
+		for (int blockId = 0; blockId <= BlockTraits.MAX_BLOCK_ID; blockId++) {
+			int traits = BlockTraits.get(blockId);
+			for (int dataValue = 0; dataValue < 16; dataValue++) {
+				int key = key(blockId, dataValue);
+				power[key] = (byte) decodePower(traits, dataValue);
+				if ((traits & BlockTraits.REDSTONE_SOURCE) != 0) {
+					if ((traits & BlockTraits.DIRECTIONAL) != 0) {
+						// luckily, all directional redstone blocks work like repeaters
+						connectorSides[key] = (byte) RedstoneWireConnections.bit(BlockInfo.getRepeaterDirection(dataValue));
+					} else {
+						connectorSides[key] = (byte) RedstoneWireConnections.ALL_BITS;
+					}
+				}
+				FishyDirection direction = null;
+				if (blockId == wallSign) {
+					direction = BlockInfo.getWallSignDirection(dataValue);
+				} else if (blockId == signPost) {
+					direction = BlockInfo.getSignPostDirection(dataValue);
+				}
+				signDirection[key] = (direction == null) ? NO_DIRECTION : (byte) direction.ordinal();
+			}
+		}
+	}
+
+	private BlockDecodeTables() {
+		// static methods only
+	}
+
+	/**
+	 * Decodes the power without the table, also for data values above 15.
+	 *
+	 * @param traits the traits word of the block id
+	 * @param dataValue
+	 * @return the redstone power
+	 */
+	static int decodePower(int traits, int dataValue) {
+		switch (BlockTraits.powerMode(traits)) {
+		case BlockTraits.POWER_ALWAYS_ON: return 15;
+		case BlockTraits.POWER_DATA_VALUE: return dataValue;
+		case BlockTraits.POWER_BIT_0x1: return ((dataValue & 0x1) == 0 ? 0 : 15);
+		case BlockTraits.POWER_BIT_0x8: return ((dataValue & 0x8) == 0 ? 0 : 15);
+		default: return 0; // not a redstone block, or always off
+		}
+	}
+
+	/**
+	 * @param blockId
+	 * @param dataValue
+	 * @return <code>true</code> if the tables cover the combination
+	 */
+	public static boolean isValid(int blockId, int dataValue) {
+		return ((blockId & ~BlockTraits.MAX_BLOCK_ID) | (dataValue & ~0xF)) == 0;
+	}
+
+	/**
+	 * Only meaningful if <code>isValid(blockId, dataValue)</code>.
+	 *
+	 * @param blockId
+	 * @param dataValue
+	 * @return the table index
+	 */
+	public static int key(int blockId, int dataValue) {
+		return (blockId << 4) | dataValue;
+	}
+
+	/**
+	 * @param key
+	 * @return the redstone power, like <code>BlockInfo.getRedstonePower</code>
+	 */
+	public static int getRedstonePower(int key) {
+		return power[key];
+	}
+
+	/**
+	 * @param key
+	 * @return the sides a redstone wire connects to the block from, as
+	 *         <code>RedstoneWireConnections</code> direction bits
+	 */
+	public static int getConnectorSides(int key) {
+		return connectorSides[key];
+	}
+
+	/**
+	 * @param key
+	 * @return the direction of a sign, like <code>BlockInfo.getSignDirection</code>;
+	 *         <code>null</code> if the block is no sign
+	 */
+	public static FishyDirection getSignDirection(int key) {
+		int ordinal = signDirection[key];
+		return (ordinal == NO_DIRECTION) ? null : DIRECTIONS[ordinal];
+	}
+}
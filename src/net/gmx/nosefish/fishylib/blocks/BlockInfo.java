@@ -49,6 +49,9 @@ public class BlockInfo {
 	}
 	
 	public static FishyDirection getSignDirection(int blockId, int dataValue) {
+		if (BlockDecodeTables.isValid(blockId, dataValue)) {
+			return BlockDecodeTables.getSignDirection(BlockDecodeTables.key(blockId, dataValue));
+		}
 		if (blockId == BlockType.WallSign.getId()) {
 			return getWallSignDirection(dataValue);
 		}
@@ -59,27 +62,10 @@ public class BlockInfo {
 	}
 	
 	public static int getRedstonePower(int blockId, int dataValue) {
-		RedstonePowerSource powerType = RedstonePowerSource.fromId(blockId);
-		if (powerType == null) {
-			// not a redstone block
-			return 0;
-		}
-		if (RedstonePowerSource.powerIsAlwaysOn.contains(powerType)) {
-			return 15;
-		}
-		if (RedstonePowerSource.powerIsAlwaysOff.contains(powerType)) {
-			return 0;
-		}
-		if (RedstonePowerSource.powerIsDataValue.contains(powerType)) {
-			return dataValue;
+		if (BlockDecodeTables.isValid(blockId, dataValue)) {
+			return BlockDecodeTables.getRedstonePower(BlockDecodeTables.key(blockId, dataValue));
 		}
-		if (RedstonePowerSource.powerOnOffInBit0x1.contains(powerType)) {
-			return ((dataValue & 0x1) == 0 ? 0 : 15);
-		}
-		if (RedstonePowerSource.powerOnOffInBit0x8.contains(powerType)) {
-			return ((dataValue & 0x8) == 0 ? 0 : 15);
-		}
-		return 0;
+		return BlockDecodeTables.decodePower(BlockTraits.get(blockId), dataValue);
 	}
 	
 	public static FishyDirection getLadderDirection(int dataValue) {
@@ -144,14 +130,7 @@ public class BlockInfo {
 				continue;
 			}
 			// check rule 2)
-			BlockMaterial material = null;
-			try {
-				material = blockAboveWire.getBlockMaterial();
-			} catch (NullPointerException e) {
-				// TODO: workaround for Canary bug. Remove when fixed.
-				// TODO: figure out Canary bug and report/fix
-			}
-			if (material == null || ! material.isOpaque()) {
+			if (! isOpaque(blockAboveWire)) {
 				Block aboveToCheck = toCheck.getRelative(0, 1, 0);
 				if (aboveToCheck.getTypeId() == BlockType.RedstoneWire.getId()) {
 					//System.out.println(direction + " matches 2");
@@ -160,12 +139,7 @@ public class BlockInfo {
 				}
 			}
 			// check rule 3)
-			try {
-				material = toCheck.getBlockMaterial();
-			} catch (NullPointerException e) {
-				//TODO: workaround for Canary bug. Remove when fixed.
-			}
-			if (material == null || ! material.isOpaque()) {
+			if (! isOpaque(toCheck)) {
 				Block belowToCheck = toCheck.getRelative(0, -1, 0);
 				if (belowToCheck.getTypeId() == BlockType.RedstoneWire.getId()) {
 					//System.out.println(direction + " matches 3");
@@ -187,11 +161,67 @@ public class BlockInfo {
 		}
 		return outSet;
 	}
-	
+
+	/**
+	 * Same rules as <code>getRedstoneWireConnections(Block)</code>, but reads
+	 * the blocks from a snapshot. Thread-safe.
+	 *
+	 * @param snapshot must contain the blocks around the wire, one block in every direction
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the directions the wire connects to, or <code>null</code> if the block is not redstone wire
+	 */
+	public static Set<FishyDirection> getRedstoneWireConnections(ChunkSnapshot snapshot, int x, int y, int z) {
+		int wireId = BlockType.RedstoneWire.getId();
+		if (snapshot.getTypeId(x, y, z) != wireId) {
+			return null;
+		}
+		Set<FishyDirection> outSet = EnumSet.noneOf(FishyDirection.class);
+		boolean aboveWireOpaque = snapshot.isOpaque(x, y + 1, z);
+		for (FishyDirection direction : FishyDirection.cardinalDirections) {
+			FishyVectorInt offset = direction.toUnitIntVector();
+			int checkX = x + offset.getIntX();
+			int checkZ = z + offset.getIntZ();
+			// rule 1)
+			if (isRedstoneConnector(
+					(short) snapshot.getTypeId(checkX, y, checkZ),
+					(short) snapshot.getData(checkX, y, checkZ),
+					direction.opposite())) {
+				outSet.add(direction);
+				continue;
+			}
+			// rule 2)
+			if (! aboveWireOpaque && snapshot.getTypeId(checkX, y + 1, checkZ) == wireId) {
+				outSet.add(direction);
+				continue;
+			}
+			// rule 3)
+			if (! snapshot.isOpaque(checkX, y, checkZ) && snapshot.getTypeId(checkX, y - 1, checkZ) == wireId) {
+				outSet.add(direction);
+			}
+		}
+		// rule 4)
+		if (outSet.size() == 1) {
+			outSet.add(outSet.iterator().next().opposite());
+		}
+		// rule 5)
+		if (outSet.isEmpty()) {
+			outSet = EnumSet.copyOf(FishyDirection.cardinalDirections);
+		}
+		return outSet;
+	}
+
 	public static boolean isRedstoneConnector(short blockTypeID, short blockData, FishyDirection direction) {
-		RedstonePowerSource powerType = RedstonePowerSource.fromId(blockTypeID);
-		if (powerType != null) {
-			if (RedstonePowerSource.directionalRSBlocks.contains(powerType)) {
+		if (BlockDecodeTables.isValid(blockTypeID, blockData)) {
+			int sides = BlockDecodeTables.getConnectorSides(BlockDecodeTables.key(blockTypeID, blockData));
+			// non-directional blocks connect from anywhere, also for non-cardinal directions
+			return sides == RedstoneWireConnections.ALL_BITS
+					|| (sides & RedstoneWireConnections.bit(direction)) != 0;
+		}
+		int traits = BlockTraits.get(blockTypeID);
+		if ((traits & BlockTraits.REDSTONE_SOURCE) != 0) {
+			if ((traits & BlockTraits.DIRECTIONAL) != 0) {
 				// luckily, all directional redstone blocks work like repeaters
 				return getRepeaterDirection(blockData).equals(direction);
 			} else {
@@ -232,13 +262,48 @@ public class BlockInfo {
 		//System.out.println("not redstone wire");
 		return BlockInfo.isRedstoneConnector(blockTypeID, blockData, connectionDirection);
 	}
-	
+
+	/**
+	 * Same as <code>isDirectInput</code> above, but reads the input block
+	 * from a snapshot. Thread-safe.
+	 *
+	 * @param snapshot must contain the blocks around the input, one block in every direction
+	 * @param inputLocation
+	 * @param target
+	 * @return <code>true</code> if the input block powers the target directly
+	 */
+	public static boolean isDirectInput(ChunkSnapshot snapshot,
+	                                    FishyLocationInt inputLocation,
+	                                    FishyLocationInt target) {
+		if (! inputLocation.getWorld().equals(target.getWorld())
+				|| ! inputLocation.getWorld().equals(snapshot.getWorld())) {
+			return false;
+		}
+		FishyVectorInt in2target = new FishyVectorInt(inputLocation.getVectorTo(target));
+		if (in2target.lengthSquared() != 1.0D) {
+			return false;
+		}
+		FishyDirection connectionDirection = in2target.getCardinalDirection();
+		if (connectionDirection == FishyDirection.ERROR) {
+			return false;
+		}
+		int x = inputLocation.getIntX();
+		int y = inputLocation.getIntY();
+		int z = inputLocation.getIntZ();
+		int blockTypeID = snapshot.getTypeId(x, y, z);
+		if (blockTypeID == BlockType.RedstoneWire.getId()) {
+			Set<FishyDirection> directions = getRedstoneWireConnections(snapshot, x, y, z);
+			return directions.contains(connectionDirection);
+		}
+		return isRedstoneConnector((short) blockTypeID, (short) snapshot.getData(x, y, z), connectionDirection);
+	}
+
 	public static boolean canPlayerPassThrough(int blockId) {
-		return BlocksPlayersCanPass.ids.contains(new Integer(blockId));
+		return (BlockTraits.get(blockId) & BlockTraits.PASSABLE) != 0;
 	}
 	
 	public static boolean isStorageBlock(int blockId) {
-		return StorageBlocks.ids.contains(new Integer(blockId));
+		return (BlockTraits.get(blockId) & BlockTraits.STORAGE) != 0;
 	}
 	
 	
@@ -280,6 +345,22 @@ public class BlockInfo {
 		}
 		return reference.getRelative(dVec[0], dVec[1], dVec[2]);
 	}
+
+	/**
+	 * @param block
+	 * @return <code>true</code> if the material of the block is opaque,
+	 *         <code>false</code> if not or if Canary fails to look it up
+	 */
+	static boolean isOpaque(Block block) {
+		BlockMaterial material = null;
+		try {
+			material = block.getBlockMaterial();
+		} catch (NullPointerException e) {
+			// TODO: workaround for Canary bug. Remove when fixed.
+			// TODO: figure out Canary bug and report/fix
+		}
+		return material != null && material.isOpaque();
+	}
 	
 //	the x-axis indicates the player's distance east (positive) or west (negative) of the origin point—i.e., the longitude,
 //	the z-axis indicates the player's distance south (positive) or north (negative) of the origin point—i.e., the latitude,
@@ -0,0 +1,24 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+/**
+ * Something that knows the block ids in a world, like a
+ * <code>ChunkSnapshot</code> or the live world.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public interface BlockSource {
+	/**
+	 * Block id for blocks the source doesn't know, e.g. outside a snapshot
+	 * or in an unloaded chunk.
+	 */
+	public static final int UNKNOWN = -1;
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the block id, or <code>UNKNOWN</code>
+	 */
+	public int getTypeId(int x, int y, int z);
+}
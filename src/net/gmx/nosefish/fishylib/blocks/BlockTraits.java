@@ -0,0 +1,198 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What FishyLib knows about each block id, packed into one int per id.
+ * <p>
+ * Layout of a traits word, from the least significant bit:
+ * <ul>
+ * <li>bits 0-3: <code>PASSABLE</code>, <code>STORAGE</code>,
+ *     <code>REDSTONE_SOURCE</code>, <code>DIRECTIONAL</code></li>
+ * <li>bits 4-6: how to decode the redstone power from the data value</li>
+ * <li>bits 8-12: the <code>RedstonePowerSource</code>, ordinal + 1, 0 for none</li>
+ * <li>bits 16-31: traits registered by plugins, see <code>registerTrait</code></li>
+ * </ul>
+ * Lookups are a volatile read and an array load, and safe from any thread.
+ * Changes copy the table, so they are meant for setup, not for every tick.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class BlockTraits {
+	/**
+	 * Block ids are 12 bits.
+	 */
+	public static final int MAX_BLOCK_ID = 4095;
+
+	public static final int PASSABLE = 1 << 0;
+	public static final int STORAGE = 1 << 1;
+	public static final int REDSTONE_SOURCE = 1 << 2;
+	public static final int DIRECTIONAL = 1 << 3;
+
+	// power decoding modes
+	static final int POWER_SHIFT = 4;
+	static final int POWER_MASK = 0x7 << POWER_SHIFT;
+	static final int POWER_NONE = 0;
+	static final int POWER_ALWAYS_ON = 1;
+	static final int POWER_ALWAYS_OFF = 2;
+	static final int POWER_DATA_VALUE = 3;
+	static final int POWER_BIT_0x1 = 4;
+	static final int POWER_BIT_0x8 = 5;
+
+	private static final int SOURCE_SHIFT = 8;
+	private static final int SOURCE_MASK = 0x1F << SOURCE_SHIFT;
+
+	private static final int FIRST_CUSTOM_BIT = 16;
+	// all bits that plugins may change
+	private static final int CUSTOM_MASK = 0xFFFF << FIRST_CUSTOM_BIT;
+
+	private static final RedstonePowerSource[] SOURCES = RedstonePowerSource.values();
+
+	// by block id, copy-on-write
+	private static volatile int[] table = buildTable();
+	// guarded by BlockTraits.class
+	private static final Map<String, Integer> customTraits = new HashMap<>();
+
+	private BlockTraits() {
+		// static methods only
+	}
+
+	private static int[] buildTable() {
+		int[] t = new int[MAX_BLOCK_ID + 1];
+		for (int id : BlocksPlayersCanPass.ids.toArray()) {
+			t[id] |= PASSABLE;
+		}
+		for (int id : StorageBlocks.ids.toArray()) {
+			t[id] |= STORAGE;
+		}
+		for (RedstonePowerSource source : SOURCES) {
+			int traits = REDSTONE_SOURCE | ((source.ordinal() + 1) << SOURCE_SHIFT);
+			if (RedstonePowerSource.directionalRSBlocks.contains(source)) {
+				traits |= DIRECTIONAL;
+			}
+			traits |= powerMode(source) << POWER_SHIFT;
+			t[source.getId()] |= traits;
+		}
+		return t;
+	}
+
+	// same order of checks as getRedstonePower had
+	private static int powerMode(RedstonePowerSource source) {
+		if (RedstonePowerSource.powerIsAlwaysOn.contains(source)) {
+			return POWER_ALWAYS_ON;
+		}
+		if (RedstonePowerSource.powerIsAlwaysOff.contains(source)) {
+			return POWER_ALWAYS_OFF;
+		}
+		if (RedstonePowerSource.powerIsDataValue.contains(source)) {
+			return POWER_DATA_VALUE;
+		}
+		if (RedstonePowerSource.powerOnOffInBit0x1.contains(source)) {
+			return POWER_BIT_0x1;
+		}
+		if (RedstonePowerSource.powerOnOffInBit0x8.contains(source)) {
+			return POWER_BIT_0x8;
+		}
+		return POWER_NONE;
+	}
+
+	/**
+	 * @param blockId
+	 * @return the traits word of the block id, 0 for invalid ids
+	 */
+	public static int get(int blockId) {
+		if (blockId < 0 || blockId > MAX_BLOCK_ID) {
+			return 0;
+		}
+		return table[blockId];
+	}
+
+	/**
+	 * @param blockId
+	 * @param traits one or more trait bits
+	 * @return <code>true</code> if the block id has all the traits
+	 */
+	public static boolean has(int blockId, int traits) {
+		return (get(blockId) & traits) == traits;
+	}
+
+	/**
+	 * @param blockId
+	 * @return the redstone power source, or <code>null</code> if the block is none
+	 */
+	public static RedstonePowerSource getRedstonePowerSource(int blockId) {
+		int source = (get(blockId) & SOURCE_MASK) >>> SOURCE_SHIFT;
+		return (source == 0) ? null : SOURCES[source - 1];
+	}
+
+	/**
+	 * @param traits a traits word
+	 * @return the power decoding mode, one of the POWER_ constants
+	 */
+	static int powerMode(int traits) {
+		return (traits & POWER_MASK) >>> POWER_SHIFT;
+	}
+
+	/**
+	 * Registers a trait for plugins to attach to block ids. Registering
+	 * the same name again returns the same bit.
+	 *
+	 * @param name
+	 * @return the trait bit
+	 * @throws IllegalStateException if all 16 custom bits are in use
+	 */
+	public static synchronized int registerTrait(String name) {
+		if (name == null) {
+			throw new NullPointerException("Parameter name was null.");
+		}
+		Integer bit = customTraits.get(name);
+		if (bit == null) {
+			if (customTraits.size() == 32 - FIRST_CUSTOM_BIT) {
+				throw new IllegalStateException("No free trait bit for " + name);
+			}
+			bit = 1 << (FIRST_CUSTOM_BIT + customTraits.size());
+			customTraits.put(name, bit);
+		}
+		return bit;
+	}
+
+	/**
+	 * Adds traits to a block id. Plugins can add <code>PASSABLE</code>,
+	 * <code>STORAGE</code> and registered traits; the redstone traits
+	 * come from <code>RedstonePowerSource</code>.
+	 *
+	 * @param blockId
+	 * @param traits
+	 */
+	public static synchronized void add(int blockId, int traits) {
+		checkChange(blockId, traits);
+		int[] copy = Arrays.copyOf(table, table.length);
+		copy[blockId] |= traits;
+		table = copy;
+	}
+
+	/**
+	 * Removes traits from a block id, see <code>add</code>.
+	 *
+	 * @param blockId
+	 * @param traits
+	 */
+	public static synchronized void remove(int blockId, int traits) {
+		checkChange(blockId, traits);
+		int[] copy = Arrays.copyOf(table, table.length);
+		copy[blockId] &= ~traits;
+		table = copy;
+	}
+
+	private static void checkChange(int blockId, int traits) {
+		if (blockId < 0 || blockId > MAX_BLOCK_ID) {
+			throw new IllegalArgumentException("Invalid block id: " + blockId);
+		}
+		if ((traits & ~(PASSABLE | STORAGE | CUSTOM_MASK)) != 0) {
+			throw new IllegalArgumentException("Redstone traits can't be changed: " + Integer.toHexString(traits));
+		}
+	}
+}
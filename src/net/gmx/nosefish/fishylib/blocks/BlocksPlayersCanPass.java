@@ -1,13 +1,10 @@
 package net.gmx.nosefish.fishylib.blocks;
 
-import java.util.Collections;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import net.gmx.nosefish.fishylib.datastructures.IntSet;
 
 
 public class BlocksPlayersCanPass {
-	static final SortedSet<Integer> ids; 
-	private static final Integer[] idArray = new Integer[] {
+	static final IntSet ids = IntSet.of(
 		0, 6, 8, 9, 10, 11,
 		27, 28, 30, 31,
 		32, 37, 38, 39, 40,
@@ -18,10 +15,5 @@ public class BlocksPlayersCanPass {
 		115, 119, 127, 131, 132, 141, 142, 143,
 		147, 148, 157,
 		171 // version 1.6.2
-	};
-	static {
-		TreeSet <Integer> tmpSet = new TreeSet<>();
-		Collections.addAll(tmpSet, idArray);
-		ids = Collections.unmodifiableSortedSet(tmpSet);
-	}
+	);
 }
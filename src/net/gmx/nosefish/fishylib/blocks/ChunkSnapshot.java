@@ -0,0 +1,268 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+import java.util.BitSet;
+
+import net.canarymod.api.world.Chunk;
+import net.canarymod.api.world.World;
+import net.gmx.nosefish.fishylib.worldmath.FishyChunk;
+import net.gmx.nosefish.fishylib.worldmath.FishyCuboidInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyPointInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyWorld;
+
+/**
+ * Immutable copy of the block ids and data values in a box of blocks,
+ * a chunk or a cuboid across chunks.
+ * <p>
+ * Take the snapshot on the server thread, then hand it to worker threads:
+ * all getters only read primitive arrays and are thread-safe. The BlockInfo
+ * methods that take a snapshot work on this copy instead of live
+ * <code>Block</code> objects.
+ * <p>
+ * Whether a block type is opaque comes from its <code>BlockMaterial</code>,
+ * which is looked up once per block type when the snapshot is taken.
+ * <p>
+ * Blocks above and below the world are stored as air. Blocks outside the
+ * snapshot have the id <code>UNKNOWN</code>, so leave a margin of one block
+ * around the region you want to analyze.
+ * <p>
+ * A snapshot holds at most <code>MAX_VOLUME</code> blocks, so that the
+ * per-block arrays of the snapshot and of everything built from it
+ * can be indexed with an <code>int</code>.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class ChunkSnapshot implements BlockSource {
+
+	/**
+	 * The maximum number of blocks in a snapshot, 256 * 256 * 256.
+	 */
+	public static final int MAX_VOLUME = 1 << 24;
+
+	private final FishyWorld world;
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+	// index: ((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX)
+	private final short[] ids;
+	private final byte[] data;
+	// by block id; never written after the constructor
+	private final BitSet opaque;
+
+	private ChunkSnapshot(World world, int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ) {
+		checkVolume(sizeX, sizeY, sizeZ);
+		this.world = FishyWorld.factory(world);
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.ids = new short[sizeX * sizeY * sizeZ];
+		this.data = new byte[ids.length];
+		this.opaque = new BitSet();
+		copyBlocks(world);
+	}
+
+	/**
+	 * Copies a whole chunk, from the bottom to the top of the world.
+	 * <b>Only call from the server thread.</b>
+	 *
+	 * @param chunk
+	 * @return the snapshot
+	 */
+	public static ChunkSnapshot of(Chunk chunk) {
+		World world = chunk.getDimension();
+		return new ChunkSnapshot(world,
+				FishyChunk.chunkToWorld(chunk.getX()), 0, FishyChunk.chunkToWorld(chunk.getZ()),
+				16, world.getHeight(), 16);
+	}
+
+	/**
+	 * Copies a whole chunk, from the bottom to the top of the world.
+	 * <b>Only call from the server thread.</b>
+	 *
+	 * @param chunk
+	 * @return the snapshot, or <code>null</code> if the chunk is not loaded
+	 */
+	public static ChunkSnapshot of(FishyChunk chunk) {
+		World world = chunk.getWorld().getWorldIfLoaded();
+		if (world == null || ! FishyWorld.isChunkLoaded(chunk)) {
+			return null;
+		}
+		return new ChunkSnapshot(world,
+				chunk.getIntX(), 0, chunk.getIntZ(),
+				16, world.getHeight(), 16);
+	}
+
+	/**
+	 * Copies the blocks in a cuboid, which may span several chunks.
+	 * <b>Only call from the server thread.</b>
+	 *
+	 * @param cuboid
+	 * @return the snapshot, or <code>null</code> if not all chunks the cuboid touches are loaded
+	 * @throws IllegalArgumentException if the cuboid has more than <code>MAX_VOLUME</code> blocks
+	 */
+	public static ChunkSnapshot of(FishyCuboidInt cuboid) {
+		FishyPointInt low = cuboid.getLowPoint();
+		FishyPointInt high = cuboid.getHighPoint();
+		// long: the sides of a huge cuboid overflow int
+		long sizeX = (long) high.getIntX() - low.getIntX() + 1;
+		long sizeY = (long) high.getIntY() - low.getIntY() + 1;
+		long sizeZ = (long) high.getIntZ() - low.getIntZ() + 1;
+		checkVolume(sizeX, sizeY, sizeZ);
+		World world = cuboid.getWorld().getWorldIfLoaded();
+		if (world == null || ! FishyWorld.isCuboidLoaded(cuboid)) {
+			return null;
+		}
+		return new ChunkSnapshot(world,
+				low.getIntX(), low.getIntY(), low.getIntZ(),
+				(int) sizeX, (int) sizeY, (int) sizeZ);
+	}
+
+	private static void checkVolume(long sizeX, long sizeY, long sizeZ) {
+		// checking the sides first keeps the products in range of a long
+		if (sizeX > MAX_VOLUME || sizeY > MAX_VOLUME || sizeZ > MAX_VOLUME
+				|| sizeX * sizeZ > MAX_VOLUME || sizeX * sizeZ * sizeY > MAX_VOLUME) {
+			throw new IllegalArgumentException("Snapshot too large: " + sizeX + " x " + sizeY + " x " + sizeZ
+					+ " blocks, the maximum volume is " + MAX_VOLUME);
+		}
+	}
+
+	private void copyBlocks(World world) {
+		int height = world.getHeight();
+		int lowY = Math.max(minY, 0);
+		int highY = Math.min(minY + sizeY, height);
+		BitSet seen = new BitSet();
+		// one chunk at a time
+		for (int chunkX = FishyChunk.worldToChunk(minX); chunkX <= FishyChunk.worldToChunk(minX + sizeX - 1); chunkX++) {
+			for (int chunkZ = FishyChunk.worldToChunk(minZ); chunkZ <= FishyChunk.worldToChunk(minZ + sizeZ - 1); chunkZ++) {
+				Chunk chunk = world.getChunk(chunkX, chunkZ);
+				int originX = FishyChunk.chunkToWorld(chunkX);
+				int originZ = FishyChunk.chunkToWorld(chunkZ);
+				int fromX = Math.max(minX, originX);
+				int toX = Math.min(minX + sizeX, originX + 16);
+				int fromZ = Math.max(minZ, originZ);
+				int toZ = Math.min(minZ + sizeZ, originZ + 16);
+				for (int y = lowY; y < highY; y++) {
+					for (int z = fromZ; z < toZ; z++) {
+						int index = indexOf(fromX, y, z);
+						for (int x = fromX; x < toX; x++, index++) {
+							int id = chunk.getBlockTypeAt(x - originX, y, z - originZ);
+							ids[index] = (short) id;
+							data[index] = (byte) chunk.getBlockDataAt(x - originX, y, z - originZ);
+							if (! seen.get(id)) {
+								seen.set(id);
+								opaque.set(id, BlockInfo.isOpaque(world.getBlockAt(x, y, z)));
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	// for batch computations in this package, by array index
+	int indexOf(int x, int y, int z) {
+		return ((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX);
+	}
+
+	int volume() {
+		return ids.length;
+	}
+
+	int getTypeIdAt(int index) {
+		return ids[index];
+	}
+
+	int getDataAt(int index) {
+		return data[index];
+	}
+
+	boolean isOpaqueAt(int index) {
+		return opaque.get(ids[index]);
+	}
+
+	public FishyWorld getWorld() {
+		return world;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return <code>true</code> if the block is inside the snapshot
+	 */
+	public boolean contains(int x, int y, int z) {
+		// unsigned comparison catches both ends
+		return (x - minX) + Integer.MIN_VALUE < sizeX + Integer.MIN_VALUE
+				&& (y - minY) + Integer.MIN_VALUE < sizeY + Integer.MIN_VALUE
+				&& (z - minZ) + Integer.MIN_VALUE < sizeZ + Integer.MIN_VALUE;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the block id, or <code>UNKNOWN</code> if the block is outside the snapshot
+	 */
+	@Override
+	public int getTypeId(int x, int y, int z) {
+		if (! contains(x, y, z)) {
+			return UNKNOWN;
+		}
+		return ids[indexOf(x, y, z)];
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the data value, or 0 if the block is outside the snapshot
+	 */
+	public int getData(int x, int y, int z) {
+		if (! contains(x, y, z)) {
+			return 0;
+		}
+		return data[indexOf(x, y, z)];
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return <code>true</code> if the block's material is opaque,
+	 *         <code>false</code> if not or if the block is outside the snapshot
+	 */
+	public boolean isOpaque(int x, int y, int z) {
+		int id = getTypeId(x, y, z);
+		return id != UNKNOWN && opaque.get(id);
+	}
+
+	public int getMinX() {
+		return minX;
+	}
+
+	public int getMinY() {
+		return minY;
+	}
+
+	public int getMinZ() {
+		return minZ;
+	}
+
+	public int getSizeX() {
+		return sizeX;
+	}
+
+	public int getSizeY() {
+		return sizeY;
+	}
+
+	public int getSizeZ() {
+		return sizeZ;
+	}
+}
@@ -0,0 +1,385 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import net.gmx.nosefish.fishylib.datastructures.LongSet;
+import net.gmx.nosefish.fishylib.worldmath.FishyCuboidInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyPointInt;
+import net.gmx.nosefish.fishylib.worldmath.PackedPosition;
+
+/**
+ * Finds connected blocks whose id matches a predicate: connected chests,
+ * redstone clusters, the air in an enclosed room.
+ * <p>
+ * <code>fill</code> grows a region from a seed block, breadth first, up to a
+ * maximum volume. <code>label</code> splits all matching blocks of a
+ * snapshot into connected components at once, optionally in parallel.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class FloodFill {
+
+	/**
+	 * Which neighbours count as connected.
+	 */
+	public static enum Connectivity {
+		/** Blocks that share a face. */
+		SIX(false),
+		/** Blocks that share a face, an edge or a corner. */
+		TWENTY_SIX(true);
+
+		// all neighbours, as dx, dy, dz triples
+		private final int[] offsets;
+		// the neighbours that come before a block in x-z-y scan order
+		private final int[] backward;
+
+		private Connectivity(boolean diagonal) {
+			int count = diagonal ? 26 : 6;
+			offsets = new int[count * 3];
+			backward = new int[count / 2 * 3];
+			int o = 0;
+			int b = 0;
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dz = -1; dz <= 1; dz++) {
+					for (int dx = -1; dx <= 1; dx++) {
+						int manhattan = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+						if (manhattan == 0 || (! diagonal && manhattan > 1)) {
+							continue;
+						}
+						offsets[o++] = dx;
+						offsets[o++] = dy;
+						offsets[o++] = dz;
+						if (dy < 0 || (dy == 0 && (dz < 0 || (dz == 0 && dx < 0)))) {
+							backward[b++] = dx;
+							backward[b++] = dy;
+							backward[b++] = dz;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The blocks found by <code>fill</code>.
+	 */
+	public static final class Region {
+		private final long[] positions;
+		private final boolean complete;
+
+		private Region(long[] positions, boolean complete) {
+			this.positions = positions;
+			this.complete = complete;
+		}
+
+		/**
+		 * @return the packed positions of the blocks, in breadth first order
+		 *         from the seed; see <code>PackedPosition</code>
+		 */
+		public long[] getPositions() {
+			return positions.clone();
+		}
+
+		public int size() {
+			return positions.length;
+		}
+
+		/**
+		 * @return <code>false</code> if the fill stopped at the maximum volume,
+		 *         so that there may be more connected blocks
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+	}
+
+	/**
+	 * The connected components found by <code>label</code>.
+	 * Component labels start at 1 and are numbered in scan order.
+	 */
+	public static final class Components {
+		private final ChunkSnapshot snapshot;
+		// by snapshot index, 0 for blocks that don't match
+		private final int[] labels;
+		// by label
+		private final int[] sizes;
+
+		private Components(ChunkSnapshot snapshot, int[] labels, int[] sizes) {
+			this.snapshot = snapshot;
+			this.labels = labels;
+			this.sizes = sizes;
+		}
+
+		/**
+		 * @param x
+		 * @param y
+		 * @param z
+		 * @return the label of the block's component, 0 if the block doesn't
+		 *         match or is outside the snapshot
+		 */
+		public int getLabel(int x, int y, int z) {
+			if (! snapshot.contains(x, y, z)) {
+				return 0;
+			}
+			return labels[snapshot.indexOf(x, y, z)];
+		}
+
+		public int getComponentCount() {
+			return sizes.length - 1;
+		}
+
+		/**
+		 * @param label
+		 * @return the number of blocks in the component
+		 */
+		public int getComponentSize(int label) {
+			if (label < 1 || label >= sizes.length) {
+				throw new IllegalArgumentException("Invalid label: " + label);
+			}
+			return sizes[label];
+		}
+
+		public ChunkSnapshot getSnapshot() {
+			return snapshot;
+		}
+	}
+
+	private FloodFill() {
+		// static methods only
+	}
+
+	/**
+	 * Finds the blocks connected to the seed whose ids match. Returns an
+	 * empty region if the seed itself doesn't match.
+	 *
+	 * @param blocks
+	 * @param seedX
+	 * @param seedY
+	 * @param seedZ
+	 * @param matches tests block ids; never called with <code>BlockSource.UNKNOWN</code>
+	 * @param connectivity
+	 * @param maxVolume the maximum number of blocks to find
+	 * @param clip only search inside this cuboid, may be <code>null</code>
+	 * @return the connected blocks
+	 */
+	public static Region fill(BlockSource blocks,
+			int seedX, int seedY, int seedZ,
+			IntPredicate matches, Connectivity connectivity,
+			int maxVolume, FishyCuboidInt clip) {
+		int minX = Integer.MIN_VALUE, minY = Integer.MIN_VALUE, minZ = Integer.MIN_VALUE;
+		int maxX = Integer.MAX_VALUE, maxY = Integer.MAX_VALUE, maxZ = Integer.MAX_VALUE;
+		if (clip != null) {
+			FishyPointInt low = clip.getLowPoint();
+			FishyPointInt high = clip.getHighPoint();
+			minX = low.getIntX();
+			minY = low.getIntY();
+			minZ = low.getIntZ();
+			maxX = high.getIntX();
+			maxY = high.getIntY();
+			maxZ = high.getIntZ();
+		}
+		// positions found so far, doubles as the queue
+		long[] found = new long[Math.max(Math.min(maxVolume, 64), 1)];
+		int count = 0;
+		LongSet visited = new LongSet();
+		if (maxVolume < 1 || ! inside(seedX, seedY, seedZ, minX, minY, minZ, maxX, maxY, maxZ)
+				|| ! PackedPosition.canPack(seedX, seedY, seedZ)
+				|| ! matches(blocks, seedX, seedY, seedZ, matches)) {
+			return new Region(new long[0], true);
+		}
+		long seed = PackedPosition.pack(seedX, seedY, seedZ);
+		visited.add(seed);
+		found[count++] = seed;
+		int[] offsets = connectivity.offsets;
+		for (int head = 0; head < count; head++) {
+			long position = found[head];
+			int x = PackedPosition.getX(position);
+			int y = PackedPosition.getY(position);
+			int z = PackedPosition.getZ(position);
+			for (int o = 0; o < offsets.length; o += 3) {
+				int nx = x + offsets[o];
+				int ny = y + offsets[o + 1];
+				int nz = z + offsets[o + 2];
+				if (! inside(nx, ny, nz, minX, minY, minZ, maxX, maxY, maxZ)
+						|| ! PackedPosition.canPack(nx, ny, nz)) {
+					continue;
+				}
+				long neighbour = PackedPosition.pack(nx, ny, nz);
+				if (! visited.add(neighbour) || ! matches(blocks, nx, ny, nz, matches)) {
+					continue;
+				}
+				if (count == maxVolume) {
+					return new Region(Arrays.copyOf(found, count), false);
+				}
+				if (count == found.length) {
+					found = Arrays.copyOf(found, (int) Math.min((long) count * 2, maxVolume));
+				}
+				found[count++] = neighbour;
+			}
+		}
+		return new Region(Arrays.copyOf(found, count), true);
+	}
+
+	private static boolean inside(int x, int y, int z,
+			int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		return x >= minX && x <= maxX
+				&& y >= minY && y <= maxY
+				&& z >= minZ && z <= maxZ;
+	}
+
+	private static boolean matches(BlockSource blocks, int x, int y, int z, IntPredicate matches) {
+		int id = blocks.getTypeId(x, y, z);
+		return id != BlockSource.UNKNOWN && matches.test(id);
+	}
+
+	/**
+	 * Labels the connected components of all matching blocks in a snapshot.
+	 * <p>
+	 * In parallel, the snapshot is cut into horizontal slabs that are
+	 * labelled independently; then the slabs are joined at their borders.
+	 * The labels are the same either way.
+	 *
+	 * @param snapshot
+	 * @param matches tests block ids; called once per id, so it must not
+	 *        depend on anything else
+	 * @param connectivity
+	 * @param parallel
+	 * @return the components
+	 */
+	public static Components label(final ChunkSnapshot snapshot, IntPredicate matches,
+			Connectivity connectivity, boolean parallel) {
+		final int sizeX = snapshot.getSizeX();
+		final int sizeY = snapshot.getSizeY();
+		final int sizeZ = snapshot.getSizeZ();
+		final int[] backward = connectivity.backward;
+		// by block id
+		final boolean[] matchingIds = new boolean[BlockTraits.MAX_BLOCK_ID + 1];
+		for (int id = 0; id < matchingIds.length; id++) {
+			matchingIds[id] = matches.test(id);
+		}
+		final int volume = snapshot.volume();
+		// union-find forest; the root of a set is its smallest index
+		final int[] parent = new int[volume];
+		final int[] labels = new int[volume];
+		final int layer = sizeX * sizeZ;
+
+		// 1) each slab on its own
+		int slabs = parallel ? Math.min(sizeY, Runtime.getRuntime().availableProcessors() * 4) : 1;
+		final int slabHeight = (sizeY + slabs - 1) / slabs;
+		final int slabCount = (sizeY + slabHeight - 1) / slabHeight;
+		IntStream slabStream = IntStream.range(0, slabCount);
+		if (parallel) {
+			slabStream = slabStream.parallel();
+		}
+		slabStream.forEach(slab -> {
+			int fromY = slab * slabHeight;
+			int toY = Math.min(fromY + slabHeight, sizeY);
+			for (int y = fromY; y < toY; y++) {
+				for (int z = 0; z < sizeZ; z++) {
+					int i = (y * sizeZ + z) * sizeX;
+					for (int x = 0; x < sizeX; x++, i++) {
+						if (! matchingIds[snapshot.getTypeIdAt(i)]) {
+							parent[i] = -1;
+							continue;
+						}
+						parent[i] = i;
+						// the level below belongs to the previous slab
+						joinBackward(parent, backward, i, x, y, z, sizeX, sizeZ, y > fromY, true);
+					}
+				}
+			}
+		});
+
+		// 2) join the slabs: the first level of each slab with the level below
+		for (int slab = 1; slab < slabCount; slab++) {
+			int y = slab * slabHeight;
+			for (int z = 0; z < sizeZ; z++) {
+				int i = (y * sizeZ + z) * sizeX;
+				for (int x = 0; x < sizeX; x++, i++) {
+					if (parent[i] >= 0) {
+						joinBackward(parent, backward, i, x, y, z, sizeX, sizeZ, true, false);
+					}
+				}
+			}
+		}
+
+		// 3) number the roots in scan order, then label every block with its root's number
+		int count = 0;
+		int[] roots = new int[volume];
+		for (int i = 0; i < volume; i++) {
+			if (parent[i] == i) {
+				roots[i] = ++count;
+			}
+		}
+		final int[] sizes = new int[count + 1];
+		IntStream blockStream = IntStream.range(0, sizeY);
+		if (parallel) {
+			blockStream = blockStream.parallel();
+		}
+		// read-only finds, so the levels can run in parallel
+		blockStream.forEach(y -> {
+			for (int i = y * layer; i < (y + 1) * layer; i++) {
+				if (parent[i] >= 0) {
+					int root = i;
+					while (parent[root] != root) {
+						root = parent[root];
+					}
+					labels[i] = roots[root];
+				}
+			}
+		});
+		for (int label : labels) {
+			sizes[label]++;
+		}
+		return new Components(snapshot, labels, sizes);
+	}
+
+	/**
+	 * Unites a block with its matching neighbours that come before it in scan order.
+	 *
+	 * @param below whether to include the level below
+	 * @param sameLevel whether to include neighbours on the same level
+	 */
+	private static void joinBackward(int[] parent, int[] backward, int i, int x, int y, int z,
+			int sizeX, int sizeZ, boolean below, boolean sameLevel) {
+		for (int o = 0; o < backward.length; o += 3) {
+			int dx = backward[o];
+			int dy = backward[o + 1];
+			int dz = backward[o + 2];
+			if ((dy < 0) ? ! below : ! sameLevel) {
+				continue;
+			}
+			int nx = x + dx;
+			int nz = z + dz;
+			if (nx < 0 || nx >= sizeX || nz < 0 || nz >= sizeZ) {
+				continue;
+			}
+			int j = i + (dy * sizeZ + dz) * sizeX + dx;
+			if (parent[j] >= 0) {
+				union(parent, i, j);
+			}
+		}
+	}
+
+	private static void union(int[] parent, int a, int b) {
+		int rootA = find(parent, a);
+		int rootB = find(parent, b);
+		if (rootA < rootB) {
+			parent[rootB] = rootA;
+		} else if (rootB < rootA) {
+			parent[rootA] = rootB;
+		}
+	}
+
+	// with path halving
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+}
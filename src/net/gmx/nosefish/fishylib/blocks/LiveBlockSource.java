@@ -0,0 +1,65 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+import net.canarymod.api.world.Chunk;
+import net.canarymod.api.world.World;
+import net.canarymod.api.world.blocks.BlockType;
+import net.gmx.nosefish.fishylib.worldmath.FishyChunk;
+import net.gmx.nosefish.fishylib.worldmath.FishyWorld;
+
+/**
+ * Reads block ids straight from the loaded chunks of a world.
+ * Blocks in unloaded chunks and below the world are <code>UNKNOWN</code>,
+ * blocks above the world are air. Remembers the last chunk it read from,
+ * because lookups tend to be close to each other.
+ * <p>
+ * <b>Not thread-safe! Only use from the server thread.</b>
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class LiveBlockSource implements BlockSource {
+	private final FishyWorld world;
+	private Chunk lastChunk = null;
+	private int lastChunkX;
+	private int lastChunkZ;
+	private int height;
+
+	public LiveBlockSource(FishyWorld world) {
+		if (world == null) {
+			throw new NullPointerException("Parameter world was null.");
+		}
+		this.world = world;
+	}
+
+	@Override
+	public int getTypeId(int x, int y, int z) {
+		if (y < 0) {
+			return UNKNOWN;
+		}
+		int chunkX = FishyChunk.worldToChunk(x);
+		int chunkZ = FishyChunk.worldToChunk(z);
+		if (! world.isChunkLoaded(chunkX, chunkZ)) {
+			return UNKNOWN;
+		}
+		Chunk chunk = lastChunk;
+		if (chunk == null || chunkX != lastChunkX || chunkZ != lastChunkZ || ! chunk.isLoaded()) {
+			World canaryWorld = world.getWorldIfLoaded();
+			if (canaryWorld == null) {
+				return UNKNOWN;
+			}
+			chunk = canaryWorld.getChunk(chunkX, chunkZ);
+			height = canaryWorld.getHeight();
+			lastChunk = chunk;
+			lastChunkX = chunkX;
+			lastChunkZ = chunkZ;
+		}
+		if (y >= height) {
+			return BlockType.Air.getId();
+		}
+		return chunk.getBlockTypeAt(x - FishyChunk.chunkToWorld(chunkX), y, z - FishyChunk.chunkToWorld(chunkZ));
+	}
+
+	public FishyWorld getWorld() {
+		return world;
+	}
+}
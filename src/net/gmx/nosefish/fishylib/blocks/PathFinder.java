@@ -0,0 +1,292 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+import java.util.Arrays;
+
+import net.gmx.nosefish.fishylib.datastructures.LongIntMap;
+import net.gmx.nosefish.fishylib.datastructures.LongMinHeap;
+import net.gmx.nosefish.fishylib.worldmath.IFishyPoint;
+import net.gmx.nosefish.fishylib.worldmath.PackedPosition;
+
+/**
+ * A* search for a walking path between two blocks.
+ * <p>
+ * A position is walkable if the block there and the block above are
+ * passable (see <code>BlockTraits.PASSABLE</code>) and the block below is
+ * not. From there, a path can go to the four horizontal neighbours on the
+ * same level, one level up, or one level down. Blocks the
+ * <code>BlockSource</code> doesn't know are neither passable nor solid.
+ * <p>
+ * The search is resumable: <code>step</code> expands at most a given number
+ * of nodes and returns, so a long search can be spread over several ticks.
+ * The total number of nodes is limited as well, so the cost of a search is
+ * bounded even if there is no path. Once the limit is reached, no new
+ * positions are added, but those already found are still searched. Nodes are packed positions, kept in
+ * primitive collections, so no objects are created per node.
+ * <p>
+ * The path is computed on whatever the block source returns while the
+ * search runs; with a live world, blocks may change between steps.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class PathFinder {
+
+	public static enum Status {
+		/** The search is not done, call <code>step</code> again. */
+		SEARCHING,
+		FOUND,
+		/** All reachable positions have been searched. */
+		NO_PATH,
+		/** The goal wasn't found among the positions within the node limit. */
+		LIMIT_REACHED
+	}
+
+	// costs in tenths of a block
+	private static final int COST_STRAIGHT = 10;
+	private static final int COST_CLIMB = 14;
+	private static final int[] DX = {0, 1, 0, -1};
+	private static final int[] DZ = {-1, 0, 1, 0};
+
+	private final BlockSource blocks;
+	private final int goalX;
+	private final int goalY;
+	private final int goalZ;
+	private final long goal;
+	private final int maxNodes;
+
+	// packed position -> node
+	private final LongIntMap nodeIds;
+	// by node
+	private long[] positions;
+	private int[] costs;
+	private int[] parents;
+	private boolean[] closed;
+	private int nodeCount = 0;
+	// (f << 32) | node
+	private final LongMinHeap open = new LongMinHeap();
+
+	private Status status = Status.SEARCHING;
+	private int goalNode = -1;
+	// the node closest to the goal, for partial paths
+	private int bestNode = 0;
+	private int bestDistance;
+	private int expanded = 0;
+	// a position was skipped because of the node limit
+	private boolean limitHit = false;
+
+	/**
+	 * @param blocks the blocks to search
+	 * @param start
+	 * @param goal
+	 * @param maxNodes the maximum number of positions to visit
+	 */
+	public PathFinder(BlockSource blocks, IFishyPoint start, IFishyPoint goal, int maxNodes) {
+		this(blocks,
+				start.getIntX(), start.getIntY(), start.getIntZ(),
+				goal.getIntX(), goal.getIntY(), goal.getIntZ(),
+				maxNodes);
+	}
+
+	/**
+	 * @param blocks the blocks to search
+	 * @param startX
+	 * @param startY
+	 * @param startZ
+	 * @param goalX
+	 * @param goalY
+	 * @param goalZ
+	 * @param maxNodes the maximum number of positions to visit
+	 */
+	public PathFinder(BlockSource blocks,
+			int startX, int startY, int startZ,
+			int goalX, int goalY, int goalZ,
+			int maxNodes) {
+		if (blocks == null) {
+			throw new NullPointerException("Parameter blocks was null.");
+		}
+		if (maxNodes < 1) {
+			throw new IllegalArgumentException("maxNodes must be positive: " + maxNodes);
+		}
+		this.blocks = blocks;
+		this.goalX = goalX;
+		this.goalY = goalY;
+		this.goalZ = goalZ;
+		this.goal = PackedPosition.pack(goalX, goalY, goalZ);
+		this.maxNodes = maxNodes;
+		int capacity = Math.min(maxNodes, 256);
+		nodeIds = new LongIntMap(capacity);
+		positions = new long[capacity];
+		costs = new int[capacity];
+		parents = new int[capacity];
+		closed = new boolean[capacity];
+		int start = addNode(PackedPosition.pack(startX, startY, startZ), 0, -1);
+		bestDistance = heuristic(startX, startY, startZ);
+		open.add(key(bestDistance, start));
+	}
+
+	/**
+	 * Continues the search.
+	 *
+	 * @param budget the maximum number of positions to expand in this call
+	 * @return the status after this call
+	 */
+	public Status step(int budget) {
+		while (status == Status.SEARCHING && budget > 0) {
+			if (open.isEmpty()) {
+				status = limitHit ? Status.LIMIT_REACHED : Status.NO_PATH;
+				break;
+			}
+			int node = (int) open.poll();
+			if (closed[node]) {
+				// outdated entry, the node was reached cheaper
+				continue;
+			}
+			if (positions[node] == goal) {
+				goalNode = node;
+				status = Status.FOUND;
+				break;
+			}
+			closed[node] = true;
+			expanded++;
+			budget--;
+			expand(node);
+		}
+		return status;
+	}
+
+	private void expand(int node) {
+		long position = positions[node];
+		int x = PackedPosition.getX(position);
+		int y = PackedPosition.getY(position);
+		int z = PackedPosition.getZ(position);
+		boolean headroom = isPassable(x, y + 2, z);
+		for (int d = 0; d < 4; d++) {
+			int nx = x + DX[d];
+			int nz = z + DZ[d];
+			if (isWalkable(nx, y, nz)) {
+				visit(node, nx, y, nz, COST_STRAIGHT);
+			} else if (headroom && isWalkable(nx, y + 1, nz)) {
+				visit(node, nx, y + 1, nz, COST_CLIMB);
+			} else if (isPassable(nx, y + 1, nz) && isWalkable(nx, y - 1, nz)) {
+				// the walkable check covers (nx, y, nz)
+				visit(node, nx, y - 1, nz, COST_CLIMB);
+			}
+		}
+	}
+
+	private void visit(int from, int x, int y, int z, int stepCost) {
+		long position = PackedPosition.pack(x, y, z);
+		int cost = costs[from] + stepCost;
+		int node = nodeIds.get(position, -1);
+		if (node < 0) {
+			if (nodeCount == maxNodes) {
+				limitHit = true;
+				return;
+			}
+			node = addNode(position, cost, from);
+		} else if (closed[node] || cost >= costs[node]) {
+			return;
+		} else {
+			costs[node] = cost;
+			parents[node] = from;
+		}
+		int h = heuristic(x, y, z);
+		if (h < bestDistance) {
+			bestDistance = h;
+			bestNode = node;
+		}
+		open.add(key(cost + h, node));
+	}
+
+	private int addNode(long position, int cost, int parent) {
+		if (nodeCount == positions.length) {
+			int capacity = (int) Math.min((long) nodeCount * 2, maxNodes);
+			positions = Arrays.copyOf(positions, capacity);
+			costs = Arrays.copyOf(costs, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			closed = Arrays.copyOf(closed, capacity);
+		}
+		int node = nodeCount++;
+		positions[node] = position;
+		costs[node] = cost;
+		parents[node] = parent;
+		nodeIds.put(position, node);
+		return node;
+	}
+
+	// never overestimates: every step costs at least COST_STRAIGHT and
+	// moves at most one block horizontally and one vertically
+	private int heuristic(int x, int y, int z) {
+		int horizontal = Math.abs(goalX - x) + Math.abs(goalZ - z);
+		int vertical = Math.abs(goalY - y);
+		return COST_STRAIGHT * Math.max(horizontal, vertical);
+	}
+
+	private static long key(int f, int node) {
+		return ((long) f << 32) | node;
+	}
+
+	private boolean isWalkable(int x, int y, int z) {
+		return isPassable(x, y, z) && isPassable(x, y + 1, z) && isSolid(x, y - 1, z);
+	}
+
+	private boolean isPassable(int x, int y, int z) {
+		int id = blocks.getTypeId(x, y, z);
+		return id != BlockSource.UNKNOWN && BlockTraits.has(id, BlockTraits.PASSABLE);
+	}
+
+	private boolean isSolid(int x, int y, int z) {
+		int id = blocks.getTypeId(x, y, z);
+		return id != BlockSource.UNKNOWN && ! BlockTraits.has(id, BlockTraits.PASSABLE);
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the packed positions from start to goal, see <code>PackedPosition</code>;
+	 *         <code>null</code> unless the status is <code>FOUND</code>
+	 */
+	public long[] getPath() {
+		return (status == Status.FOUND) ? pathTo(goalNode) : null;
+	}
+
+	/**
+	 * For moving on while the search continues, or when there is no path.
+	 *
+	 * @return the packed positions from the start to the position closest
+	 *         to the goal found so far
+	 */
+	public long[] getBestPath() {
+		return pathTo((status == Status.FOUND) ? goalNode : bestNode);
+	}
+
+	private long[] pathTo(int node) {
+		int length = 0;
+		for (int n = node; n >= 0; n = parents[n]) {
+			length++;
+		}
+		long[] path = new long[length];
+		for (int n = node; n >= 0; n = parents[n]) {
+			path[--length] = positions[n];
+		}
+		return path;
+	}
+
+	/**
+	 * @return the number of positions expanded so far
+	 */
+	public int getExpandedNodes() {
+		return expanded;
+	}
+
+	/**
+	 * @return the number of positions visited so far, at most <code>maxNodes</code>
+	 */
+	public int getVisitedNodes() {
+		return nodeCount;
+	}
+}
@@ -0,0 +1,407 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.canarymod.api.world.World;
+import net.canarymod.api.world.blocks.Block;
+import net.gmx.nosefish.fishylib.datastructures.IntObjectMap;
+import net.gmx.nosefish.fishylib.datastructures.LongSet;
+import net.gmx.nosefish.fishylib.worldmath.FishyChunk;
+import net.gmx.nosefish.fishylib.worldmath.FishyCuboidInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyDirection;
+import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyPointInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyVectorInt;
+import net.gmx.nosefish.fishylib.worldmath.FishyWorld;
+import net.gmx.nosefish.fishylib.worldmath.PackedPosition;
+
+/**
+ * The redstone power and wire connections in a region, kept up to date
+ * instead of polled.
+ * <p>
+ * Built from a snapshot of the region, then updated block by block:
+ * <code>RedstoneListener</code> marks blocks that change as dirty, and
+ * once per tick <code>update</code> re-reads only those blocks, recomputes
+ * the wire connections around them and calls the listeners of blocks
+ * whose power changed. Lookups of power and direct inputs are array reads.
+ * <p>
+ * The graph only knows the blocks in its region. Wires at the border see
+ * the blocks outside as unconnected, so leave a margin of one block around
+ * the region you are interested in.
+ * <p>
+ * <b>Not thread-safe! Only use from the server thread.</b>
+ * Listeners are called from the server thread.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class RedstoneGraph {
+
+	/**
+	 * Callback for power changes.
+	 */
+	public static interface PowerListener {
+		/**
+		 * @param graph
+		 * @param x
+		 * @param y
+		 * @param z
+		 * @param oldPower
+		 * @param newPower
+		 */
+		public void powerChanged(RedstoneGraph graph, int x, int y, int z, int oldPower, int newPower);
+	}
+
+	// graphs that receive block changes, copy-on-write
+	private static volatile RedstoneGraph[] active = new RedstoneGraph[0];
+
+	private final FishyWorld world;
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+	// index like ChunkSnapshot; classification see RedstoneWireConnections.classify
+	private final byte[] info;
+	private final byte[] power;
+	private final byte[] masks;
+	// by index
+	private final IntObjectMap<List<PowerListener>> listeners = new IntObjectMap<>();
+	// packed positions
+	private final LongSet dirty = new LongSet();
+	// set by closeAll; the data can no longer be trusted
+	private volatile boolean invalid = false;
+
+	private RedstoneGraph(ChunkSnapshot snapshot) {
+		this.world = snapshot.getWorld();
+		this.minX = snapshot.getMinX();
+		this.minY = snapshot.getMinY();
+		this.minZ = snapshot.getMinZ();
+		this.sizeX = snapshot.getSizeX();
+		this.sizeY = snapshot.getSizeY();
+		this.sizeZ = snapshot.getSizeZ();
+		int volume = snapshot.volume();
+		info = new byte[volume];
+		power = new byte[volume];
+		masks = new byte[volume];
+		for (int i = 0; i < volume; i++) {
+			int id = snapshot.getTypeIdAt(i);
+			int data = snapshot.getDataAt(i);
+			info[i] = (byte) RedstoneWireConnections.classify(id, data, snapshot.isOpaqueAt(i));
+			power[i] = (byte) BlockInfo.getRedstonePower(id, data);
+		}
+		int i = 0;
+		for (int y = 0; y < sizeY; y++) {
+			for (int z = 0; z < sizeZ; z++) {
+				for (int x = 0; x < sizeX; x++, i++) {
+					updateMask(i, x, y, z);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the graph of a region and starts tracking changes in it.
+	 * Call <code>close</code> when you no longer need it.
+	 * <b>Only call from the server thread.</b>
+	 *
+	 * @param region
+	 * @return the graph, or <code>null</code> if not all chunks of the region are loaded
+	 * @throws IllegalArgumentException if the region is larger than <code>ChunkSnapshot.MAX_VOLUME</code>
+	 */
+	public static RedstoneGraph open(FishyCuboidInt region) {
+		ChunkSnapshot snapshot = ChunkSnapshot.of(region);
+		if (snapshot == null) {
+			return null;
+		}
+		RedstoneGraph graph = new RedstoneGraph(snapshot);
+		synchronized (RedstoneGraph.class) {
+			RedstoneGraph[] copy = Arrays.copyOf(active, active.length + 1);
+			copy[active.length] = graph;
+			active = copy;
+		}
+		return graph;
+	}
+
+	/**
+	 * Stops tracking changes. The graph keeps its last state.
+	 */
+	public void close() {
+		synchronized (RedstoneGraph.class) {
+			RedstoneGraph[] current = active;
+			for (int i = 0; i < current.length; i++) {
+				if (current[i] == this) {
+					RedstoneGraph[] copy = new RedstoneGraph[current.length - 1];
+					System.arraycopy(current, 0, copy, 0, i);
+					System.arraycopy(current, i + 1, copy, i, copy.length - i);
+					active = copy;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes all graphs and invalidates them, because nothing tracks
+	 * changes for them anymore. Called by FishyLib when it is disabled,
+	 * other plugins must not call it.
+	 * <b>Only call from the server thread.</b>
+	 */
+	public static void closeAll() {
+		RedstoneGraph[] closed;
+		synchronized (RedstoneGraph.class) {
+			closed = active;
+			active = new RedstoneGraph[0];
+		}
+		for (RedstoneGraph graph : closed) {
+			graph.invalid = true;
+		}
+	}
+
+	/**
+	 * @return <code>false</code> if the graph was invalidated because FishyLib
+	 *         has been disabled; open a new one after it is enabled again
+	 */
+	public boolean isValid() {
+		return ! invalid;
+	}
+
+	private void checkValid() {
+		if (invalid) {
+			throw new IllegalStateException("RedstoneGraph was invalidated because FishyLib has been disabled.");
+		}
+	}
+
+	/**
+	 * Marks a block as changed in all graphs that contain it.
+	 *
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	static void blockChanged(World world, int x, int y, int z) {
+		RedstoneGraph[] graphs = active;
+		if (graphs.length == 0) {
+			return;
+		}
+		FishyWorld fishyWorld = FishyWorld.factory(world);
+		for (RedstoneGraph graph : graphs) {
+			if (graph.world == fishyWorld && graph.contains(x, y, z)) {
+				graph.markDirty(x, y, z);
+			}
+		}
+	}
+
+	/**
+	 * Updates all graphs.
+	 */
+	static void updateAll() {
+		for (RedstoneGraph graph : active) {
+			graph.update();
+		}
+	}
+
+	/**
+	 * Marks a block to be re-read on the next <code>update</code>.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	public void markDirty(int x, int y, int z) {
+		if (contains(x, y, z)) {
+			dirty.add(PackedPosition.pack(x, y, z));
+		}
+	}
+
+	/**
+	 * Re-reads the dirty blocks from the world and calls the listeners of
+	 * blocks whose power changed. Called once per tick for open graphs;
+	 * call it yourself if you need the changes of the current tick.
+	 * Blocks in unloaded chunks stay dirty.
+	 */
+	public void update() {
+		if (invalid || dirty.isEmpty()) {
+			return;
+		}
+		final World canaryWorld = world.getWorldIfLoaded();
+		if (canaryWorld == null) {
+			return;
+		}
+		long[] positions = dirty.toArray();
+		for (long position : positions) {
+			int x = PackedPosition.getX(position);
+			int y = PackedPosition.getY(position);
+			int z = PackedPosition.getZ(position);
+			if (world.isChunkLoaded(FishyChunk.worldToChunk(x), FishyChunk.worldToChunk(z))) {
+				dirty.remove(position);
+				refresh(canaryWorld.getBlockAt(x, y, z), x, y, z);
+			}
+		}
+	}
+
+	private void refresh(Block block, int x, int y, int z) {
+		int i = indexOf(x, y, z);
+		int id = block.getTypeId();
+		int data = block.getData();
+		info[i] = (byte) RedstoneWireConnections.classify(id, data, BlockInfo.isOpaque(block));
+		// a block affects the wires next to it, one level up and down,
+		// and the wire below it through rule 2)
+		for (int ny = Math.max(y - 1, minY); ny <= Math.min(y + 1, minY + sizeY - 1); ny++) {
+			for (int nz = Math.max(z - 1, minZ); nz <= Math.min(z + 1, minZ + sizeZ - 1); nz++) {
+				for (int nx = Math.max(x - 1, minX); nx <= Math.min(x + 1, minX + sizeX - 1); nx++) {
+					updateMask(indexOf(nx, ny, nz), nx - minX, ny - minY, nz - minZ);
+				}
+			}
+		}
+		int oldPower = power[i];
+		int newPower = BlockInfo.getRedstonePower(id, data);
+		if (oldPower != newPower) {
+			power[i] = (byte) newPower;
+			List<PowerListener> subscribers = listeners.get(i);
+			if (subscribers != null) {
+				// copy: listeners may unsubscribe
+				for (PowerListener listener : new ArrayList<>(subscribers)) {
+					listener.powerChanged(this, x, y, z, oldPower, newPower);
+				}
+			}
+		}
+	}
+
+	private void updateMask(int i, int x, int y, int z) {
+		if ((info[i] & RedstoneWireConnections.WIRE) == 0) {
+			masks[i] = 0;
+		} else {
+			masks[i] = (byte) RedstoneWireConnections.wireMask(info, i, x, y, z, sizeX, sizeY, sizeZ);
+		}
+	}
+
+	/**
+	 * Calls the listener whenever the power of the block changes.
+	 *
+	 * @param location must be in the graph's region
+	 * @param listener
+	 */
+	public void subscribe(FishyLocationInt location, PowerListener listener) {
+		checkValid();
+		int i = indexOf(location);
+		List<PowerListener> subscribers = listeners.get(i);
+		if (subscribers == null) {
+			subscribers = new ArrayList<>(2);
+			listeners.put(i, subscribers);
+		}
+		subscribers.add(listener);
+	}
+
+	/**
+	 * @param location
+	 * @param listener
+	 * @return <code>true</code> if the listener was subscribed to the location
+	 */
+	public boolean unsubscribe(FishyLocationInt location, PowerListener listener) {
+		if (! contains(location)) {
+			return false;
+		}
+		int i = indexOf(location.getIntX(), location.getIntY(), location.getIntZ());
+		List<PowerListener> subscribers = listeners.get(i);
+		if (subscribers == null || ! subscribers.remove(listener)) {
+			return false;
+		}
+		if (subscribers.isEmpty()) {
+			listeners.remove(i);
+		}
+		return true;
+	}
+
+	/**
+	 * Same as <code>BlockInfo.getRedstonePower</code> for the block.
+	 *
+	 * @param location
+	 * @return the power of the block, 0 if it is outside the region
+	 */
+	public int getPower(FishyLocationInt location) {
+		checkValid();
+		if (! contains(location)) {
+			return 0;
+		}
+		return power[indexOf(location.getIntX(), location.getIntY(), location.getIntZ())];
+	}
+
+	/**
+	 * Same as <code>BlockInfo.isDirectInput</code>.
+	 *
+	 * @param inputLocation
+	 * @param target
+	 * @return <code>true</code> if the input block powers the target directly,
+	 *         <code>false</code> if not or the input is outside the region
+	 */
+	public boolean isDirectInput(FishyLocationInt inputLocation, FishyLocationInt target) {
+		checkValid();
+		if (! contains(inputLocation) || ! world.equals(target.getWorld())) {
+			return false;
+		}
+		FishyVectorInt in2target = new FishyVectorInt(inputLocation.getVectorTo(target));
+		if (in2target.lengthSquared() != 1.0D) {
+			return false;
+		}
+		FishyDirection connectionDirection = in2target.getCardinalDirection();
+		if (connectionDirection == FishyDirection.ERROR) {
+			return false;
+		}
+		int i = indexOf(inputLocation.getIntX(), inputLocation.getIntY(), inputLocation.getIntZ());
+		int directions = ((info[i] & RedstoneWireConnections.WIRE) != 0) ? masks[i] : info[i];
+		return (directions & RedstoneWireConnections.bit(connectionDirection)) != 0;
+	}
+
+	/**
+	 * @param location
+	 * @return the direction mask of the wire, see <code>RedstoneWireConnections</code>;
+	 *         0 if there is no wire or it is outside the region
+	 */
+	public int getWireMask(FishyLocationInt location) {
+		checkValid();
+		if (! contains(location)) {
+			return 0;
+		}
+		return masks[indexOf(location.getIntX(), location.getIntY(), location.getIntZ())];
+	}
+
+	public FishyWorld getWorld() {
+		return world;
+	}
+
+	/**
+	 * @return the region of the graph
+	 */
+	public FishyCuboidInt getRegion() {
+		return new FishyCuboidInt(world,
+				new FishyPointInt(minX, minY, minZ),
+				new FishyPointInt(minX + sizeX - 1, minY + sizeY - 1, minZ + sizeZ - 1));
+	}
+
+	public boolean contains(FishyLocationInt location) {
+		return world.equals(location.getWorld())
+				&& contains(location.getIntX(), location.getIntY(), location.getIntZ());
+	}
+
+	private boolean contains(int x, int y, int z) {
+		return x >= minX && x < minX + sizeX
+				&& y >= minY && y < minY + sizeY
+				&& z >= minZ && z < minZ + sizeZ;
+	}
+
+	private int indexOf(FishyLocationInt location) {
+		if (! contains(location)) {
+			throw new IllegalArgumentException("Location outside the graph: " + location);
+		}
+		return indexOf(location.getIntX(), location.getIntY(), location.getIntZ());
+	}
+
+	private int indexOf(int x, int y, int z) {
+		return ((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX);
+	}
+}
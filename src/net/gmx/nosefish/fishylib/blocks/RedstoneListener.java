@@ -0,0 +1,66 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+import net.canarymod.Canary;
+import net.canarymod.api.world.blocks.Block;
+import net.canarymod.hook.HookHandler;
+import net.canarymod.hook.system.ServerTickHook;
+import net.canarymod.hook.world.BlockUpdateHook;
+import net.canarymod.hook.world.RedstoneChangeHook;
+import net.canarymod.plugin.Plugin;
+import net.canarymod.plugin.PluginListener;
+import net.canarymod.plugin.Priority;
+
+/**
+ * Feeds block changes to the open <code>RedstoneGraph</code>s.
+ * Registered by FishyLib on enable; other plugins don't need to do anything.
+ * <p>
+ * The hooks fire before the change happens, so they only mark the block
+ * as dirty. The graphs re-read their dirty blocks on the next server tick.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class RedstoneListener implements PluginListener {
+
+	private static RedstoneListener instance = null;
+
+	/**
+	 * @param plugin the plugin to register the listener for
+	 */
+	public static synchronized void register(Plugin plugin) {
+		if (instance == null) {
+			instance = new RedstoneListener();
+			Canary.hooks().registerListener(instance, plugin);
+		}
+	}
+
+	/**
+	 * Stops feeding block changes to the graphs. Does not close them,
+	 * see <code>RedstoneGraph.closeAll</code>.
+	 */
+	public static synchronized void unregister() {
+		if (instance != null) {
+			Canary.hooks().unregisterPluginListener(instance);
+			instance = null;
+		}
+	}
+
+	@HookHandler(priority = Priority.PASSIVE)
+	public void onBlockUpdate(BlockUpdateHook hook) {
+		blockChanged(hook.getBlock());
+	}
+
+	@HookHandler(priority = Priority.PASSIVE)
+	public void onRedstoneChange(RedstoneChangeHook hook) {
+		blockChanged(hook.getSourceBlock());
+	}
+
+	@HookHandler(priority = Priority.PASSIVE)
+	public void onServerTick(ServerTickHook hook) {
+		RedstoneGraph.updateAll();
+	}
+
+	private static void blockChanged(Block block) {
+		RedstoneGraph.blockChanged(block.getWorld(), block.getX(), block.getY(), block.getZ());
+	}
+}
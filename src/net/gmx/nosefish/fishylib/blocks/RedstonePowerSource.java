@@ -2,11 +2,10 @@ package net.gmx.nosefish.fishylib.blocks;
 
 import java.util.Collections;
 import java.util.EnumSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 
 import net.canarymod.api.world.blocks.BlockType;
+import net.gmx.nosefish.fishylib.datastructures.IntObjectMap;
 
 public enum RedstonePowerSource {
 	DetectorRail(BlockType.DetectorRail.getId()),
@@ -29,7 +28,7 @@ public enum RedstonePowerSource {
 	WoodPlate(BlockType.WoodPlate.getId());
 	private final int id;
 	
-	private static final Map<Integer, RedstonePowerSource> reverseMap = new TreeMap<>();
+	private static final IntObjectMap<RedstonePowerSource> reverseMap = new IntObjectMap<>(32);
 	static {
 		for (RedstonePowerSource value : RedstonePowerSource.values()) {
 			reverseMap.put(value.getId(), value);
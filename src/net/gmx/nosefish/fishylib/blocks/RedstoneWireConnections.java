@@ -0,0 +1,282 @@
+package net.gmx.nosefish.fishylib.blocks;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import net.canarymod.api.world.blocks.BlockType;
+import net.gmx.nosefish.fishylib.worldmath.FishyDirection;
+import net.gmx.nosefish.fishylib.worldmath.IntTriConsumer;
+
+/**
+ * The connections of all redstone wires in a snapshot, computed in one batch.
+ * <p>
+ * Same rules as <code>BlockInfo.getRedstoneWireConnections</code>, but every
+ * block of the snapshot is classified once, and neighbouring wires share
+ * that work instead of reading the same blocks again. The result is a
+ * 4-bit direction mask per wire, see <code>bit</code>.
+ * <p>
+ * Wires at the border of the snapshot see the blocks outside as
+ * <code>ChunkSnapshot.UNKNOWN</code>, which never connects. Leave a margin
+ * of one block around the region you are interested in.
+ * <p>
+ * Immutable and thread-safe.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class RedstoneWireConnections {
+	public static final int NORTH_BIT = 0x1;
+	public static final int EAST_BIT = 0x2;
+	public static final int SOUTH_BIT = 0x4;
+	public static final int WEST_BIT = 0x8;
+	public static final int ALL_BITS = 0xF;
+
+	// per block of the snapshot: directions a wire there connects to, 0 if no wire
+	private final byte[] masks;
+	private final ChunkSnapshot snapshot;
+	private final int wireCount;
+
+	// classification of a block, low 4 bits: directions it accepts a wire from
+	static final int WIRE = 0x10;
+	static final int OPAQUE = 0x20;
+
+	private RedstoneWireConnections(ChunkSnapshot snapshot) {
+		this.snapshot = snapshot;
+		this.masks = new byte[snapshot.volume()];
+		this.wireCount = compute();
+	}
+
+	/**
+	 * Computes the connections of all wires in the snapshot.
+	 *
+	 * @param snapshot
+	 * @return the connections
+	 */
+	public static RedstoneWireConnections of(ChunkSnapshot snapshot) {
+		return new RedstoneWireConnections(snapshot);
+	}
+
+	private int compute() {
+		int sizeX = snapshot.getSizeX();
+		int sizeY = snapshot.getSizeY();
+		int sizeZ = snapshot.getSizeZ();
+		byte[] info = new byte[masks.length];
+		for (int i = 0; i < info.length; i++) {
+			info[i] = (byte) classify(snapshot.getTypeIdAt(i), snapshot.getDataAt(i), snapshot.isOpaqueAt(i));
+		}
+		int count = 0;
+		int i = 0;
+		for (int y = 0; y < sizeY; y++) {
+			for (int z = 0; z < sizeZ; z++) {
+				for (int x = 0; x < sizeX; x++, i++) {
+					if ((info[i] & WIRE) != 0) {
+						masks[i] = (byte) wireMask(info, i, x, y, z, sizeX, sizeY, sizeZ);
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Classifies a block for <code>wireMask</code>. Reads the block once.
+	 *
+	 * @param id
+	 * @param data
+	 * @param opaque
+	 * @return the directions a wire may connect to this block from, as mask bits,
+	 *         plus the WIRE and OPAQUE flags
+	 */
+	static int classify(int id, int data, boolean opaque) {
+		int flags = 0;
+		if (BlockDecodeTables.isValid(id, data)) {
+			flags = BlockDecodeTables.getConnectorSides(BlockDecodeTables.key(id, data));
+		}
+		if (id == BlockType.RedstoneWire.getId()) {
+			flags |= WIRE;
+		}
+		if (opaque) {
+			flags |= OPAQUE;
+		}
+		return flags;
+	}
+
+	/**
+	 * Applies rules 1) to 5) to the wire at index <code>i</code> of a box of
+	 * classified blocks, laid out like a snapshot. Blocks outside the box never connect.
+	 *
+	 * @param info the classified blocks, see <code>classify</code>
+	 * @param i the index of the wire
+	 * @param x
+	 * @param y
+	 * @param z the position of the wire, relative to the box
+	 * @param sizeX
+	 * @param sizeY
+	 * @param sizeZ
+	 * @return the direction mask of the wire
+	 */
+	static int wireMask(byte[] info, int i, int x, int y, int z, int sizeX, int sizeY, int sizeZ) {
+		int strideZ = sizeX;
+		int strideY = sizeX * sizeZ;
+		boolean hasAbove = y + 1 < sizeY;
+		boolean hasBelow = y > 0;
+		// outside is unknown, which is not opaque
+		boolean aboveWireOpaque = hasAbove && (info[i + strideY] & OPAQUE) != 0;
+		int mask = 0;
+		if (z > 0) {
+			mask |= connects(info, i - strideZ, SOUTH_BIT, NORTH_BIT, aboveWireOpaque, hasAbove, hasBelow, strideY);
+		}
+		if (x + 1 < sizeX) {
+			mask |= connects(info, i + 1, WEST_BIT, EAST_BIT, aboveWireOpaque, hasAbove, hasBelow, strideY);
+		}
+		if (z + 1 < sizeZ) {
+			mask |= connects(info, i + strideZ, NORTH_BIT, SOUTH_BIT, aboveWireOpaque, hasAbove, hasBelow, strideY);
+		}
+		if (x > 0) {
+			mask |= connects(info, i - 1, EAST_BIT, WEST_BIT, aboveWireOpaque, hasAbove, hasBelow, strideY);
+		}
+		return completeMask(mask);
+	}
+
+	/**
+	 * Rules 1) to 3) for one neighbour.
+	 *
+	 * @param info
+	 * @param j index of the neighbour
+	 * @param fromWire the side of the neighbour that faces the wire
+	 * @param direction the direction from the wire to the neighbour
+	 * @return <code>direction</code> if the wire connects, 0 otherwise
+	 */
+	private static int connects(byte[] info, int j, int fromWire, int direction,
+			boolean aboveWireOpaque, boolean hasAbove, boolean hasBelow, int strideY) {
+		int neighbour = info[j];
+		// 1) redstone connector facing the wire
+		if ((neighbour & fromWire) != 0) {
+			return direction;
+		}
+		// 2) wire one level up
+		if (! aboveWireOpaque && hasAbove && (info[j + strideY] & WIRE) != 0) {
+			return direction;
+		}
+		// 3) wire one level down
+		if ((neighbour & OPAQUE) == 0 && hasBelow && (info[j - strideY] & WIRE) != 0) {
+			return direction;
+		}
+		return 0;
+	}
+
+	/**
+	 * Rules 4) and 5): a wire with one connection also points the other way,
+	 * a wire without connections points everywhere.
+	 */
+	private static int completeMask(int mask) {
+		switch (mask) {
+		case 0: return ALL_BITS;
+		case NORTH_BIT: return NORTH_BIT | SOUTH_BIT;
+		case SOUTH_BIT: return NORTH_BIT | SOUTH_BIT;
+		case EAST_BIT: return EAST_BIT | WEST_BIT;
+		case WEST_BIT: return EAST_BIT | WEST_BIT;
+		default: return mask;
+		}
+	}
+
+	public ChunkSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return the number of wires in the snapshot
+	 */
+	public int getWireCount() {
+		return wireCount;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the direction mask of the wire, 0 if there is no wire
+	 *         or the block is outside the snapshot
+	 */
+	public int getMask(int x, int y, int z) {
+		if (! snapshot.contains(x, y, z)) {
+			return 0;
+		}
+		return masks[snapshot.indexOf(x, y, z)];
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the directions the wire connects to, or <code>null</code> if there is no wire,
+	 *         like <code>BlockInfo.getRedstoneWireConnections</code>
+	 */
+	public Set<FishyDirection> getConnections(int x, int y, int z) {
+		int mask = getMask(x, y, z);
+		return (mask == 0) ? null : toDirections(mask);
+	}
+
+	/**
+	 * Calls the action with the coordinates of every wire.
+	 *
+	 * @param action
+	 */
+	public void forEachWire(IntTriConsumer action) {
+		int minX = snapshot.getMinX();
+		int minY = snapshot.getMinY();
+		int minZ = snapshot.getMinZ();
+		int sizeX = snapshot.getSizeX();
+		int sizeZ = snapshot.getSizeZ();
+		for (int i = 0; i < masks.length; i++) {
+			if (masks[i] != 0) {
+				action.accept(minX + i % sizeX, minY + i / (sizeX * sizeZ), minZ + (i / sizeX) % sizeZ);
+			}
+		}
+	}
+
+	/**
+	 * @param direction
+	 * @return the mask bit for a cardinal direction, 0 for all other directions
+	 */
+	public static int bit(FishyDirection direction) {
+		switch (direction) {
+		case NORTH: return NORTH_BIT;
+		case EAST: return EAST_BIT;
+		case SOUTH: return SOUTH_BIT;
+		case WEST: return WEST_BIT;
+		default: return 0;
+		}
+	}
+
+	/**
+	 * @param mask
+	 * @param direction
+	 * @return <code>true</code> if the mask contains the direction
+	 */
+	public static boolean contains(int mask, FishyDirection direction) {
+		return (mask & bit(direction)) != 0;
+	}
+
+	/**
+	 * @param mask
+	 * @return a new set with the directions in the mask
+	 */
+	public static Set<FishyDirection> toDirections(int mask) {
+		Set<FishyDirection> directions = EnumSet.noneOf(FishyDirection.class);
+		if ((mask & NORTH_BIT) != 0) {
+			directions.add(FishyDirection.NORTH);
+		}
+		if ((mask & EAST_BIT) != 0) {
+			directions.add(FishyDirection.EAST);
+		}
+		if ((mask & SOUTH_BIT) != 0) {
+			directions.add(FishyDirection.SOUTH);
+		}
+		if ((mask & WEST_BIT) != 0) {
+			directions.add(FishyDirection.WEST);
+		}
+		return directions;
+	}
+}
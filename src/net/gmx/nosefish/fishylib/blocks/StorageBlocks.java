@@ -1,25 +1,16 @@
 package net.gmx.nosefish.fishylib.blocks;
 
-import java.util.Collections;
-import java.util.SortedSet;
-import java.util.TreeSet;
-
 import net.canarymod.api.world.blocks.BlockType;
+import net.gmx.nosefish.fishylib.datastructures.IntSet;
 
 public class StorageBlocks {
-		static final SortedSet<Integer> ids; 
-		private static final Integer[] idArray = new Integer[] {
-			new Integer(BlockType.Chest.getId()),
-			new Integer(BlockType.TrappedChest.getId()),
-			new Integer(BlockType.Dispenser.getId()),
-			new Integer(BlockType.Dropper.getId()),
-			new Integer(BlockType.Hopper.getId()),
+		static final IntSet ids = IntSet.of(
+			BlockType.Chest.getId(),
+			BlockType.TrappedChest.getId(),
+			BlockType.Dispenser.getId(),
+			BlockType.Dropper.getId(),
+			BlockType.Hopper.getId()
 			// version 1.6.2
-		};
-		static {
-			TreeSet <Integer> tmpSet = new TreeSet<>();
-			Collections.addAll(tmpSet, idArray);
-			ids = Collections.unmodifiableSortedSet(tmpSet);
-		}
+		);
 
 }
@@ -0,0 +1,259 @@
+package net.gmx.nosefish.fishylib.datastructures;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Set of primitive longs with lock-free reads, for data that one thread
+ * writes and many threads read, like the loaded chunks of a world.
+ * <p>
+ * Writers are serialized by a lock. Readers never block: they probe an
+ * <code>AtomicLongArray</code>, and removal leaves a tombstone instead of
+ * shifting keys, so a concurrent reader can never miss a key that stays
+ * in the set. When the table grows, the new table is published as a whole.
+ * A reader sees every change that completed before its read started.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class ConcurrentLongSet {
+	// 0 marks a free slot, TOMBSTONE a removed key;
+	// the keys 0 and TOMBSTONE themselves are tracked by flags
+	private static final long TOMBSTONE = Long.MIN_VALUE;
+
+	private static final class Table {
+		final AtomicLongArray keys;
+		final int mask;
+		final int maxFill;
+
+		Table(int capacity) {
+			keys = new AtomicLongArray(capacity);
+			mask = capacity - 1;
+			maxFill = PrimitiveHash.maxFill(capacity);
+		}
+	}
+
+	private volatile Table table;
+	private volatile boolean containsZero = false;
+	private volatile boolean containsTombstone = false;
+	private volatile int size = 0;
+	// keys and tombstones in the table, guarded by this
+	private int used = 0;
+
+	public ConcurrentLongSet() {
+		this(8);
+	}
+
+	/**
+	 * @param expectedSize the number of elements the set can hold without resizing
+	 */
+	public ConcurrentLongSet(int expectedSize) {
+		table = new Table(PrimitiveHash.tableSize(expectedSize));
+	}
+
+	/**
+	 * Lock-free.
+	 *
+	 * @param key
+	 * @return <code>true</code> if the set contains the key
+	 */
+	public boolean contains(long key) {
+		if (key == 0) {
+			return containsZero;
+		}
+		if (key == TOMBSTONE) {
+			return containsTombstone;
+		}
+		return contains(table, key);
+	}
+
+	/**
+	 * Lock-free. All keys are checked against the same table, but not atomically:
+	 * a key added or removed during the call may or may not be seen.
+	 *
+	 * @param keys
+	 * @return <code>true</code> if the set contains all keys
+	 */
+	public boolean containsAll(long... keys) {
+		Table t = table;
+		for (long key : keys) {
+			boolean found;
+			if (key == 0) {
+				found = containsZero;
+			} else if (key == TOMBSTONE) {
+				found = containsTombstone;
+			} else {
+				found = contains(t, key);
+			}
+			if (! found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean contains(Table t, long key) {
+		AtomicLongArray k = t.keys;
+		int mask = t.mask;
+		int pos = PrimitiveHash.mix(key) & mask;
+		long cur;
+		// terminates: the table always has free slots
+		while ((cur = k.get(pos)) != 0) {
+			if (cur == key) {
+				return true;
+			}
+			pos = (pos + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * @param key
+	 * @return <code>true</code> if the set did not contain the key before
+	 */
+	public synchronized boolean add(long key) {
+		if (key == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		if (key == TOMBSTONE) {
+			if (containsTombstone) {
+				return false;
+			}
+			containsTombstone = true;
+			size++;
+			return true;
+		}
+		Table t = table;
+		AtomicLongArray k = t.keys;
+		int pos = PrimitiveHash.mix(key) & t.mask;
+		int freeSlot = -1;
+		long cur;
+		while ((cur = k.get(pos)) != 0) {
+			if (cur == key) {
+				return false;
+			}
+			if (cur == TOMBSTONE && freeSlot < 0) {
+				freeSlot = pos;
+			}
+			pos = (pos + 1) & t.mask;
+		}
+		if (freeSlot < 0) {
+			freeSlot = pos;
+			used++;
+		}
+		k.set(freeSlot, key);
+		size++;
+		if (used > t.maxFill) {
+			rehash();
+		}
+		return true;
+	}
+
+	/**
+	 * @param key
+	 * @return <code>true</code> if the set contained the key
+	 */
+	public synchronized boolean remove(long key) {
+		if (key == 0) {
+			if (! containsZero) {
+				return false;
+			}
+			containsZero = false;
+			size--;
+			return true;
+		}
+		if (key == TOMBSTONE) {
+			if (! containsTombstone) {
+				return false;
+			}
+			containsTombstone = false;
+			size--;
+			return true;
+		}
+		Table t = table;
+		AtomicLongArray k = t.keys;
+		int pos = PrimitiveHash.mix(key) & t.mask;
+		long cur;
+		while ((cur = k.get(pos)) != 0) {
+			if (cur == key) {
+				k.set(pos, TOMBSTONE);
+				size--;
+				return true;
+			}
+			pos = (pos + 1) & t.mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Copies the live keys into a fresh table, dropping the tombstones,
+	 * and publishes it. Readers still probing the old table see its last state.
+	 */
+	private void rehash() {
+		Table old = table;
+		// room for as many new keys as there are live ones, so that steady
+		// churn at any size rehashes only every size-th add
+		Table t = new Table(PrimitiveHash.tableSize(Math.max(2 * size, 8)));
+		AtomicLongArray oldKeys = old.keys;
+		int count = 0;
+		for (int i = 0; i < oldKeys.length(); i++) {
+			long key = oldKeys.get(i);
+			if (key != 0 && key != TOMBSTONE) {
+				int pos = PrimitiveHash.mix(key) & t.mask;
+				while (t.keys.get(pos) != 0) {
+					pos = (pos + 1) & t.mask;
+				}
+				t.keys.set(pos, key);
+				count++;
+			}
+		}
+		used = count;
+		table = t;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public synchronized void clear() {
+		if (size == 0 && used == 0) {
+			return;
+		}
+		table = new Table(PrimitiveHash.tableSize(8));
+		containsZero = false;
+		containsTombstone = false;
+		size = 0;
+		used = 0;
+	}
+
+	/**
+	 * Calls the action for every element, in no particular order.
+	 * Lock-free and weakly consistent, like <code>contains</code>.
+	 *
+	 * @param action
+	 */
+	public void forEach(LongConsumer action) {
+		if (containsZero) {
+			action.accept(0);
+		}
+		if (containsTombstone) {
+			action.accept(TOMBSTONE);
+		}
+		AtomicLongArray k = table.keys;
+		for (int i = 0; i < k.length(); i++) {
+			long key = k.get(i);
+			if (key != 0 && key != TOMBSTONE) {
+				action.accept(key);
+			}
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package net.gmx.nosefish.fishylib.datastructures;
+
+/**
+ * Callback for iterating over an <code>IntObjectMap</code>.
+ *
+ * @param <V> the value type
+ */
+public interface IntObjectConsumer<V> {
+	public void accept(int key, V value);
+}
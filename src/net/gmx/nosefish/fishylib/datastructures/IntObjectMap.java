@@ -0,0 +1,248 @@
+package net.gmx.nosefish.fishylib.datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map from primitive ints to objects. Uses open addressing with linear
+ * probing, so lookups neither box nor chase pointers.
+ * <p>
+ * <code>null</code> values are allowed, but <code>get</code> cannot
+ * tell them apart from missing keys. Use <code>containsKey</code> for that.
+ * <p>
+ * Not thread-safe. Safe for concurrent reads if nobody writes.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ * @param <V> the value type
+ */
+public class IntObjectMap<V> {
+	// 0 marks a free slot; the key 0 itself is stored in zeroValue
+	private int[] keys;
+	private V[] values;
+	private boolean containsZero = false;
+	private V zeroValue = null;
+	private int mask;
+	private int maxFill;
+	private int size = 0;
+	
+	public IntObjectMap() {
+		this(8);
+	}
+	
+	/**
+	 * @param expectedSize the number of entries the map can hold without resizing
+	 */
+	public IntObjectMap(int expectedSize) {
+		allocate(PrimitiveHash.tableSize(expectedSize));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity) {
+		this.keys = new int[capacity];
+		this.values = (V[]) new Object[capacity];
+		this.mask = capacity - 1;
+		this.maxFill = PrimitiveHash.maxFill(capacity);
+	}
+	
+	private int indexOf(int key) {
+		int[] k = keys;
+		int pos = PrimitiveHash.mix(key) & mask;
+		int cur;
+		while ((cur = k[pos]) != 0) {
+			if (cur == key) {
+				return pos;
+			}
+			pos = (pos + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param key
+	 * @return the value for the key, or <code>null</code> if there is none
+	 */
+	public V get(int key) {
+		if (key == 0) {
+			return zeroValue;
+		}
+		int pos = indexOf(key);
+		return (pos < 0) ? null : values[pos];
+	}
+	
+	public boolean containsKey(int key) {
+		if (key == 0) {
+			return containsZero;
+		}
+		return indexOf(key) >= 0;
+	}
+	
+	/**
+	 * @param key
+	 * @param value
+	 * @return the previous value for the key, or <code>null</code> if there was none
+	 */
+	public V put(int key, V value) {
+		if (key == 0) {
+			V old = zeroValue;
+			if (! containsZero) {
+				containsZero = true;
+				size++;
+			}
+			zeroValue = value;
+			return old;
+		}
+		int pos = PrimitiveHash.mix(key) & mask;
+		int cur;
+		while ((cur = keys[pos]) != 0) {
+			if (cur == key) {
+				V old = values[pos];
+				values[pos] = value;
+				return old;
+			}
+			pos = (pos + 1) & mask;
+		}
+		keys[pos] = key;
+		values[pos] = value;
+		if (++size > maxFill) {
+			rehash(keys.length * 2);
+		}
+		return null;
+	}
+	
+	/**
+	 * @param key
+	 * @return the removed value, or <code>null</code> if there was none
+	 */
+	public V remove(int key) {
+		if (key == 0) {
+			if (! containsZero) {
+				return null;
+			}
+			V old = zeroValue;
+			containsZero = false;
+			zeroValue = null;
+			size--;
+			return old;
+		}
+		int pos = indexOf(key);
+		if (pos < 0) {
+			return null;
+		}
+		V old = values[pos];
+		size--;
+		shiftKeys(pos);
+		return old;
+	}
+	
+	// backward-shift deletion, so we never need tombstones
+	private void shiftKeys(int pos) {
+		int last;
+		int cur;
+		while (true) {
+			last = pos;
+			pos = (pos + 1) & mask;
+			while (true) {
+				if ((cur = keys[pos]) == 0) {
+					keys[last] = 0;
+					values[last] = null;
+					return;
+				}
+				int slot = PrimitiveHash.mix(cur) & mask;
+				if (PrimitiveHash.canShift(last, slot, pos)) {
+					break;
+				}
+				pos = (pos + 1) & mask;
+			}
+			keys[last] = cur;
+			values[last] = values[pos];
+		}
+	}
+	
+	private void rehash(int newCapacity) {
+		int[] oldKeys = keys;
+		V[] oldValues = values;
+		allocate(newCapacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			int key = oldKeys[i];
+			if (key != 0) {
+				int pos = PrimitiveHash.mix(key) & mask;
+				while (keys[pos] != 0) {
+					pos = (pos + 1) & mask;
+				}
+				keys[pos] = key;
+				values[pos] = oldValues[i];
+			}
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		containsZero = false;
+		zeroValue = null;
+		size = 0;
+	}
+	
+	/**
+	 * Calls the action for every entry, in no particular order.
+	 * Do not modify the map from within the action.
+	 * 
+	 * @param action
+	 */
+	public void forEach(IntObjectConsumer<? super V> action) {
+		if (containsZero) {
+			action.accept(0, zeroValue);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0) {
+				action.accept(keys[i], values[i]);
+			}
+		}
+	}
+	
+	/**
+	 * @return the keys, in no particular order
+	 */
+	public int[] keys() {
+		int[] result = new int[size];
+		int i = 0;
+		if (containsZero) {
+			result[i++] = 0;
+		}
+		for (int key : keys) {
+			if (key != 0) {
+				result[i++] = key;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return a new list containing the values, in no particular order
+	 */
+	public List<V> values() {
+		List<V> result = new ArrayList<>(size);
+		if (containsZero) {
+			result.add(zeroValue);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0) {
+				result.add(values[i]);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,223 @@
+package net.gmx.nosefish.fishylib.datastructures;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of primitive ints. Uses open addressing with linear probing,
+ * so lookups neither box nor chase pointers.
+ * <p>
+ * Not thread-safe. Safe for concurrent reads if nobody writes.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class IntSet {
+	// 0 marks a free slot; the key 0 itself is tracked by containsZero
+	private int[] keys;
+	private boolean containsZero = false;
+	private int mask;
+	private int maxFill;
+	private int size = 0;
+	
+	public IntSet() {
+		this(8);
+	}
+	
+	/**
+	 * @param expectedSize the number of elements the set can hold without resizing
+	 */
+	public IntSet(int expectedSize) {
+		allocate(PrimitiveHash.tableSize(expectedSize));
+	}
+	
+	/**
+	 * Creates a set containing the values.
+	 * 
+	 * @param values
+	 * @return the new set
+	 */
+	public static IntSet of(int... values) {
+		IntSet set = new IntSet(values.length);
+		for (int value : values) {
+			set.add(value);
+		}
+		return set;
+	}
+	
+	private void allocate(int capacity) {
+		this.keys = new int[capacity];
+		this.mask = capacity - 1;
+		this.maxFill = PrimitiveHash.maxFill(capacity);
+	}
+	
+	public boolean contains(int key) {
+		if (key == 0) {
+			return containsZero;
+		}
+		int[] k = keys;
+		int pos = PrimitiveHash.mix(key) & mask;
+		int cur;
+		while ((cur = k[pos]) != 0) {
+			if (cur == key) {
+				return true;
+			}
+			pos = (pos + 1) & mask;
+		}
+		return false;
+	}
+	
+	/**
+	 * @param key
+	 * @return <code>true</code> if the set did not contain the key before
+	 */
+	public boolean add(int key) {
+		if (key == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int pos = PrimitiveHash.mix(key) & mask;
+		int cur;
+		while ((cur = keys[pos]) != 0) {
+			if (cur == key) {
+				return false;
+			}
+			pos = (pos + 1) & mask;
+		}
+		keys[pos] = key;
+		if (++size > maxFill) {
+			rehash(keys.length * 2);
+		}
+		return true;
+	}
+	
+	public void addAll(int... values) {
+		for (int value : values) {
+			add(value);
+		}
+	}
+	
+	/**
+	 * @param key
+	 * @return <code>true</code> if the set contained the key
+	 */
+	public boolean remove(int key) {
+		if (key == 0) {
+			if (! containsZero) {
+				return false;
+			}
+			containsZero = false;
+			size--;
+			return true;
+		}
+		int pos = PrimitiveHash.mix(key) & mask;
+		int cur;
+		while ((cur = keys[pos]) != 0) {
+			if (cur == key) {
+				size--;
+				shiftKeys(pos);
+				return true;
+			}
+			pos = (pos + 1) & mask;
+		}
+		return false;
+	}
+	
+	// backward-shift deletion, so we never need tombstones
+	private void shiftKeys(int pos) {
+		int last;
+		int cur;
+		while (true) {
+			last = pos;
+			pos = (pos + 1) & mask;
+			while (true) {
+				if ((cur = keys[pos]) == 0) {
+					keys[last] = 0;
+					return;
+				}
+				int slot = PrimitiveHash.mix(cur) & mask;
+				if (PrimitiveHash.canShift(last, slot, pos)) {
+					break;
+				}
+				pos = (pos + 1) & mask;
+			}
+			keys[last] = cur;
+		}
+	}
+	
+	private void rehash(int newCapacity) {
+		int[] oldKeys = keys;
+		allocate(newCapacity);
+		for (int key : oldKeys) {
+			if (key != 0) {
+				int pos = PrimitiveHash.mix(key) & mask;
+				while (keys[pos] != 0) {
+					pos = (pos + 1) & mask;
+				}
+				keys[pos] = key;
+			}
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		Arrays.fill(keys, 0);
+		containsZero = false;
+		size = 0;
+	}
+	
+	/**
+	 * Calls the action for every element, in no particular order.
+	 * Do not modify the set from within the action.
+	 * 
+	 * @param action
+	 */
+	public void forEach(IntConsumer action) {
+		if (containsZero) {
+			action.accept(0);
+		}
+		for (int key : keys) {
+			if (key != 0) {
+				action.accept(key);
+			}
+		}
+	}
+	
+	/**
+	 * @return the elements, in no particular order
+	 */
+	public int[] toArray() {
+		int[] result = new int[size];
+		int i = 0;
+		if (containsZero) {
+			result[i++] = 0;
+		}
+		for (int key : keys) {
+			if (key != 0) {
+				result[i++] = key;
+			}
+		}
+		return result;
+	}
+	
+	@Override
+	public String toString() {
+		int[] elements = toArray();
+		Arrays.sort(elements);
+		return Arrays.toString(elements);
+	}
+}
@@ -0,0 +1,188 @@
+package net.gmx.nosefish.fishylib.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * Map from primitive longs to primitive ints, for example from packed
+ * positions to indices. Uses open addressing with linear probing, like
+ * <code>LongObjectMap</code>.
+ * <p>
+ * Not thread-safe. Safe for concurrent reads if nobody writes.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class LongIntMap {
+	// 0 marks a free slot; the key 0 itself is stored in zeroValue
+	private long[] keys;
+	private int[] values;
+	private boolean containsZero = false;
+	private int zeroValue = 0;
+	private int mask;
+	private int maxFill;
+	private int size = 0;
+
+	public LongIntMap() {
+		this(8);
+	}
+
+	/**
+	 * @param expectedSize the number of entries the map can hold without resizing
+	 */
+	public LongIntMap(int expectedSize) {
+		allocate(PrimitiveHash.tableSize(expectedSize));
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		this.maxFill = PrimitiveHash.maxFill(capacity);
+	}
+
+	private int indexOf(long key) {
+		long[] k = keys;
+		int pos = PrimitiveHash.mix(key) & mask;
+		long cur;
+		while ((cur = k[pos]) != 0) {
+			if (cur == key) {
+				return pos;
+			}
+			pos = (pos + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param key
+	 * @param defaultValue
+	 * @return the value for the key, or <code>defaultValue</code> if there is none
+	 */
+	public int get(long key, int defaultValue) {
+		if (key == 0) {
+			return containsZero ? zeroValue : defaultValue;
+		}
+		int pos = indexOf(key);
+		return (pos < 0) ? defaultValue : values[pos];
+	}
+
+	public boolean containsKey(long key) {
+		if (key == 0) {
+			return containsZero;
+		}
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return <code>true</code> if the key was new
+	 */
+	public boolean put(long key, int value) {
+		if (key == 0) {
+			boolean added = ! containsZero;
+			if (added) {
+				containsZero = true;
+				size++;
+			}
+			zeroValue = value;
+			return added;
+		}
+		int pos = PrimitiveHash.mix(key) & mask;
+		long cur;
+		while ((cur = keys[pos]) != 0) {
+			if (cur == key) {
+				values[pos] = value;
+				return false;
+			}
+			pos = (pos + 1) & mask;
+		}
+		keys[pos] = key;
+		values[pos] = value;
+		if (++size > maxFill) {
+			rehash(keys.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * @param key
+	 * @return <code>true</code> if the map contained the key
+	 */
+	public boolean remove(long key) {
+		if (key == 0) {
+			if (! containsZero) {
+				return false;
+			}
+			containsZero = false;
+			zeroValue = 0;
+			size--;
+			return true;
+		}
+		int pos = indexOf(key);
+		if (pos < 0) {
+			return false;
+		}
+		size--;
+		shiftKeys(pos);
+		return true;
+	}
+
+	// backward-shift deletion, so we never need tombstones
+	private void shiftKeys(int pos) {
+		int last;
+		long cur;
+		while (true) {
+			last = pos;
+			pos = (pos + 1) & mask;
+			while (true) {
+				if ((cur = keys[pos]) == 0) {
+					keys[last] = 0;
+					return;
+				}
+				int slot = PrimitiveHash.mix(cur) & mask;
+				if (PrimitiveHash.canShift(last, slot, pos)) {
+					break;
+				}
+				pos = (pos + 1) & mask;
+			}
+			keys[last] = cur;
+			values[last] = values[pos];
+		}
+	}
+
+	private void rehash(int newCapacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(newCapacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			long key = oldKeys[i];
+			if (key != 0) {
+				int pos = PrimitiveHash.mix(key) & mask;
+				while (keys[pos] != 0) {
+					pos = (pos + 1) & mask;
+				}
+				keys[pos] = key;
+				values[pos] = oldValues[i];
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		Arrays.fill(keys, 0);
+		containsZero = false;
+		zeroValue = 0;
+		size = 0;
+	}
+}
@@ -0,0 +1,105 @@
+package net.gmx.nosefish.fishylib.datastructures;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary min-heap of primitive longs in a flat array.
+ * <p>
+ * To use it as a priority queue, pack the priority into the upper and
+ * the element into the lower bits of each long.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class LongMinHeap {
+	private long[] heap;
+	private int size = 0;
+
+	public LongMinHeap() {
+		this(16);
+	}
+
+	/**
+	 * @param initialCapacity
+	 */
+	public LongMinHeap(int initialCapacity) {
+		heap = new long[Math.max(initialCapacity, 1)];
+	}
+
+	public void add(long value) {
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		// sift up
+		int pos = size++;
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			long p = heap[parent];
+			if (p <= value) {
+				break;
+			}
+			heap[pos] = p;
+			pos = parent;
+		}
+		heap[pos] = value;
+	}
+
+	/**
+	 * @return the smallest value
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public long peek() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return heap[0];
+	}
+
+	/**
+	 * Removes and returns the smallest value.
+	 *
+	 * @return the smallest value
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public long poll() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		long result = heap[0];
+		long value = heap[--size];
+		// sift down
+		int pos = 0;
+		int half = size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			long c = heap[child];
+			int right = child + 1;
+			if (right < size && heap[right] < c) {
+				child = right;
+				c = heap[right];
+			}
+			if (value <= c) {
+				break;
+			}
+			heap[pos] = c;
+			pos = child;
+		}
+		heap[pos] = value;
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+}
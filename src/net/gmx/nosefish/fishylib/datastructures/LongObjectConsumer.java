@@ -0,0 +1,10 @@
+package net.gmx.nosefish.fishylib.datastructures;
+
+/**
+ * Callback for iterating over an <code>LongObjectMap</code>.
+ *
+ * @param <V> the value type
+ */
+public interface LongObjectConsumer<V> {
+	public void accept(long key, V value);
+}
@@ -0,0 +1,79 @@
+package net.gmx.nosefish.fishylib.datastructures;
+
+/**
+ * Shared helpers for the open-addressing primitive collections.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+final class PrimitiveHash {
+	/** Maximum fill ratio before the table is doubled. Low, because we use linear probing. */
+	static final float LOAD_FACTOR = 0.5F;
+	static final int MIN_CAPACITY = 4;
+	static final int MAX_CAPACITY = 1 << 30;
+	
+	private PrimitiveHash() {
+		// static methods only
+	}
+	
+	/**
+	 * Spreads the bits of an int key. Block ids and coordinates are
+	 * small and sequential, so the low bits must depend on all bits.
+	 * 
+	 * @param key
+	 * @return the mixed hash
+	 */
+	static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Spreads the bits of a long key.
+	 * 
+	 * @param key
+	 * @return the mixed hash
+	 */
+	static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= (h >>> 32);
+		return (int) (h ^ (h >>> 16));
+	}
+	
+	/**
+	 * @param expectedSize
+	 * @return a power of two large enough to hold expectedSize elements
+	 */
+	static int tableSize(int expectedSize) {
+		long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+		if (needed > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Too many elements: " + expectedSize);
+		}
+		int capacity = MIN_CAPACITY;
+		while (capacity < needed) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+	
+	static int maxFill(int capacity) {
+		return Math.min(capacity - 1, (int) (capacity * LOAD_FACTOR));
+	}
+	
+	/**
+	 * Decides whether an entry found at <code>pos</code> with home slot <code>slot</code>
+	 * may be moved into the slot <code>last</code> that was freed during
+	 * backward-shift deletion. It may, unless its home slot lies
+	 * cyclically within <code>(last, pos]</code>.
+	 * 
+	 * @param last the freed slot
+	 * @param slot the home slot of the entry being examined
+	 * @param pos the current slot of the entry being examined
+	 * @return <code>true</code> if the entry can be moved into <code>last</code>
+	 */
+	static boolean canShift(int last, int slot, int pos) {
+		return last <= pos
+				? (last >= slot || slot > pos)
+				: (last >= slot && slot > pos);
+	}
+}
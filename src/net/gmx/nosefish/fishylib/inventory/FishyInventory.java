@@ -1,11 +1,10 @@
 package net.gmx.nosefish.fishylib.inventory;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Map;
 
 import net.canarymod.api.inventory.Inventory;
 import net.canarymod.api.inventory.Item;
@@ -14,16 +13,22 @@ import net.canarymod.api.nbt.CompoundTag;
 import net.canarymod.api.world.World;
 import net.canarymod.api.world.blocks.BlockType;
 import net.canarymod.api.world.blocks.TileEntity;
+import net.gmx.nosefish.fishylib.datastructures.IntSet;
+import net.gmx.nosefish.fishylib.datastructures.LongSet;
 import net.gmx.nosefish.fishylib.worldmath.FishyLocationInt;
-import net.gmx.nosefish.fishylib.worldmath.FishyVectorInt;
+import net.gmx.nosefish.fishylib.worldmath.PackedPosition;
 import net.gmx.nosefish.fishylib.worldmath.FishyWorld;
+import net.gmx.nosefish.fishylib.worldmath.IFishyLocation;
+import net.gmx.nosefish.fishylib.worldmath.MutableLocationInt;
 
 @Deprecated
 public class FishyInventory {
 	private final List<Inventory> storage = new LinkedList<>();
-	private final Set<Inventory> changedInventories = new HashSet<>(8);
-	private final Set<FishyLocationInt> positions = new HashSet<>(8);
-	private final Set<Integer> allowedBlocks = new TreeSet<>();
+	// slots of the storage blocks; holds weak references only, storage keeps them alive
+	private final InventoryIndex index = new InventoryIndex();
+	// packed positions of the storage blocks, per world
+	private final Map<FishyWorld, LongSet> positions = new HashMap<>(2);
+	private final IntSet allowedBlocks = new IntSet();
 
 
 	/** There must be at least one type of storage block allowed,
@@ -34,7 +39,7 @@ public class FishyInventory {
      *             Invalid types will be ignored.
 	 */
 	public void addAllowedStorageBlockType(BlockType type) {
-		allowedBlocks.add(new Integer(type.getId()));
+		allowedBlocks.add(type.getId());
 	}
 
 	/** There must be at least one type of storage block allowed,
@@ -56,7 +61,9 @@ public class FishyInventory {
          *             Invalid types will be ignored.
 	 */
 	public void addAllowedStorageBlockIds(Collection<Integer> type) {
-		allowedBlocks.addAll(type);
+		for (Integer id : type) {
+			allowedBlocks.add(id);
+		}
 	}
 
 	/**
@@ -68,20 +75,7 @@ public class FishyInventory {
          *         <code>false</code otherwise.
 	 */
 	public boolean storeItem(Item item){
-		boolean allStored = false;
-		for (Inventory inventory : storage) {
-			if (item.getAmount() > 0) {
-				int amountBefore=item.getAmount();
-				allStored = storeItem(inventory, item);
-				if (item.getAmount() != amountBefore) {
-					changedInventories.add(inventory);
-				}
-			} else {
-				allStored = true;
-			}
-			if (allStored) break;
-		}
-		return allStored;
+		return index.store(item);
 	}
 
 
@@ -140,41 +134,7 @@ public class FishyInventory {
 	 * @return The Item taken from storage, or null if no suitable item was found in this storage.
 	 */
 	public Item fetchItem(int id, int datavalue, int amount){
-		int amountRequested = (amount < 0) ? Integer.MAX_VALUE : amount;
-		Item retItem = null;
-		int maxRetAmount = 0;
-		for (Inventory inventory : storage) {
-			// the contents array gives us more control than the Inventory methods
-			Item[] contents = inventory.getContents();
-			for (int slot=0; slot < contents.length; slot++) {
-				if (matchItem(contents[slot], id, datavalue)) {
-					if (retItem == null) {
-						// prepare a new Item with the right properties
-						retItem = contents[slot].clone();
-						retItem.setAmount(0);
-						maxRetAmount = Math.min(FishyInventory.maxStackSize(retItem), amountRequested);
-					}
-					if (areItemsEqualIgnoreSlotAndAmount(retItem, contents[slot])) {
-						// take items from this slot
-						int fetchAmount = Math.min(maxRetAmount - retItem.getAmount(), contents[slot].getAmount());
-						retItem.setAmount(retItem.getAmount() + fetchAmount);
-						contents[slot].setAmount(contents[slot].getAmount() - fetchAmount);
-						if (contents[slot].getAmount() < 1) {
-							// we've emptied the slot
-							contents[slot] = null;
-							inventory.removeItem(slot);
-						}
-						changedInventories.add(inventory);
-					}
-					// Paranoid? Better safe than sorry!
-					if (retItem.getAmount() < 1) {
-						retItem = null;
-					}
-				}
-			}
-			if (retItem != null && retItem.getAmount() >= maxRetAmount) break;
-		}
-		return retItem;
+		return index.fetch(id, datavalue, amount);
 	}
 
 	public boolean containsItem(ItemType type, int minAmount) {
@@ -189,22 +149,7 @@ public class FishyInventory {
 	 * @return true if the specified amount was found
 	 */
 	public boolean containsItem(int id, int datavalue, int minAmount) {
-		// we always have 0 or negative amounts of anything
-		if (minAmount < 1) return true;
-		// search inventory
-		int count = 0;
-		for (Inventory inventory : this.storage) {
-			Item[] contents = inventory.getContents();
-            for (Item content : contents) {
-                if (content != null && matchItem(content, id, datavalue)) {
-                    count += content.getAmount();
-                    if (count >= minAmount) {
-                        return true;
-                    }
-                }
-            }
-		}
-		return false;
+		return index.contains(id, datavalue, minAmount);
 	}
 
 	/**
@@ -312,20 +257,25 @@ public class FishyInventory {
 	 * @param wbv
 	 * @return true if the block was added, false if wbv does not point to a suitable storage block
 	 */
-	public boolean addStorageBlock(FishyLocationInt wbv) {
+	public boolean addStorageBlock(IFishyLocation wbv) {
 		if (! FishyWorld.isBlockLoaded(wbv)) return false;
 		World world = wbv.getWorld().getWorldIfLoaded();
 		TileEntity cBlock = world.getTileEntityAt(
             wbv.getIntX(), wbv.getIntY(), wbv.getIntZ());
 		if (cBlock == null) return false;
-		if (! allowedBlocks.contains((int)cBlock.getBlock().getTypeId())) {
+		if (! allowedBlocks.contains(cBlock.getBlock().getTypeId())) {
             return false;
         }
 		if (cBlock instanceof Inventory) {
-			FishyLocationInt cBlockPos = new FishyLocationInt(
-                wbv.getWorld(), cBlock.getX(), cBlock.getY(), cBlock.getZ());
-			if (positions.add(cBlockPos)) {
+			LongSet worldPositions = positions.get(wbv.getWorld());
+			if (worldPositions == null) {
+				worldPositions = new LongSet();
+				positions.put(wbv.getWorld(), worldPositions);
+			}
+			long cBlockPos = PackedPosition.pack(cBlock.getX(), cBlock.getY(), cBlock.getZ());
+			if (worldPositions.add(cBlockPos)) {
 				storage.add((Inventory) cBlock);
+				index.add((Inventory) cBlock);
 			}
 			return true;
 		}
@@ -340,12 +290,11 @@ public class FishyInventory {
 	 */
 	public boolean addNearbyStorageBlocks(FishyLocationInt wbv) {
 		boolean addedAtLeastOne = false;
+		MutableLocationInt cur = new MutableLocationInt(wbv);
 		for (int x = -3; x <= 3; x++) {
 			for (int y = -3; y <= 3; y++) {
 				for (int z = -3; z <= 3; z++) {
-					FishyLocationInt cur = new FishyLocationInt(
-							wbv.getWorld(),
-							wbv.addIntVector(new FishyVectorInt(x, y, z)));
+					cur.setOffset(wbv, x, y, z);
 					addedAtLeastOne = addStorageBlock(cur) || addedAtLeastOne;
 				}
 			}
@@ -363,25 +312,21 @@ public class FishyInventory {
 	 */
 	public boolean addNearbyRailStorageBlocks(FishyLocationInt wbv) {
 		boolean addedAtLeastOne = false;
+		MutableLocationInt cur = new MutableLocationInt(wbv);
 		// Add Chests around the block
 		for (int x = -2; x <= 2; x++) {
 			for (int z = -2; z <= 2; z++) {
 				for (int y = -1; y <= 0; y++) {
-					FishyLocationInt cur =
-							new FishyLocationInt(
-									wbv.getWorld(),
-									wbv.addIntVector(new FishyVectorInt(x, y, z)));
+					cur.setOffset(wbv, x, y, z);
 					addedAtLeastOne = addStorageBlock(cur) || addedAtLeastOne;
 				}
 			}
 		}
 		// Also allow the rail system to be under the floor stocking chests directly above.
 		// Not in the loop so that the chest cannot be offset on X or Z, only Y.
-		addedAtLeastOne = addStorageBlock(
-				new FishyLocationInt(wbv.getWorld(), wbv.addIntVector(new FishyVectorInt(0, 2, 0))))
+		addedAtLeastOne = addStorageBlock(cur.setOffset(wbv, 0, 2, 0))
 				|| addedAtLeastOne;
-		addedAtLeastOne = addStorageBlock(
-				new FishyLocationInt(wbv.getWorld(), wbv.addIntVector(new FishyVectorInt(0, 3, 0))))
+		addedAtLeastOne = addStorageBlock(cur.setOffset(wbv, 0, 3, 0))
 				|| addedAtLeastOne;
 		return addedAtLeastOne;
 	}
@@ -390,10 +335,7 @@ public class FishyInventory {
 	 * Sends changes to players. Call when you're done storing and fetching for this tick. Don't forget!
 	 */
 	public void update() {
-		for (Inventory inventory : changedInventories) {
-			inventory.update();
-		}
-		changedInventories.clear();
+		index.update();
 	}
 
 	private boolean matchItem(Item item, int id, int dataValue) {
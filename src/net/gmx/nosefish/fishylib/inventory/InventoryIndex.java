@@ -0,0 +1,650 @@
+package net.gmx.nosefish.fishylib.inventory;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import net.canarymod.api.inventory.Inventory;
+import net.canarymod.api.inventory.Item;
+import net.gmx.nosefish.fishylib.datastructures.IntObjectMap;
+
+/**
+ * Index over the slots of a group of inventories, so that storing,
+ * fetching and counting items does not have to look at every slot.
+ * <p>
+ * The slots of all inventories are numbered consecutively. For every item id,
+ * the index keeps the sorted numbers of the slots holding that id, along
+ * with damage value and amount. Empty slots are kept in a bit set. Stores
+ * fill partial stacks of the item first, then empty slots, in the order the
+ * inventories were added. Fetching and counting look at the slots holding
+ * the item id only.
+ * <p>
+ * The index is kept up to date by its own changes. Changes made by anyone
+ * else are found like this:
+ * <ul>
+ * <li>Every slot is compared with the live inventory before it is used.
+ *     If it doesn't match, that inventory is read again.</li>
+ * <li>If an operation comes up short, all inventories are read again
+ *     and the operation continues. This happens at most once per server
+ *     tick: until the next tick, operations that come up short trust the
+ *     index. Ticks are counted by <code>InventoryListener</code>, which
+ *     FishyLib registers; without it, every operation that comes up
+ *     short reads all inventories again.</li>
+ * <li><code>invalidate</code> marks inventories to be read again
+ *     before the next operation.</li>
+ * </ul>
+ * So a store that finds room, or a fetch or count that finds enough,
+ * costs in proportion to the slots holding the item. The first operation
+ * in a tick that comes up short costs as much as scanning every slot of
+ * every inventory, because an item may have been put into any of them
+ * since the last scan. Polling for an item that isn't there costs one full
+ * scan per tick, no matter how often it is polled. Unreported changes by
+ * others in the same tick after that scan are found in the next tick.
+ * <p>
+ * Only weak references to the inventories are kept. Inventories that have
+ * been garbage collected are dropped when they are found.
+ * <p>
+ * <b>Not thread-safe! Only use from the server thread.</b>
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class InventoryIndex {
+	private static final int EMPTY = -1;
+
+	// counted by InventoryListener
+	private static long serverTick = 0;
+	private static boolean countingTicks = false;
+
+	private final List<Entry> entries = new ArrayList<>();
+	private final List<Entry> changed = new ArrayList<>();
+	// item id -> slots holding it
+	private final IntObjectMap<SlotList> byId = new IntObjectMap<>();
+	private final BitSet free = new BitSet();
+	private final BitSet occupied = new BitSet();
+	// by slot number
+	private Entry[] owners = new Entry[0];
+	private int[] ids = new int[0];
+	private int[] damages = new int[0];
+	private int[] amounts = new int[0];
+	// the first unused slot number, and the unused numbers below it
+	private int end = 0;
+	private int holes = 0;
+	private int dirtyCount = 0;
+	// server tick in which all inventories were read, -1 if none
+	private long scanTick = -1;
+	// all inventories have been read during the current tick, or the
+	// current operation if ticks are not counted
+	private boolean fresh = false;
+
+	/**
+	 * Adds an inventory to the index. Its contents are read before the next operation.
+	 *
+	 * @param inventory
+	 * @return <code>false</code> if the inventory was already in the index
+	 */
+	public boolean add(Inventory inventory) {
+		if (inventory == null) {
+			throw new NullPointerException("Parameter inventory was null.");
+		}
+		if (find(inventory) != null) {
+			return false;
+		}
+		if (holes > 0 && holes >= end / 2) {
+			compact();
+		}
+		Entry entry = new Entry(inventory);
+		entries.add(entry);
+		allocate(entry, inventory.getSize());
+		markDirty(entry);
+		return true;
+	}
+
+	/**
+	 * Removes an inventory from the index.
+	 *
+	 * @param inventory
+	 * @return <code>false</code> if the inventory was not in the index
+	 */
+	public boolean remove(Inventory inventory) {
+		Entry entry = find(inventory);
+		if (entry == null) {
+			return false;
+		}
+		drop(entry);
+		return true;
+	}
+
+	/**
+	 * Marks an inventory that has been changed by someone else,
+	 * so it is read again before the next operation.
+	 *
+	 * @param inventory
+	 */
+	public void invalidate(Inventory inventory) {
+		Entry entry = find(inventory);
+		if (entry != null) {
+			markDirty(entry);
+		}
+	}
+
+	/**
+	 * Marks all inventories to be read again before the next operation.
+	 */
+	public void invalidateAll() {
+		for (Entry entry : entries) {
+			markDirty(entry);
+		}
+	}
+
+	/**
+	 * @return the number of inventories in the index, including those that
+	 *         have been garbage collected but not found yet
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Stores an item, first on partial stacks of the same item,
+	 * then in empty slots.
+	 *
+	 * @param item the item to store. Its amount is reduced by the amount stored.
+	 * @return <code>true</code> if all items have been stored
+	 */
+	public boolean store(Item item) {
+		refresh();
+		if (storeIndexed(item)) {
+			return true;
+		}
+		if (! fresh) {
+			rescan();
+			return storeIndexed(item);
+		}
+		return false;
+	}
+
+	private boolean storeIndexed(Item item) {
+		if (item.getAmount() < 1) {
+			return true;
+		}
+		int maxStackSize = item.getMaxAmount();
+		if (maxStackSize > 1) {
+			for (int slot = nextSlot(item.getId(), 0); slot >= 0; slot = nextSlot(item.getId(), slot + 1)) {
+				if (damages[slot] != item.getDamage() || amounts[slot] >= maxStackSize) {
+					continue;
+				}
+				Item content = checkedSlot(slot);
+				if (content == null
+						|| ids[slot] != item.getId()
+						|| ! ItemInfo.isSameItemType(content, item)) {
+					continue;
+				}
+				int storeAmount = Math.min(maxStackSize - content.getAmount(), item.getAmount());
+				if (storeAmount < 1) {
+					continue;
+				}
+				content.setAmount(content.getAmount() + storeAmount);
+				item.setAmount(item.getAmount() - storeAmount);
+				set(slot, content);
+				markChanged(owners[slot]);
+				if (item.getAmount() < 1) {
+					return true;
+				}
+			}
+		}
+		// we've tried stacking but still have some items left in the stack
+		for (int slot = free.nextSetBit(0); slot >= 0; slot = free.nextSetBit(slot + 1)) {
+			Entry entry = owners[slot];
+			Inventory inventory = entry.get();
+			if (inventory == null) {
+				drop(entry);
+				continue;
+			}
+			if (checkedSlot(slot) != null || ids[slot] != EMPTY) {
+				continue;
+			}
+			Item itemClone = item.clone();
+			itemClone.setAmount(Math.min(item.getAmount(), Math.max(maxStackSize, 1)));
+			itemClone.setSlot(slot - entry.base);
+			inventory.addItem(itemClone);
+			item.setAmount(item.getAmount() - itemClone.getAmount());
+			set(slot, itemClone);
+			markChanged(entry);
+			if (item.getAmount() < 1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Takes a stack of items out of the inventories. The stack is put together
+	 * from all slots holding the same item as the first slot found.
+	 *
+	 * @param id item id, -1 matches all
+	 * @param dataValue damage value, -1 matches all
+	 * @param amount the desired amount, -1 for a full stack.
+	 *               The returned stack may hold less than this
+	 *               if there aren't enough items or if the amount
+	 *               exceeds the maximum stack size of the item.
+	 * @return the stack taken, or <code>null</code> if no matching item was found
+	 */
+	public Item fetch(int id, int dataValue, int amount) {
+		refresh();
+		int amountRequested = (amount < 0) ? Integer.MAX_VALUE : amount;
+		Item taken = fetchIndexed(null, id, dataValue, amountRequested);
+		if (! fresh && (taken == null || taken.getAmount() < maxFetchAmount(taken, amountRequested))) {
+			rescan();
+			taken = fetchIndexed(taken, id, dataValue, amountRequested);
+		}
+		return taken;
+	}
+
+	private Item fetchIndexed(Item taken, int id, int dataValue, int amountRequested) {
+		int maxAmount = (taken == null) ? 0 : maxFetchAmount(taken, amountRequested);
+		for (int slot = nextSlot(id, 0); slot >= 0; slot = nextSlot(id, slot + 1)) {
+			if (taken != null && taken.getAmount() >= maxAmount) {
+				break;
+			}
+			if (dataValue >= 0 && damages[slot] != dataValue) {
+				continue;
+			}
+			Item content = checkedSlot(slot);
+			if (content == null
+					|| (id >= 0 && ids[slot] != id)
+					|| (dataValue >= 0 && damages[slot] != dataValue)) {
+				continue;
+			}
+			if (taken == null) {
+				// prepare a new Item with the right properties
+				taken = content.clone();
+				taken.setAmount(0);
+				maxAmount = maxFetchAmount(taken, amountRequested);
+			} else if (! ItemInfo.isSameItemType(taken, content)) {
+				continue;
+			}
+			Entry entry = owners[slot];
+			Inventory inventory = entry.get();
+			if (inventory == null) {
+				drop(entry);
+				continue;
+			}
+			int fetchAmount = Math.min(maxAmount - taken.getAmount(), content.getAmount());
+			taken.setAmount(taken.getAmount() + fetchAmount);
+			content.setAmount(content.getAmount() - fetchAmount);
+			if (content.getAmount() < 1) {
+				// we've emptied the slot
+				inventory.removeItem(slot - entry.base);
+				set(slot, null);
+			} else {
+				set(slot, content);
+			}
+			markChanged(entry);
+		}
+		// Paranoid? Better safe than sorry!
+		if (taken != null && taken.getAmount() < 1) {
+			return null;
+		}
+		return taken;
+	}
+
+	private static int maxFetchAmount(Item item, int amountRequested) {
+		return Math.min(item.getMaxAmount(), amountRequested);
+	}
+
+	/**
+	 * Counts items, stopping as soon as <code>limit</code> is reached.
+	 *
+	 * @param id item id, -1 matches all
+	 * @param dataValue damage value, -1 matches all
+	 * @param limit
+	 * @return the number of matching items, at most <code>limit</code>
+	 */
+	public int count(int id, int dataValue, int limit) {
+		refresh();
+		int count = countIndexed(id, dataValue, limit);
+		if (count < limit && ! fresh) {
+			rescan();
+			count = countIndexed(id, dataValue, limit);
+		}
+		return count;
+	}
+
+	private int countIndexed(int id, int dataValue, int limit) {
+		int count = 0;
+		for (int slot = nextSlot(id, 0); slot >= 0 && count < limit; slot = nextSlot(id, slot + 1)) {
+			if (dataValue >= 0 && damages[slot] != dataValue) {
+				continue;
+			}
+			if (checkedSlot(slot) != null
+					&& (id < 0 || ids[slot] == id)
+					&& (dataValue < 0 || damages[slot] == dataValue)) {
+				count += amounts[slot];
+			}
+		}
+		return Math.min(count, limit);
+	}
+
+	/**
+	 * @param id item id, -1 matches all
+	 * @param dataValue damage value, -1 matches all
+	 * @param minAmount
+	 * @return <code>true</code> if there are at least <code>minAmount</code> matching items
+	 */
+	public boolean contains(int id, int dataValue, int minAmount) {
+		// we always have 0 or negative amounts of anything
+		if (minAmount < 1) {
+			return true;
+		}
+		return count(id, dataValue, minAmount) >= minAmount;
+	}
+
+	/**
+	 * Sends changes to players. Call when you're done storing and fetching
+	 * for this tick.
+	 */
+	public void update() {
+		for (Entry entry : changed) {
+			entry.changed = false;
+			Inventory inventory = entry.get();
+			if (inventory != null) {
+				inventory.update();
+			}
+		}
+		changed.clear();
+	}
+
+	//-----------------------------------------------------------------------
+	// bookkeeping
+
+	private Entry find(Inventory inventory) {
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			Entry entry = entries.get(i);
+			Inventory inv = entry.get();
+			if (inv == null) {
+				drop(entry);
+			} else if (inv.equals(inventory)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the next slot at or after <code>from</code> holding the item id,
+	 *         or any item if the id is negative; -1 if there is none
+	 */
+	private int nextSlot(int id, int from) {
+		if (id < 0) {
+			return occupied.nextSetBit(from);
+		}
+		SlotList slots = byId.get(id);
+		return (slots == null) ? -1 : slots.ceiling(from);
+	}
+
+	/**
+	 * Compares the slot with the live inventory, and reads the inventory
+	 * again if they don't match.
+	 *
+	 * @return the live item in the slot, or <code>null</code> if the slot is
+	 *         empty or its inventory is gone
+	 */
+	private Item checkedSlot(int slot) {
+		Entry entry = owners[slot];
+		Inventory inventory = entry.get();
+		if (inventory == null) {
+			drop(entry);
+			return null;
+		}
+		Item content = inventory.getSlot(slot - entry.base);
+		if (! matches(slot, content)) {
+			read(entry);
+			if (owners[slot] != entry) {
+				// moved because the size changed
+				return null;
+			}
+			content = inventory.getSlot(slot - entry.base);
+			if (! matches(slot, content)) {
+				return null;
+			}
+		}
+		return isEmpty(content) ? null : content;
+	}
+
+	private boolean matches(int slot, Item content) {
+		if (isEmpty(content)) {
+			return ids[slot] == EMPTY;
+		}
+		return ids[slot] == content.getId()
+				&& damages[slot] == content.getDamage()
+				&& amounts[slot] == content.getAmount();
+	}
+
+	private static boolean isEmpty(Item item) {
+		return item == null || item.getAmount() < 1;
+	}
+
+	/**
+	 * Starts an operation: reads the inventories marked as dirty.
+	 */
+	private void refresh() {
+		if (! countingTicks) {
+			scanTick = -1;
+		}
+		if (dirtyCount > 0) {
+			if (dirtyCount == entries.size()) {
+				scanTick = serverTick;
+			}
+			for (int i = entries.size() - 1; i >= 0 && dirtyCount > 0; i--) {
+				Entry entry = entries.get(i);
+				if (entry.dirty) {
+					read(entry);
+				}
+			}
+		}
+		fresh = scanTick == serverTick;
+	}
+
+	private void rescan() {
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			read(entries.get(i));
+		}
+		scanTick = serverTick;
+		fresh = true;
+	}
+
+	/**
+	 * Starts a new server tick: operations that come up short may read
+	 * all inventories again.
+	 */
+	static void serverTick() {
+		serverTick++;
+	}
+
+	/**
+	 * @param counting <code>true</code> if <code>serverTick</code> is called every tick
+	 */
+	static void setCountingTicks(boolean counting) {
+		countingTicks = counting;
+	}
+
+	private void markDirty(Entry entry) {
+		if (! entry.dirty) {
+			entry.dirty = true;
+			dirtyCount++;
+		}
+	}
+
+	private void markChanged(Entry entry) {
+		if (! entry.changed) {
+			entry.changed = true;
+			changed.add(entry);
+		}
+	}
+
+	/**
+	 * Reads the contents of the inventory into the index.
+	 */
+	private void read(Entry entry) {
+		Inventory inventory = entry.get();
+		if (inventory == null) {
+			drop(entry);
+			return;
+		}
+		if (entry.dirty) {
+			entry.dirty = false;
+			dirtyCount--;
+		}
+		Item[] contents = inventory.getContents();
+		if (contents.length != entry.size) {
+			release(entry);
+			allocate(entry, contents.length);
+		}
+		for (int i = 0; i < contents.length; i++) {
+			set(entry.base + i, contents[i]);
+		}
+	}
+
+	/**
+	 * Removes the inventory from the index.
+	 */
+	private void drop(Entry entry) {
+		if (entry.dirty) {
+			entry.dirty = false;
+			dirtyCount--;
+		}
+		entries.remove(entry);
+		release(entry);
+	}
+
+	private void allocate(Entry entry, int size) {
+		entry.base = end;
+		entry.size = size;
+		end += size;
+		if (end > owners.length) {
+			int capacity = Math.max(end, owners.length * 2);
+			owners = Arrays.copyOf(owners, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+			damages = Arrays.copyOf(damages, capacity);
+			amounts = Arrays.copyOf(amounts, capacity);
+		}
+		for (int slot = entry.base; slot < end; slot++) {
+			owners[slot] = entry;
+			ids[slot] = EMPTY;
+		}
+		free.set(entry.base, end);
+	}
+
+	// frees the slot numbers of the entry
+	private void release(Entry entry) {
+		int entryEnd = entry.base + entry.size;
+		for (int slot = entry.base; slot < entryEnd; slot++) {
+			set(slot, null);
+			owners[slot] = null;
+		}
+		free.clear(entry.base, entryEnd);
+		holes += entry.size;
+		entry.size = 0;
+	}
+
+	// renumbers all slots without holes; everything is read again
+	private void compact() {
+		for (Entry entry : entries) {
+			release(entry);
+		}
+		byId.clear();
+		end = 0;
+		holes = 0;
+		for (Entry entry : entries) {
+			allocate(entry, entry.get() == null ? 0 : entry.get().getSize());
+			markDirty(entry);
+		}
+	}
+
+	private void set(int slot, Item content) {
+		int oldId = ids[slot];
+		if (isEmpty(content)) {
+			if (oldId != EMPTY) {
+				byId.get(oldId).remove(slot);
+				ids[slot] = EMPTY;
+				occupied.clear(slot);
+				free.set(slot);
+			}
+			return;
+		}
+		int id = content.getId();
+		if (oldId != id) {
+			if (oldId == EMPTY) {
+				free.clear(slot);
+				occupied.set(slot);
+			} else {
+				byId.get(oldId).remove(slot);
+			}
+			SlotList slots = byId.get(id);
+			if (slots == null) {
+				slots = new SlotList();
+				byId.put(id, slots);
+			}
+			slots.add(slot);
+			ids[slot] = id;
+		}
+		damages[slot] = content.getDamage();
+		amounts[slot] = content.getAmount();
+	}
+
+	private static final class Entry extends WeakReference<Inventory> {
+		int base;
+		int size;
+		boolean dirty = false;
+		boolean changed = false;
+
+		Entry(Inventory inventory) {
+			super(inventory);
+		}
+	}
+
+	/**
+	 * Sorted slot numbers.
+	 */
+	private static final class SlotList {
+		private int[] slots = new int[4];
+		private int size = 0;
+
+		void add(int slot) {
+			int pos = Arrays.binarySearch(slots, 0, size, slot);
+			if (pos >= 0) {
+				return;
+			}
+			pos = -pos - 1;
+			if (size == slots.length) {
+				slots = Arrays.copyOf(slots, size * 2);
+			}
+			System.arraycopy(slots, pos, slots, pos + 1, size - pos);
+			slots[pos] = slot;
+			size++;
+		}
+
+		void remove(int slot) {
+			int pos = Arrays.binarySearch(slots, 0, size, slot);
+			if (pos < 0) {
+				return;
+			}
+			System.arraycopy(slots, pos + 1, slots, pos, size - pos - 1);
+			size--;
+		}
+
+		/**
+		 * @return the smallest slot number >= <code>from</code>, or -1
+		 */
+		int ceiling(int from) {
+			int pos = Arrays.binarySearch(slots, 0, size, from);
+			if (pos < 0) {
+				pos = -pos - 1;
+			}
+			return (pos < size) ? slots[pos] : -1;
+		}
+	}
+}
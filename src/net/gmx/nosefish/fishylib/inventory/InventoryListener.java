@@ -0,0 +1,49 @@
+package net.gmx.nosefish.fishylib.inventory;
+
+import net.canarymod.Canary;
+import net.canarymod.hook.HookHandler;
+import net.canarymod.hook.system.ServerTickHook;
+import net.canarymod.plugin.Plugin;
+import net.canarymod.plugin.PluginListener;
+import net.canarymod.plugin.Priority;
+
+/**
+ * Counts server ticks for the <code>InventoryIndex</code>es, which read
+ * all their inventories at most once per tick.
+ * Registered by FishyLib on enable; other plugins don't need to do anything.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class InventoryListener implements PluginListener {
+
+	private static InventoryListener instance = null;
+
+	/**
+	 * @param plugin the plugin to register the listener for
+	 */
+	public static synchronized void register(Plugin plugin) {
+		if (instance == null) {
+			instance = new InventoryListener();
+			Canary.hooks().registerListener(instance, plugin);
+			InventoryIndex.setCountingTicks(true);
+		}
+	}
+
+	/**
+	 * Stops counting ticks. Until the listener is registered again, an index
+	 * reads all inventories whenever an operation comes up short.
+	 */
+	public static synchronized void unregister() {
+		if (instance != null) {
+			InventoryIndex.setCountingTicks(false);
+			Canary.hooks().unregisterPluginListener(instance);
+			instance = null;
+		}
+	}
+
+	@HookHandler(priority = Priority.PASSIVE)
+	public void onServerTick(ServerTickHook hook) {
+		InventoryIndex.serverTick();
+	}
+}
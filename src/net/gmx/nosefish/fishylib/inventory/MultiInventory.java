@@ -9,11 +9,23 @@ import net.canarymod.api.inventory.Item;
 import net.canarymod.api.inventory.ItemType;
 
 /**
+ * Several inventories used as one. Lookups go through an
+ * <code>InventoryIndex</code>, so they don't scan every slot.
+ * Only weak references to the inventories are kept.
  * 
  * @author Stefan Steinheimer (nosefish)
  */
 public class MultiInventory {
   
+    protected final InventoryIndex index;
+
+    /**
+     * The inventories are kept in <code>index</code> now. These sets are
+     * still maintained for subclasses: <code>inventories</code> holds all
+     * added inventories, and <code>update</code> also updates the ones in
+     * <code>changed</code>. They will be removed.
+     */
+    @Deprecated
     protected final HashSet<WeakReference<Inventory>> inventories, changed, stale;
 
     
@@ -21,6 +33,7 @@ public class MultiInventory {
      * Constructor
      */
     public MultiInventory() {
+        this.index = new InventoryIndex();
         this.inventories = new HashSet<>();
         this.changed = new HashSet<>();
         this.stale = new HashSet<>();
@@ -31,13 +44,16 @@ public class MultiInventory {
      * marked as stale when they are found to have been unloaded
      * they are no longer in memory.
      */
+    @Deprecated
     protected void removeStaleEntries() {
         if (! stale.isEmpty()) {
             inventories.removeAll(stale);
+            changed.removeAll(stale);
             stale.clear();
         }
     }
     
+    @Deprecated
     protected Inventory getCheckStale(WeakReference<Inventory> ref) {
         Inventory inv = ref.get();
         if (inv == null) {
@@ -53,8 +69,9 @@ public class MultiInventory {
      * @return 
      */
     public MultiInventory add(Inventory inventory) {
-        WeakReference<Inventory> ref = new WeakReference<>(inventory);
-        inventories.add(ref);
+        if (index.add(inventory)) {
+            inventories.add(new WeakReference<>(inventory));
+        }
         return this;
     }
     
@@ -64,6 +81,7 @@ public class MultiInventory {
      * @return 
      */
     public MultiInventory remove(Inventory inventory) {
+        index.remove(inventory);
         for (WeakReference<Inventory> ref : inventories) {
             Inventory inv = getCheckStale(ref);
             if (inv != null && inv.equals(inventory)) {
@@ -74,33 +92,27 @@ public class MultiInventory {
         return this;
     }
     
+    /**
+     * Tells the MultiInventory that an inventory has been changed
+     * by someone else, so it is read again before the next lookup.
+     * Not required: such changes are also found when a slot is used
+     * or when a lookup comes up short.
+     * @param inventory
+     * @return
+     */
+    public MultiInventory invalidate(Inventory inventory) {
+        index.invalidate(inventory);
+        return this;
+    }
+
     /**
     * Stores the item in the Inventory. 
-    * Does not respect stack-before-new over multiple inventories yet.
+    * Partial stacks in all inventories are filled before empty slots are used.
      * @param item the item to store. Its amount will be updated.
      * @return true if all items have been stored, false otherwise
     */
     public boolean store(Item item) {
-        boolean allStored = false;
-        for (WeakReference<Inventory> ref : inventories) {
-            Inventory inv = getCheckStale(ref);
-            if (inv == null) {
-                continue;
-            }
-            
-            // try to store in this inventory
-            int amount = item.getAmount();
-            allStored = inv.insertItem(item);
-            if (item.getAmount() < amount) {
-                // something has been stored, the inventory must be updated
-                changed.add(ref);
-            }
-            if (allStored) {
-                break;
-            }
-        }
-        removeStaleEntries();
-        return allStored;
+        return index.store(item);
     }
     
     /**
@@ -112,31 +124,16 @@ public class MultiInventory {
     public List<Item> takeOut(ItemType itemType, int amount) {
         int amountLeftToTake = amount;
         List<Item> toReturn = new ArrayList<>();
-        for (WeakReference<Inventory> ref : inventories) {
-            
-            // check if this inventory still exists
-            Inventory inv = getCheckStale(ref);
-            if (inv == null) {
-                continue;
-            }
-            
-            // get all the stacks we can find, until we have enough
-            // or the inventory is empty
-            Item taken = null;
-            do {
-                taken = inv.getItem(itemType, amountLeftToTake);
-                if (taken != null) {
-                    // got something
-                    amountLeftToTake -= taken.getAmount();
-                    toReturn.add(taken.clone());
-                    changed.add(ref);
-                }
-            } while (taken != null && amountLeftToTake > 0);
-            if (amountLeftToTake <= 0) {
+        // get all the stacks we can find, until we have enough
+        // or the inventory is empty
+        while (amountLeftToTake > 0) {
+            Item taken = index.fetch(itemType.getId(), itemType.getData(), amountLeftToTake);
+            if (taken == null) {
                 break;
             }
+            amountLeftToTake -= taken.getAmount();
+            toReturn.add(taken);
         }
-        removeStaleEntries();
         return toReturn;
     }
     
@@ -146,32 +143,18 @@ public class MultiInventory {
      * @return true if an item was found, false otherwise
      */
     public boolean contains(ItemType itemType) {
-        boolean found = false;
-        for (WeakReference<Inventory> ref : inventories) {
-            
-            // check if this inventory still exists
-            Inventory inv = getCheckStale(ref);
-            if (inv == null) {
-                continue;
-            }
-            
-            // check if it contains the item
-            if (inv.hasItem(itemType)) {
-                found = true;
-                break;
-            }
-        }
-        removeStaleEntries();
-        return found;
+        return index.contains(itemType.getId(), itemType.getData(), 1);
     }
     
     public MultiInventory update() {
+        index.update();
         for (WeakReference<Inventory> ref : changed) {
             Inventory inv = getCheckStale(ref);
             if (inv != null) {
                 inv.update();
             }
         }
+        changed.clear();
         removeStaleEntries();
         return this;
     }
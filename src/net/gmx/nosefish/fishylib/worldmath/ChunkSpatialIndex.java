@@ -0,0 +1,488 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.gmx.nosefish.fishylib.datastructures.IntObjectConsumer;
+import net.gmx.nosefish.fishylib.datastructures.IntObjectMap;
+import net.gmx.nosefish.fishylib.datastructures.LongObjectConsumer;
+import net.gmx.nosefish.fishylib.datastructures.LongObjectMap;
+
+/**
+ * Maps block locations to values, bucketed by chunk and by 16 blocks high
+ * section within the chunk.
+ * <p>
+ * Insert, remove and point lookup are O(1). An area query looks at the
+ * chunks the area touches, or at all occupied chunks of the world if there
+ * are fewer of those. Within each chunk it does the same with the sections.
+ * So a query costs O(min(chunks in the area, occupied chunks)
+ * + min(sections in the area, occupied sections) per chunk it looks at),
+ * plus one check per entry in the occupied sections the area touches.
+ * Entries in sections that merely overlap the area are checked but not
+ * visited. The total number of entries doesn't matter.
+ * When a chunk unloads, <code>removeChunk</code> drops all its entries at once.
+ * <p>
+ * Each block location holds at most one value.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ * @param <V> the value type
+ */
+public class ChunkSpatialIndex<V> {
+
+	/**
+	 * Callback for the query methods.
+	 *
+	 * @param <V> the value type
+	 */
+	public static interface Visitor<V> {
+		/**
+		 * @param world the world of the entry
+		 * @param packedPosition the block position, see <code>PackedPosition</code>
+		 * @param value the value stored for the position
+		 */
+		public void visit(FishyWorld world, long packedPosition, V value);
+	}
+
+	private static final int SECTION_SHIFT = 4;
+
+	// world -> chunk key -> section y -> packed position -> value
+	private final Map<FishyWorld, LongObjectMap<Column<V>>> worlds = new HashMap<>(4);
+	private int size = 0;
+
+	/**
+	 * Stores a value for a block location, replacing the previous one.
+	 *
+	 * @param location
+	 * @param value
+	 * @return the previous value, or <code>null</code> if there was none
+	 */
+	public V put(IFishyLocation location, V value) {
+		return put(location.getWorld(), PackedPosition.pack(location), value);
+	}
+
+	/**
+	 * Stores a value for a packed block position, replacing the previous one.
+	 *
+	 * @param world
+	 * @param packedPosition
+	 * @param value
+	 * @return the previous value, or <code>null</code> if there was none
+	 */
+	public V put(FishyWorld world, long packedPosition, V value) {
+		LongObjectMap<Column<V>> chunks = worlds.get(world);
+		if (chunks == null) {
+			chunks = new LongObjectMap<>(64);
+			worlds.put(world, chunks);
+		}
+		long chunkKey = PackedPosition.toChunkKey(packedPosition);
+		Column<V> column = chunks.get(chunkKey);
+		if (column == null) {
+			column = new Column<>();
+			chunks.put(chunkKey, column);
+		}
+		int sectionY = sectionOf(packedPosition);
+		LongObjectMap<V> bucket = column.sections.get(sectionY);
+		if (bucket == null) {
+			bucket = new LongObjectMap<>(4);
+			column.sections.put(sectionY, bucket);
+		}
+		if (! bucket.containsKey(packedPosition)) {
+			size++;
+			column.size++;
+		}
+		return bucket.put(packedPosition, value);
+	}
+
+	public V get(IFishyLocation location) {
+		return get(location.getWorld(), PackedPosition.pack(location));
+	}
+
+	public V get(FishyWorld world, long packedPosition) {
+		LongObjectMap<V> bucket = getBucket(world, packedPosition);
+		return (bucket == null) ? null : bucket.get(packedPosition);
+	}
+
+	public boolean containsLocation(IFishyLocation location) {
+		return containsLocation(location.getWorld(), PackedPosition.pack(location));
+	}
+
+	public boolean containsLocation(FishyWorld world, long packedPosition) {
+		LongObjectMap<V> bucket = getBucket(world, packedPosition);
+		return bucket != null && bucket.containsKey(packedPosition);
+	}
+
+	public V remove(IFishyLocation location) {
+		return remove(location.getWorld(), PackedPosition.pack(location));
+	}
+
+	/**
+	 * @param world
+	 * @param packedPosition
+	 * @return the removed value, or <code>null</code> if there was none
+	 */
+	public V remove(FishyWorld world, long packedPosition) {
+		LongObjectMap<Column<V>> chunks = worlds.get(world);
+		if (chunks == null) {
+			return null;
+		}
+		long chunkKey = PackedPosition.toChunkKey(packedPosition);
+		Column<V> column = chunks.get(chunkKey);
+		if (column == null) {
+			return null;
+		}
+		int sectionY = sectionOf(packedPosition);
+		LongObjectMap<V> bucket = column.sections.get(sectionY);
+		if (bucket == null || ! bucket.containsKey(packedPosition)) {
+			return null;
+		}
+		V old = bucket.remove(packedPosition);
+		size--;
+		column.size--;
+		if (bucket.isEmpty()) {
+			column.sections.remove(sectionY);
+		}
+		if (column.size == 0) {
+			chunks.remove(chunkKey);
+		}
+		return old;
+	}
+
+	/**
+	 * Removes all entries in a chunk. Call this when the chunk unloads.
+	 *
+	 * @param chunk
+	 * @return the number of entries removed
+	 */
+	public int removeChunk(FishyChunk chunk) {
+		return removeChunk(chunk.getWorld(), chunk.getChunkKey());
+	}
+
+	/**
+	 * Removes all entries in a chunk.
+	 *
+	 * @param world
+	 * @param chunkKey see <code>PackedPosition.packChunk</code>
+	 * @return the number of entries removed
+	 */
+	public int removeChunk(FishyWorld world, long chunkKey) {
+		LongObjectMap<Column<V>> chunks = worlds.get(world);
+		if (chunks == null) {
+			return 0;
+		}
+		Column<V> column = chunks.remove(chunkKey);
+		if (column == null) {
+			return 0;
+		}
+		size -= column.size;
+		return column.size;
+	}
+
+	/**
+	 * Removes all entries in a world.
+	 *
+	 * @param world
+	 * @return the number of entries removed
+	 */
+	public int removeWorld(FishyWorld world) {
+		LongObjectMap<Column<V>> chunks = worlds.remove(world);
+		if (chunks == null) {
+			return 0;
+		}
+		int removed = 0;
+		for (Column<V> column : chunks.values()) {
+			removed += column.size;
+		}
+		size -= removed;
+		return removed;
+	}
+
+	/**
+	 * Visits all entries in a chunk.
+	 *
+	 * @param chunk
+	 * @param visitor
+	 */
+	public void queryChunk(FishyChunk chunk, Visitor<? super V> visitor) {
+		LongObjectMap<Column<V>> chunks = worlds.get(chunk.getWorld());
+		Column<V> column = (chunks == null) ? null : chunks.get(chunk.getChunkKey());
+		if (column != null) {
+			column.sections.forEach(new SectionFilter<V>(
+					new Forwarder<V>(chunk.getWorld(), visitor), Integer.MIN_VALUE, Integer.MAX_VALUE));
+		}
+	}
+
+	/**
+	 * Visits all entries inside a cuboid (bounds inclusive).
+	 *
+	 * @param cuboid
+	 * @param visitor
+	 */
+	public void queryCuboid(FishyCuboidInt cuboid, Visitor<? super V> visitor) {
+		FishyPointInt low = cuboid.getLowPoint();
+		FishyPointInt high = cuboid.getHighPoint();
+		queryBox(cuboid.getWorld(),
+				low.getIntX(), low.getIntY(), low.getIntZ(),
+				high.getIntX(), high.getIntY(), high.getIntZ(),
+				visitor);
+	}
+
+	/**
+	 * Visits all entries whose block coordinates are within
+	 * <code>radius</code> of <code>centre</code>.
+	 *
+	 * @param centre
+	 * @param radius
+	 * @param visitor
+	 */
+	public void queryRadius(IFishyLocation centre, double radius, Visitor<? super V> visitor) {
+		FishyWorld world = centre.getWorld();
+		if (! (radius >= 0.0)) {
+			return;
+		}
+		double cx = centre.getDoubleX();
+		double cy = centre.getDoubleY();
+		double cz = centre.getDoubleZ();
+		query(world,
+				(int) Math.floor(cx - radius), (int) Math.floor(cy - radius), (int) Math.floor(cz - radius),
+				(int) Math.floor(cx + radius), (int) Math.floor(cy + radius), (int) Math.floor(cz + radius),
+				new RadiusFilter<>(world, visitor, cx, cy, cz, radius * radius));
+	}
+
+	/**
+	 * Convenience method, collects the results of <code>queryCuboid</code>.
+	 *
+	 * @param cuboid
+	 * @return the values inside the cuboid
+	 */
+	public List<V> valuesInCuboid(FishyCuboidInt cuboid) {
+		Collector<V> collector = new Collector<>();
+		queryCuboid(cuboid, collector);
+		return collector.result;
+	}
+
+	/**
+	 * Convenience method, collects the results of <code>queryRadius</code>.
+	 *
+	 * @param centre
+	 * @param radius
+	 * @return the values within the radius
+	 */
+	public List<V> valuesInRadius(IFishyLocation centre, double radius) {
+		Collector<V> collector = new Collector<>();
+		queryRadius(centre, radius, collector);
+		return collector.result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		worlds.clear();
+		size = 0;
+	}
+
+	private static int sectionOf(long packedPosition) {
+		return PackedPosition.getY(packedPosition) >> SECTION_SHIFT;
+	}
+
+	private LongObjectMap<V> getBucket(FishyWorld world, long packedPosition) {
+		LongObjectMap<Column<V>> chunks = worlds.get(world);
+		if (chunks == null) {
+			return null;
+		}
+		Column<V> column = chunks.get(PackedPosition.toChunkKey(packedPosition));
+		return (column == null) ? null : column.sections.get(sectionOf(packedPosition));
+	}
+
+	private void queryBox(FishyWorld world,
+			int minX, int minY, int minZ,
+			int maxX, int maxY, int maxZ,
+			Visitor<? super V> visitor) {
+		query(world, minX, minY, minZ, maxX, maxY, maxZ,
+				new BoxFilter<>(world, visitor, minX, minY, minZ, maxX, maxY, maxZ));
+	}
+
+	/**
+	 * Passes every entry in the sections that intersect the box to the filter.
+	 */
+	private void query(FishyWorld world,
+			int minX, int minY, int minZ,
+			int maxX, int maxY, int maxZ,
+			LongObjectConsumer<V> filter) {
+		LongObjectMap<Column<V>> chunks = worlds.get(world);
+		if (chunks == null || minX > maxX || minY > maxY || minZ > maxZ) {
+			return;
+		}
+		int minChunkX = FishyChunk.worldToChunk(minX);
+		int minChunkZ = FishyChunk.worldToChunk(minZ);
+		int maxChunkX = FishyChunk.worldToChunk(maxX);
+		int maxChunkZ = FishyChunk.worldToChunk(maxZ);
+		SectionFilter<V> sections = new SectionFilter<>(filter, minY >> SECTION_SHIFT, maxY >> SECTION_SHIFT);
+		long area = ((long) maxChunkX - minChunkX + 1) * ((long) maxChunkZ - minChunkZ + 1);
+		if (area > chunks.size()) {
+			// fewer occupied chunks than chunks in the area
+			chunks.forEach(new ChunkFilter<>(sections, minChunkX, minChunkZ, maxChunkX, maxChunkZ));
+			return;
+		}
+		for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+			for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+				Column<V> column = chunks.get(PackedPosition.packChunk(chunkX, chunkZ));
+				if (column != null) {
+					sections.query(column);
+				}
+			}
+		}
+	}
+
+	private static final class Column<V> {
+		// section y -> packed position -> value
+		final IntObjectMap<LongObjectMap<V>> sections = new IntObjectMap<>(4);
+		int size = 0;
+	}
+
+	private static final class ChunkFilter<V> implements LongObjectConsumer<Column<V>> {
+		private final SectionFilter<V> sections;
+		private final int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+
+		ChunkFilter(SectionFilter<V> sections, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+			this.sections = sections;
+			this.minChunkX = minChunkX;
+			this.minChunkZ = minChunkZ;
+			this.maxChunkX = maxChunkX;
+			this.maxChunkZ = maxChunkZ;
+		}
+
+		@Override
+		public void accept(long chunkKey, Column<V> column) {
+			int chunkX = PackedPosition.getChunkKeyX(chunkKey);
+			int chunkZ = PackedPosition.getChunkKeyZ(chunkKey);
+			if (chunkX >= minChunkX && chunkX <= maxChunkX
+					&& chunkZ >= minChunkZ && chunkZ <= maxChunkZ) {
+				sections.query(column);
+			}
+		}
+	}
+
+	private static final class SectionFilter<V> implements IntObjectConsumer<LongObjectMap<V>> {
+		private final LongObjectConsumer<V> filter;
+		private final int minSection, maxSection;
+
+		SectionFilter(LongObjectConsumer<V> filter, int minSection, int maxSection) {
+			this.filter = filter;
+			this.minSection = minSection;
+			this.maxSection = maxSection;
+		}
+
+		void query(Column<V> column) {
+			if ((long) maxSection - minSection + 1 > column.sections.size()) {
+				// fewer occupied sections than sections in the range
+				column.sections.forEach(this);
+				return;
+			}
+			for (int sectionY = minSection; sectionY <= maxSection; sectionY++) {
+				LongObjectMap<V> bucket = column.sections.get(sectionY);
+				if (bucket != null) {
+					bucket.forEach(filter);
+				}
+			}
+		}
+
+		@Override
+		public void accept(int sectionY, LongObjectMap<V> bucket) {
+			if (sectionY >= minSection && sectionY <= maxSection) {
+				bucket.forEach(filter);
+			}
+		}
+	}
+
+	private static final class Forwarder<V> implements LongObjectConsumer<V> {
+		private final FishyWorld world;
+		private final Visitor<? super V> visitor;
+
+		Forwarder(FishyWorld world, Visitor<? super V> visitor) {
+			this.world = world;
+			this.visitor = visitor;
+		}
+
+		@Override
+		public void accept(long key, V value) {
+			visitor.visit(world, key, value);
+		}
+	}
+
+	private static final class BoxFilter<V> implements LongObjectConsumer<V> {
+		private final FishyWorld world;
+		private final Visitor<? super V> visitor;
+		private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+		BoxFilter(FishyWorld world, Visitor<? super V> visitor,
+				int minX, int minY, int minZ,
+				int maxX, int maxY, int maxZ) {
+			this.world = world;
+			this.visitor = visitor;
+			this.minX = minX;
+			this.minY = minY;
+			this.minZ = minZ;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.maxZ = maxZ;
+		}
+
+		@Override
+		public void accept(long key, V value) {
+			int x = PackedPosition.getX(key);
+			int y = PackedPosition.getY(key);
+			int z = PackedPosition.getZ(key);
+			if (x >= minX && x <= maxX
+					&& y >= minY && y <= maxY
+					&& z >= minZ && z <= maxZ) {
+				visitor.visit(world, key, value);
+			}
+		}
+	}
+
+	private static final class RadiusFilter<V> implements LongObjectConsumer<V> {
+		private final FishyWorld world;
+		private final Visitor<? super V> visitor;
+		private final double cx, cy, cz, radiusSquared;
+
+		RadiusFilter(FishyWorld world, Visitor<? super V> visitor,
+				double cx, double cy, double cz, double radiusSquared) {
+			this.world = world;
+			this.visitor = visitor;
+			this.cx = cx;
+			this.cy = cy;
+			this.cz = cz;
+			this.radiusSquared = radiusSquared;
+		}
+
+		@Override
+		public void accept(long key, V value) {
+			double dx = PackedPosition.getX(key) - cx;
+			double dy = PackedPosition.getY(key) - cy;
+			double dz = PackedPosition.getZ(key) - cz;
+			if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+				visitor.visit(world, key, value);
+			}
+		}
+	}
+
+	private static final class Collector<V> implements Visitor<V> {
+		final List<V> result = new ArrayList<>();
+
+		@Override
+		public void visit(FishyWorld world, long packedPosition, V value) {
+			result.add(value);
+		}
+	}
+}
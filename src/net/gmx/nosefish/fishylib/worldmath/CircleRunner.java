@@ -1,7 +1,13 @@
 package net.gmx.nosefish.fishylib.worldmath;
 
+import java.util.Arrays;
+
 /**
- * Home of the runOnCircle method and family
+ * Home of the runOnCircle method and family.
+ * <p>
+ * The shapes are computed once per radius and cached as <code>ShapeStencil</code>s,
+ * so running the same shape again only costs the callback loop.
+ * Shapes too large for the cache are traced directly into the callback.
  * 
  * @author Stefan Steinheimer (nosefish)
  *
@@ -16,9 +22,22 @@ public final class CircleRunner {
 		public void run(int x, int y);
 	}
 	
+	/**
+	 * Interface to use with runOnCircleSpans
+	 *
+	 */
+	public static interface IRunnableSpan {
+		/**
+		 * @param y the row
+		 * @param xStart first x of the span
+		 * @param xEnd last x of the span (inclusive)
+		 */
+		public void run(int y, int xStart, int xEnd);
+	}
+	
 
-    /**
-	 * Runs <code>IRunnable</code> toRun for every point of a circle,
+	/**
+	 * Runs <code>IRunnable</code> toRun once for every point of a circle,
 	 * determined by the Midpoint-Algorithm.
 	 * 
 	 * @param centreX
@@ -36,16 +55,142 @@ public final class CircleRunner {
 	 *     
 	 * @param toRun
 	 *     the task to run
+	 *     
+	 * @throws IllegalArgumentException if the radius is negative
 	 */
 	public static void runOnCircle(int centreX, int centreY, int radius, boolean fill, IRunnableXY toRun) {
+		ShapeStencil stencil = ShapeStencil.getIfCacheable(
+				fill ? ShapeStencil.Shape.DISC : ShapeStencil.Shape.CIRCLE, radius, 1);
+		if (stencil != null) {
+			stencil.replay(centreX, centreY, toRun);
+		} else {
+			traceCircle(centreX, centreY, radius, fill, toRun);
+		}
+	}
+	
+	/**
+	 * Like <code>runOnCircle</code>, but runs <code>toRun</code> once for every
+	 * horizontal run of adjacent points instead of once per point. A filled
+	 * circle yields exactly one span per row. Spans are ordered by y, then x,
+	 * and cover every point exactly once.
+	 * 
+	 * @param centreX
+	 *     centre point x-value
+	 *     
+	 * @param centreY
+	 *     centre point y-value
+	 *     
+	 * @param radius
+	 *     radius of the circle
+	 *     
+	 * @param fill
+	 *     if <code>false</code> the spans cover only the outline,
+	 *     if <code>true</code> they cover the interior, too
+	 *     
+	 * @param toRun
+	 *     the task to run
+	 *     
+	 * @throws IllegalArgumentException if the radius is negative
+	 */
+	public static void runOnCircleSpans(int centreX, int centreY, int radius, boolean fill, IRunnableSpan toRun) {
+		ShapeStencil stencil = ShapeStencil.getIfCacheable(
+				fill ? ShapeStencil.Shape.DISC : ShapeStencil.Shape.CIRCLE, radius, 1);
+		if (stencil != null) {
+			stencil.replaySpans(centreX, centreY, toRun);
+		} else {
+			traceCircleSpans(centreX, centreY, radius, fill, toRun);
+		}
+	}
+	
+	/**
+	 * Runs toRun once for every block of a ball, or only for its surface.
+	 * 
+	 * @param centreX
+	 * @param centreY
+	 * @param centreZ
+	 * @param radius
+	 * @param fill
+	 *     if <code>false</code> the task runs only on the surface,
+	 *     if <code>true</code> it is executed on interior points, too
+	 * @param toRun
+	 *     the task to run
+	 *     
+	 * @throws IllegalArgumentException if the radius is negative
+	 */
+	public static void runOnSphere(int centreX, int centreY, int centreZ, int radius, boolean fill, IntTriConsumer toRun) {
+		ShapeStencil stencil = ShapeStencil.getIfCacheable(
+				fill ? ShapeStencil.Shape.SPHERE : ShapeStencil.Shape.SHELL, radius, 1);
+		if (stencil != null) {
+			stencil.replay(centreX, centreY, centreZ, toRun);
+		} else {
+			ShapeStencil.traceBall(centreX, centreY, centreZ, radius, ! fill, toRun);
+		}
+	}
+	
+	/**
+	 * Runs toRun once for every block of a vertical cylinder. The base
+	 * is centred on (centreX, baseY, centreZ) and the cylinder extends upwards.
+	 * 
+	 * @param centreX
+	 * @param baseY
+	 * @param centreZ
+	 * @param radius
+	 * @param height
+	 * @param fill
+	 *     if <code>false</code> the task runs only on the curved surface,
+	 *     if <code>true</code> it is executed on interior points, too
+	 * @param toRun
+	 *     the task to run
+	 *     
+	 * @throws IllegalArgumentException if the radius is negative or the height is not positive
+	 */
+	public static void runOnCylinder(int centreX, int baseY, int centreZ, int radius, int height, boolean fill, final IntTriConsumer toRun) {
+		ShapeStencil stencil = ShapeStencil.getIfCacheable(
+				fill ? ShapeStencil.Shape.CYLINDER : ShapeStencil.Shape.TUBE, radius, height);
+		if (stencil != null) {
+			stencil.replay(centreX, baseY, centreZ, toRun);
+			return;
+		}
+		// too large, stack the sections
+		ShapeStencil section = ShapeStencil.getIfCacheable(
+				fill ? ShapeStencil.Shape.DISC : ShapeStencil.Shape.CIRCLE, radius, 1);
+		for (int y = baseY; y - baseY < height; y++) {
+			if (section != null) {
+				section.replay(centreX, y, centreZ, toRun);
+			} else {
+				final int sectionY = y;
+				traceCircle(centreX, centreZ, radius, fill, new IRunnableXY() {
+					@Override
+					public void run(int x, int z) {
+						toRun.accept(x, sectionY, z);
+					}
+				});
+			}
+		}
+	}
+	
+	/**
+	 * The midpoint algorithm itself. Used to compute the stencils.
+	 * <p>
+	 * The outline may run toRun more than once for the same point.
+	 * The filled circle runs it exactly once per point: every row
+	 * from the left to the right edge of the outline.
+	 */
+	static void traceCircle(int centreX, int centreY, int radius, boolean fill, IRunnableXY toRun) {
+		if (fill) {
+			int[] halfWidths = halfWidths(radius);
+			for (int dy = -radius; dy <= radius; dy++) {
+				int halfWidth = halfWidths[Math.abs(dy)];
+				for (int dx = -halfWidth; dx <= halfWidth; dx++) {
+					toRun.run(centreX + dx, centreY + dy);
+				}
+			}
+			return;
+		}
 	    int x = 0;
 	    int y = radius;
 	    int p = (5 - radius * 4) / 4;
-	    if (fill) {
-	    	runOnFilledCircle(centreX, centreY, x, y, toRun);
-	    } else {
-	    	runOnCircleOutline(centreX, centreY, x, y, toRun);
-	    }
+	    runOnCircleOutline(centreX, centreY, x, y, toRun);
 	    while (x < y) {
 	        x++;
 	        if (p < 0) {
@@ -54,12 +199,80 @@ public final class CircleRunner {
 	            y--;
 	            p += 2 * (x - y) + 1;
 	        }
-	        if (fill) {
-	        	runOnFilledCircle(centreX, centreY, x, y, toRun);
+	        runOnCircleOutline(centreX, centreY, x, y, toRun);
+	    }
+	}
+	
+	/**
+	 * The spans of <code>traceCircle</code>, ordered by y, then x.
+	 * Each point is covered exactly once.
+	 */
+	static void traceCircleSpans(int centreX, int centreY, int radius, boolean fill, IRunnableSpan toRun) {
+		if (fill) {
+			int[] halfWidths = halfWidths(radius);
+			for (int dy = -radius; dy <= radius; dy++) {
+				int halfWidth = halfWidths[Math.abs(dy)];
+				toRun.run(centreY + dy, centreX - halfWidth, centreX + halfWidth);
+			}
+			return;
+		}
+		// the outline's points in a row form one run of abs(dx), mirrored
+		final int[] innerWidths = new int[radius + 1];
+		final int[] outerWidths = new int[radius + 1];
+		Arrays.fill(innerWidths, Integer.MAX_VALUE);
+		Arrays.fill(outerWidths, -1);
+		traceCircle(0, 0, radius, false, new IRunnableXY() {
+			@Override
+			public void run(int x, int y) {
+				int row = Math.abs(y);
+				innerWidths[row] = Math.min(innerWidths[row], Math.abs(x));
+				outerWidths[row] = Math.max(outerWidths[row], Math.abs(x));
+			}
+		});
+		for (int dy = -radius; dy <= radius; dy++) {
+			int inner = innerWidths[Math.abs(dy)];
+			int outer = outerWidths[Math.abs(dy)];
+			if (outer < 0) {
+				continue;
+			}
+			if (inner == 0) {
+				toRun.run(centreY + dy, centreX - outer, centreX + outer);
+			} else {
+				toRun.run(centreY + dy, centreX - outer, centreX - inner);
+				toRun.run(centreY + dy, centreX + inner, centreX + outer);
+			}
+		}
+	}
+
+	/**
+	 * Runs the midpoint algorithm and records, for every distance from
+	 * the centre row, how far the outline reaches to the side.
+	 * 
+	 * @param radius
+	 * @return halfWidths[abs(dy)] is the largest abs(dx) of the outline in row dy
+	 */
+	static int[] halfWidths(int radius) {
+		int[] halfWidths = new int[radius + 1];
+	    int x = 0;
+	    int y = radius;
+	    int p = (5 - radius * 4) / 4;
+	    halfWidths[y] = Math.max(halfWidths[y], x);
+	    halfWidths[x] = Math.max(halfWidths[x], y);
+	    // steps with x > y are past the octant, the outline skips them too
+	    while (x < y) {
+	        x++;
+	        if (p < 0) {
+	            p += 2 * x + 1;
 	        } else {
-	        	runOnCircleOutline(centreX, centreY, x, y, toRun);
+	            y--;
+	            p += 2 * (x - y) + 1;
+	        }
+	        if (x <= y) {
+	        	halfWidths[y] = Math.max(halfWidths[y], x);
+	        	halfWidths[x] = Math.max(halfWidths[x], y);
 	        }
 	    }
+	    return halfWidths;
 	}
 
 	private static void runOnCircleOutline(
@@ -89,50 +302,4 @@ public final class CircleRunner {
         }
     }
     
-    private static void runOnFilledCircle(
-    		int centreX, int centreY,
-    		int x, int y,
-    		IRunnableXY toRun) {
-    	if (x == 0) {
-    		// centre point
-        	toRun.run(centreX, centreY);
-    		// cardinals
-    		for (int d = 1; d <= y; d++) {
-    			toRun.run(centreX,     centreY + d);
-    			toRun.run(centreX,     centreY - d);
-    			toRun.run(centreX + d, centreY    );
-    			toRun.run(centreX - d, centreY    );
-    		}
-        } else if (x == y) {
-        	// "diagonals"
-        	for (int d = 1; d <= y; d++) {
-        		toRun.run(centreX + d, centreY + d);
-        		toRun.run(centreX - d, centreY + d);
-        		toRun.run(centreX + d, centreY - d);
-        		toRun.run(centreX - d, centreY - d);
-        	}
-        } else if (x < y) {
-        	// all the rest
-        	for (int d = x + 1; d <= y; d++) { 
-        	toRun.run(centreX + x, centreY + d);
-        	toRun.run(centreX - x, centreY + d);
-        	toRun.run(centreX + x, centreY - d);
-        	toRun.run(centreX - x, centreY - d);
-        	toRun.run(centreX + d, centreY + x);
-        	toRun.run(centreX - d, centreY + x);
-        	toRun.run(centreX + d, centreY - x);
-        	toRun.run(centreX - d, centreY - x);
-        	}
-        	if (x + 1 == y) {
-            	// "diagonals"
-            	for (int d = 1; d < y; d++) {
-            		toRun.run(centreX + d,  centreY + d);
-            		toRun.run(centreX - d,  centreY + d);
-            		toRun.run(centreX + d,  centreY - d);
-            		toRun.run(centreX - d,  centreY - d);
-            	}
-        	}
-        }
-    }
-    
 }
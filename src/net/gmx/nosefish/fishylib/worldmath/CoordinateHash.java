@@ -0,0 +1,51 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+/**
+ * Hash functions for the immutable worldmath types. Block and chunk
+ * coordinates are small, sequential and often multiples of 16, so every
+ * output bit must depend on every input bit. The finalizer is MurmurHash3's fmix64.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+final class CoordinateHash {
+	
+	private CoordinateHash() {
+		// static methods only
+	}
+	
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the hash of the coordinates
+	 */
+	static int hash(int x, int y, int z) {
+		long key = ((long) x << 32) | (z & 0xFFFFFFFFL);
+		return fold(fmix64(key ^ fmix64(y)));
+	}
+	
+	/**
+	 * Combines two hashes, order matters.
+	 * 
+	 * @param first
+	 * @param second
+	 * @return the combined hash
+	 */
+	static int combine(int first, int second) {
+		return fold(fmix64(((long) first << 32) | (second & 0xFFFFFFFFL)));
+	}
+	
+	private static long fmix64(long k) {
+		k ^= k >>> 33;
+		k *= 0xFF51AFD7ED558CCDL;
+		k ^= k >>> 33;
+		k *= 0xC4CEB9FE1A85EC53L;
+		k ^= k >>> 33;
+		return k;
+	}
+	
+	private static int fold(long h) {
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,712 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * R-tree over the cuboids of one world, for "which regions contain
+ * this location" and "which regions overlap this cuboid" queries.
+ * <p>
+ * Build it with <code>bulkLoad</code> (sort-tile-recursive packing) when all
+ * regions are known up front, then <code>insert</code> and <code>remove</code>
+ * as regions change. The visitor-based query methods do not allocate.
+ * <p>
+ * Removal only drops empty nodes and does not rebalance underfull ones,
+ * so after many removals a fresh <code>bulkLoad</code> gives faster queries.
+ * <p>
+ * Not thread-safe. Safe for concurrent queries if nobody writes.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ * @param <C> the cuboid type
+ */
+public class CuboidRTree<C extends FishyCuboidInt> {
+	static final int MAX_ENTRIES = 16;
+	static final int MIN_ENTRIES = 6;
+
+	/**
+	 * Callback for the query methods.
+	 *
+	 * @param <C> the cuboid type
+	 */
+	public static interface Visitor<C> {
+		/**
+		 * @param cuboid a cuboid matching the query
+		 * @return <code>true</code> to continue the query, <code>false</code> to stop
+		 */
+		public boolean visit(C cuboid);
+	}
+
+	private static final class Node {
+		final boolean leaf;
+		int count = 0;
+		// bounds of the children, so that we don't need to dereference them
+		final int[] minX = new int[MAX_ENTRIES + 1];
+		final int[] minY = new int[MAX_ENTRIES + 1];
+		final int[] minZ = new int[MAX_ENTRIES + 1];
+		final int[] maxX = new int[MAX_ENTRIES + 1];
+		final int[] maxY = new int[MAX_ENTRIES + 1];
+		final int[] maxZ = new int[MAX_ENTRIES + 1];
+		// Node for inner nodes, C for leaves
+		final Object[] children = new Object[MAX_ENTRIES + 1];
+
+		Node(boolean leaf) {
+			this.leaf = leaf;
+		}
+
+		void add(Object child, int x0, int y0, int z0, int x1, int y1, int z1) {
+			int i = count++;
+			children[i] = child;
+			setBounds(i, x0, y0, z0, x1, y1, z1);
+		}
+
+		void add(Node child) {
+			add(child, 0, 0, 0, 0, 0, 0);
+			updateBounds(count - 1);
+		}
+
+		void setBounds(int i, int x0, int y0, int z0, int x1, int y1, int z1) {
+			minX[i] = x0;
+			minY[i] = y0;
+			minZ[i] = z0;
+			maxX[i] = x1;
+			maxY[i] = y1;
+			maxZ[i] = z1;
+		}
+
+		void extendBounds(int i, int x0, int y0, int z0, int x1, int y1, int z1) {
+			minX[i] = Math.min(minX[i], x0);
+			minY[i] = Math.min(minY[i], y0);
+			minZ[i] = Math.min(minZ[i], z0);
+			maxX[i] = Math.max(maxX[i], x1);
+			maxY[i] = Math.max(maxY[i], y1);
+			maxZ[i] = Math.max(maxZ[i], z1);
+		}
+
+		/**
+		 * Recomputes the bounds of child i from the child's entries.
+		 */
+		void updateBounds(int i) {
+			Node child = (Node) children[i];
+			setBounds(i, child.minX[0], child.minY[0], child.minZ[0],
+					child.maxX[0], child.maxY[0], child.maxZ[0]);
+			for (int j = 1; j < child.count; j++) {
+				extendBounds(i, child.minX[j], child.minY[j], child.minZ[j],
+						child.maxX[j], child.maxY[j], child.maxZ[j]);
+			}
+		}
+
+		/**
+		 * Writes the union of all entry bounds to out[offset, offset + 6).
+		 */
+		void writeUnion(int[] out, int offset) {
+			out[offset]     = minX[0];
+			out[offset + 1] = minY[0];
+			out[offset + 2] = minZ[0];
+			out[offset + 3] = maxX[0];
+			out[offset + 4] = maxY[0];
+			out[offset + 5] = maxZ[0];
+			for (int j = 1; j < count; j++) {
+				out[offset]     = Math.min(out[offset],     minX[j]);
+				out[offset + 1] = Math.min(out[offset + 1], minY[j]);
+				out[offset + 2] = Math.min(out[offset + 2], minZ[j]);
+				out[offset + 3] = Math.max(out[offset + 3], maxX[j]);
+				out[offset + 4] = Math.max(out[offset + 4], maxY[j]);
+				out[offset + 5] = Math.max(out[offset + 5], maxZ[j]);
+			}
+		}
+
+		void removeAt(int i) {
+			int last = --count;
+			children[i] = children[last];
+			setBounds(i, minX[last], minY[last], minZ[last], maxX[last], maxY[last], maxZ[last]);
+			children[last] = null;
+		}
+
+		boolean contains(int i, int x, int y, int z) {
+			return minX[i] <= x && x <= maxX[i]
+			    && minY[i] <= y && y <= maxY[i]
+			    && minZ[i] <= z && z <= maxZ[i];
+		}
+
+		boolean intersects(int i, int x0, int y0, int z0, int x1, int y1, int z1) {
+			return minX[i] <= x1 && x0 <= maxX[i]
+			    && minY[i] <= y1 && y0 <= maxY[i]
+			    && minZ[i] <= z1 && z0 <= maxZ[i];
+		}
+
+		boolean encloses(int i, int x0, int y0, int z0, int x1, int y1, int z1) {
+			return minX[i] <= x0 && x1 <= maxX[i]
+			    && minY[i] <= y0 && y1 <= maxY[i]
+			    && minZ[i] <= z0 && z1 <= maxZ[i];
+		}
+
+		double volume(int i) {
+			return CuboidRTree.volume(minX[i], minY[i], minZ[i], maxX[i], maxY[i], maxZ[i]);
+		}
+	}
+
+	private final FishyWorld world;
+	private Node root;
+	private int size;
+
+	/**
+	 * Creates an empty tree.
+	 *
+	 * @param world the world of the cuboids
+	 */
+	public CuboidRTree(FishyWorld world) {
+		if (world == null) {
+			throw new NullPointerException("Parameter world was null.");
+		}
+		this.world = world;
+		clear();
+	}
+
+	/**
+	 * Builds a tree with sort-tile-recursive packing. Much faster than
+	 * inserting the cuboids one by one, and gives a better tree.
+	 *
+	 * @param world the world of the cuboids
+	 * @param cuboids the cuboids, all in <code>world</code>
+	 * @return the new tree
+	 */
+	public static <C extends FishyCuboidInt> CuboidRTree<C> bulkLoad(FishyWorld world, Collection<? extends C> cuboids) {
+		CuboidRTree<C> tree = new CuboidRTree<>(world);
+		int n = cuboids.size();
+		if (n == 0) {
+			return tree;
+		}
+		Object[] items = new Object[n];
+		int[] bounds = new int[n * 6];
+		int i = 0;
+		for (C cuboid : cuboids) {
+			tree.checkWorld(cuboid);
+			items[i] = cuboid;
+			writeBounds(cuboid, bounds, i * 6);
+			i++;
+		}
+		boolean leaf = true;
+		while (true) {
+			Node[] level = packLevel(items, bounds, leaf);
+			if (level.length == 1) {
+				tree.root = level[0];
+				break;
+			}
+			items = level;
+			bounds = new int[level.length * 6];
+			for (int j = 0; j < level.length; j++) {
+				level[j].writeUnion(bounds, j * 6);
+			}
+			leaf = false;
+		}
+		tree.size = n;
+		return tree;
+	}
+
+	public FishyWorld getWorld() {
+		return world;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		root = new Node(true);
+		size = 0;
+	}
+
+	/**
+	 * Adds a cuboid. Adding the same cuboid twice stores it twice.
+	 *
+	 * @param cuboid a cuboid in this tree's world
+	 */
+	public void insert(C cuboid) {
+		checkWorld(cuboid);
+		Node split = insert(root, cuboid,
+				cuboid.getLowPoint().getIntX(),
+				cuboid.getLowPoint().getIntY(),
+				cuboid.getLowPoint().getIntZ(),
+				cuboid.getHighPoint().getIntX(),
+				cuboid.getHighPoint().getIntY(),
+				cuboid.getHighPoint().getIntZ());
+		if (split != null) {
+			Node newRoot = new Node(false);
+			newRoot.add(root);
+			newRoot.add(split);
+			root = newRoot;
+		}
+		size++;
+	}
+
+	/**
+	 * Removes one occurrence of a cuboid (compared with <code>equals</code>).
+	 *
+	 * @param cuboid
+	 * @return <code>true</code> if the cuboid was found
+	 */
+	public boolean remove(C cuboid) {
+		if (cuboid == null || ! world.equals(cuboid.getWorld())) {
+			return false;
+		}
+		boolean removed = remove(root, cuboid,
+				cuboid.getLowPoint().getIntX(),
+				cuboid.getLowPoint().getIntY(),
+				cuboid.getLowPoint().getIntZ(),
+				cuboid.getHighPoint().getIntX(),
+				cuboid.getHighPoint().getIntY(),
+				cuboid.getHighPoint().getIntZ());
+		if (removed) {
+			size--;
+			while (! root.leaf && root.count == 1) {
+				root = (Node) root.children[0];
+			}
+			if (root.count == 0) {
+				root = new Node(true);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Visits all cuboids that contain the block.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param visitor
+	 * @return <code>false</code> if the visitor stopped the query
+	 */
+	public boolean queryContaining(int x, int y, int z, Visitor<? super C> visitor) {
+		return queryContaining(root, x, y, z, visitor);
+	}
+
+	/**
+	 * Visits all cuboids that contain the location. Locations in other worlds
+	 * are not contained in anything.
+	 *
+	 * @param location
+	 * @param visitor
+	 * @return <code>false</code> if the visitor stopped the query
+	 */
+	public boolean queryContaining(IFishyLocation location, Visitor<? super C> visitor) {
+		if (! world.equals(location.getWorld())) {
+			return true;
+		}
+		return queryContaining(root, location.getIntX(), location.getIntY(), location.getIntZ(), visitor);
+	}
+
+	/**
+	 * Visits all cuboids that overlap the box (bounds inclusive).
+	 *
+	 * @param minX
+	 * @param minY
+	 * @param minZ
+	 * @param maxX
+	 * @param maxY
+	 * @param maxZ
+	 * @param visitor
+	 * @return <code>false</code> if the visitor stopped the query
+	 */
+	public boolean queryIntersecting(int minX, int minY, int minZ,
+			int maxX, int maxY, int maxZ,
+			Visitor<? super C> visitor) {
+		return queryIntersecting(root, minX, minY, minZ, maxX, maxY, maxZ, visitor);
+	}
+
+	/**
+	 * Visits all cuboids that overlap the other cuboid.
+	 *
+	 * @param cuboid
+	 * @param visitor
+	 * @return <code>false</code> if the visitor stopped the query
+	 */
+	public boolean queryIntersecting(FishyCuboidInt cuboid, Visitor<? super C> visitor) {
+		if (! world.equals(cuboid.getWorld())) {
+			return true;
+		}
+		return queryIntersecting(root,
+				cuboid.getLowPoint().getIntX(),
+				cuboid.getLowPoint().getIntY(),
+				cuboid.getLowPoint().getIntZ(),
+				cuboid.getHighPoint().getIntX(),
+				cuboid.getHighPoint().getIntY(),
+				cuboid.getHighPoint().getIntZ(),
+				visitor);
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return <code>true</code> if at least one cuboid contains the block
+	 */
+	public boolean isContainedInAny(int x, int y, int z) {
+		return containsAny(root, x, y, z);
+	}
+
+	/**
+	 * Convenience method, collects the results of <code>queryContaining</code>.
+	 *
+	 * @param location
+	 * @return all cuboids containing the location
+	 */
+	public List<C> getContaining(IFishyLocation location) {
+		final List<C> result = new ArrayList<>(4);
+		queryContaining(location, new Visitor<C>() {
+			@Override
+			public boolean visit(C cuboid) {
+				result.add(cuboid);
+				return true;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Convenience method, collects the results of <code>queryIntersecting</code>.
+	 *
+	 * @param cuboid
+	 * @return all cuboids overlapping <code>cuboid</code>
+	 */
+	public List<C> getIntersecting(FishyCuboidInt cuboid) {
+		final List<C> result = new ArrayList<>(4);
+		queryIntersecting(cuboid, new Visitor<C>() {
+			@Override
+			public boolean visit(C found) {
+				result.add(found);
+				return true;
+			}
+		});
+		return result;
+	}
+
+	// ---- queries ----
+
+	@SuppressWarnings("unchecked")
+	private boolean queryContaining(Node node, int x, int y, int z, Visitor<? super C> visitor) {
+		for (int i = 0; i < node.count; i++) {
+			if (node.contains(i, x, y, z)) {
+				if (node.leaf) {
+					if (! visitor.visit((C) node.children[i])) {
+						return false;
+					}
+				} else if (! queryContaining((Node) node.children[i], x, y, z, visitor)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean queryIntersecting(Node node,
+			int x0, int y0, int z0, int x1, int y1, int z1,
+			Visitor<? super C> visitor) {
+		for (int i = 0; i < node.count; i++) {
+			if (node.intersects(i, x0, y0, z0, x1, y1, z1)) {
+				if (node.leaf) {
+					if (! visitor.visit((C) node.children[i])) {
+						return false;
+					}
+				} else if (! queryIntersecting((Node) node.children[i], x0, y0, z0, x1, y1, z1, visitor)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean containsAny(Node node, int x, int y, int z) {
+		for (int i = 0; i < node.count; i++) {
+			if (node.contains(i, x, y, z)
+					&& (node.leaf || containsAny((Node) node.children[i], x, y, z))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// ---- modification ----
+
+	/**
+	 * @return the new sibling if the node was split, <code>null</code> otherwise
+	 */
+	private Node insert(Node node, Object item, int x0, int y0, int z0, int x1, int y1, int z1) {
+		if (node.leaf) {
+			node.add(item, x0, y0, z0, x1, y1, z1);
+		} else {
+			int best = chooseSubtree(node, x0, y0, z0, x1, y1, z1);
+			Node child = (Node) node.children[best];
+			Node split = insert(child, item, x0, y0, z0, x1, y1, z1);
+			if (split == null) {
+				node.extendBounds(best, x0, y0, z0, x1, y1, z1);
+			} else {
+				node.updateBounds(best);
+				node.add(split);
+			}
+		}
+		return (node.count > MAX_ENTRIES) ? split(node) : null;
+	}
+
+	/**
+	 * Least volume enlargement, ties broken by least volume.
+	 */
+	private static int chooseSubtree(Node node, int x0, int y0, int z0, int x1, int y1, int z1) {
+		int best = 0;
+		double bestEnlargement = Double.MAX_VALUE;
+		double bestVolume = Double.MAX_VALUE;
+		for (int i = 0; i < node.count; i++) {
+			double volume = node.volume(i);
+			double enlarged = volume(
+					Math.min(node.minX[i], x0),
+					Math.min(node.minY[i], y0),
+					Math.min(node.minZ[i], z0),
+					Math.max(node.maxX[i], x1),
+					Math.max(node.maxY[i], y1),
+					Math.max(node.maxZ[i], z1));
+			double enlargement = enlarged - volume;
+			if (enlargement < bestEnlargement
+					|| (enlargement == bestEnlargement && volume < bestVolume)) {
+				best = i;
+				bestEnlargement = enlargement;
+				bestVolume = volume;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * R*-style split: pick the axis with the smallest total margin,
+	 * then the distribution with the least overlap (ties: least volume).
+	 * Moves the upper part of the distribution into a new node.
+	 */
+	private static Node split(Node node) {
+		int n = node.count;
+		int[] bestOrder = null;
+		long bestMargin = Long.MAX_VALUE;
+		for (int axis = 0; axis < 3; axis++) {
+			int[] order = sortedIndices(node, axis);
+			long margin = 0;
+			for (int k = MIN_ENTRIES; k <= n - MIN_ENTRIES; k++) {
+				margin += margin(node, order, 0, k) + margin(node, order, k, n);
+			}
+			if (margin < bestMargin) {
+				bestMargin = margin;
+				bestOrder = order;
+			}
+		}
+		int bestK = MIN_ENTRIES;
+		double bestOverlap = Double.MAX_VALUE;
+		double bestVolume = Double.MAX_VALUE;
+		int[] a = new int[6];
+		int[] b = new int[6];
+		for (int k = MIN_ENTRIES; k <= n - MIN_ENTRIES; k++) {
+			groupBounds(node, bestOrder, 0, k, a, 0);
+			groupBounds(node, bestOrder, k, n, b, 0);
+			double overlap = volume(
+					Math.max(a[0], b[0]), Math.max(a[1], b[1]), Math.max(a[2], b[2]),
+					Math.min(a[3], b[3]), Math.min(a[4], b[4]), Math.min(a[5], b[5]));
+			double vol = volume(a[0], a[1], a[2], a[3], a[4], a[5])
+			         + volume(b[0], b[1], b[2], b[3], b[4], b[5]);
+			if (overlap < bestOverlap || (overlap == bestOverlap && vol < bestVolume)) {
+				bestK = k;
+				bestOverlap = overlap;
+				bestVolume = vol;
+			}
+		}
+		// copy the old entries, then redistribute
+		Object[] children = Arrays.copyOf(node.children, n);
+		int[][] bounds = {
+				Arrays.copyOf(node.minX, n), Arrays.copyOf(node.minY, n), Arrays.copyOf(node.minZ, n),
+				Arrays.copyOf(node.maxX, n), Arrays.copyOf(node.maxY, n), Arrays.copyOf(node.maxZ, n)};
+		Node sibling = new Node(node.leaf);
+		Arrays.fill(node.children, null);
+		node.count = 0;
+		for (int k = 0; k < n; k++) {
+			int i = bestOrder[k];
+			Node target = (k < bestK) ? node : sibling;
+			target.add(children[i],
+					bounds[0][i], bounds[1][i], bounds[2][i],
+					bounds[3][i], bounds[4][i], bounds[5][i]);
+		}
+		return sibling;
+	}
+
+	private boolean remove(Node node, Object item, int x0, int y0, int z0, int x1, int y1, int z1) {
+		for (int i = 0; i < node.count; i++) {
+			if (! node.encloses(i, x0, y0, z0, x1, y1, z1)) {
+				continue;
+			}
+			if (node.leaf) {
+				Object candidate = node.children[i];
+				if (candidate == item || candidate.equals(item)) {
+					node.removeAt(i);
+					return true;
+				}
+			} else {
+				Node child = (Node) node.children[i];
+				if (remove(child, item, x0, y0, z0, x1, y1, z1)) {
+					if (child.count == 0) {
+						node.removeAt(i);
+					} else {
+						node.updateBounds(i);
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// ---- bulk loading ----
+
+	/**
+	 * Packs one level of the tree: sorts the items into slabs along x,
+	 * the slabs into slices along y, and the slices along z, then cuts
+	 * runs of <code>MAX_ENTRIES</code> items into nodes.
+	 */
+	private static Node[] packLevel(Object[] items, int[] bounds, boolean leaf) {
+		int n = items.length;
+		int nodeCount = ceilDiv(n, MAX_ENTRIES);
+		int slabCount = (int) Math.ceil(Math.cbrt(nodeCount));
+		int slabSize = MAX_ENTRIES * ceilDiv(nodeCount, slabCount);
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		sortByCentre(order, 0, n, bounds, 0);
+		List<Node> nodes = new ArrayList<>(nodeCount);
+		for (int slabStart = 0; slabStart < n; slabStart += slabSize) {
+			int slabEnd = Math.min(slabStart + slabSize, n);
+			sortByCentre(order, slabStart, slabEnd, bounds, 1);
+			int slabNodes = ceilDiv(slabEnd - slabStart, MAX_ENTRIES);
+			int sliceSize = MAX_ENTRIES * ceilDiv(slabNodes, (int) Math.ceil(Math.sqrt(slabNodes)));
+			for (int sliceStart = slabStart; sliceStart < slabEnd; sliceStart += sliceSize) {
+				int sliceEnd = Math.min(sliceStart + sliceSize, slabEnd);
+				sortByCentre(order, sliceStart, sliceEnd, bounds, 2);
+				for (int runStart = sliceStart; runStart < sliceEnd; runStart += MAX_ENTRIES) {
+					int runEnd = Math.min(runStart + MAX_ENTRIES, sliceEnd);
+					Node node = new Node(leaf);
+					for (int k = runStart; k < runEnd; k++) {
+						int i = order[k];
+						int b = i * 6;
+						node.add(items[i], bounds[b], bounds[b + 1], bounds[b + 2],
+								bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+					}
+					nodes.add(node);
+				}
+			}
+		}
+		return nodes.toArray(new Node[nodes.size()]);
+	}
+
+	/**
+	 * Sorts order[from, to) by the centre of the item bounds along an axis.
+	 * Packs centre and index into one long, so we can use the primitive sort.
+	 * The centre is halved first so that it fits into the upper 32 bits.
+	 */
+	private static void sortByCentre(int[] order, int from, int to, int[] bounds, int axis) {
+		long[] keys = new long[to - from];
+		for (int k = from; k < to; k++) {
+			int i = order[k];
+			long centre = (bounds[i * 6 + axis] >> 1) + (bounds[i * 6 + 3 + axis] >> 1);
+			keys[k - from] = (centre << 32) | i;
+		}
+		Arrays.sort(keys);
+		for (int k = from; k < to; k++) {
+			order[k] = (int) keys[k - from];
+		}
+	}
+
+	private static int[] sortedIndices(Node node, int axis) {
+		int[] bounds = new int[node.count * 6];
+		int[] order = new int[node.count];
+		for (int i = 0; i < node.count; i++) {
+			order[i] = i;
+			bounds[i * 6]     = node.minX[i];
+			bounds[i * 6 + 1] = node.minY[i];
+			bounds[i * 6 + 2] = node.minZ[i];
+			bounds[i * 6 + 3] = node.maxX[i];
+			bounds[i * 6 + 4] = node.maxY[i];
+			bounds[i * 6 + 5] = node.maxZ[i];
+		}
+		sortByCentre(order, 0, order.length, bounds, axis);
+		return order;
+	}
+
+	// ---- helpers ----
+
+	private void checkWorld(FishyCuboidInt cuboid) {
+		if (! world.equals(cuboid.getWorld())) {
+			throw new IllegalArgumentException("Cuboid is in world " + cuboid.getWorld()
+					+ ", but this tree is for world " + world);
+		}
+	}
+
+	private static void writeBounds(FishyCuboidInt cuboid, int[] bounds, int offset) {
+		bounds[offset]     = cuboid.getLowPoint().getIntX();
+		bounds[offset + 1] = cuboid.getLowPoint().getIntY();
+		bounds[offset + 2] = cuboid.getLowPoint().getIntZ();
+		bounds[offset + 3] = cuboid.getHighPoint().getIntX();
+		bounds[offset + 4] = cuboid.getHighPoint().getIntY();
+		bounds[offset + 5] = cuboid.getHighPoint().getIntZ();
+	}
+
+	/**
+	 * Writes the union of the bounds of the entries order[from, to)
+	 * to out[offset, offset + 6).
+	 */
+	private static void groupBounds(Node node, int[] order, int from, int to, int[] out, int offset) {
+		int i = order[from];
+		int x0 = node.minX[i];
+		int y0 = node.minY[i];
+		int z0 = node.minZ[i];
+		int x1 = node.maxX[i];
+		int y1 = node.maxY[i];
+		int z1 = node.maxZ[i];
+		for (int k = from + 1; k < to; k++) {
+			i = order[k];
+			x0 = Math.min(x0, node.minX[i]);
+			y0 = Math.min(y0, node.minY[i]);
+			z0 = Math.min(z0, node.minZ[i]);
+			x1 = Math.max(x1, node.maxX[i]);
+			y1 = Math.max(y1, node.maxY[i]);
+			z1 = Math.max(z1, node.maxZ[i]);
+		}
+		out[offset]     = x0;
+		out[offset + 1] = y0;
+		out[offset + 2] = z0;
+		out[offset + 3] = x1;
+		out[offset + 4] = y1;
+		out[offset + 5] = z1;
+	}
+
+	private static long margin(Node node, int[] order, int from, int to) {
+		int[] b = new int[6];
+		groupBounds(node, order, from, to, b, 0);
+		return ((long) b[3] - b[0]) + ((long) b[4] - b[1]) + ((long) b[5] - b[2]);
+	}
+
+	/**
+	 * Number of blocks in the box, 0 if the box is empty.
+	 * A double, because a world-sized box overflows a long.
+	 */
+	private static double volume(int x0, int y0, int z0, int x1, int y1, int z1) {
+		if (x1 < x0 || y1 < y0 || z1 < z0) {
+			return 0.0;
+		}
+		return ((double) x1 - x0 + 1) * ((double) y1 - y0 + 1) * ((double) z1 - z0 + 1);
+	}
+
+	private static int ceilDiv(int a, int b) {
+		return (a + b - 1) / b;
+	}
+}
@@ -0,0 +1,103 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+
+/**
+ * Spliterator over the packed positions (see <code>PackedPosition</code>)
+ * of the blocks in a cuboid. Splits by halving the remaining index range,
+ * so parallel streams get evenly sized pieces.
+ * <p>
+ * Blocks are ordered by y, then z, then x, with x changing fastest.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+class CuboidSpliterator implements Spliterator.OfLong {
+	private final int minX, minY, minZ;
+	private final long sizeX, sizeZ;
+	private long index;
+	private final long end;
+	
+	CuboidSpliterator(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		this(minX, minY, minZ,
+				(long) maxX - minX + 1,
+				(long) maxZ - minZ + 1,
+				0L,
+				((long) maxX - minX + 1) * ((long) maxY - minY + 1) * ((long) maxZ - minZ + 1));
+	}
+	
+	private CuboidSpliterator(int minX, int minY, int minZ, long sizeX, long sizeZ, long index, long end) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.sizeX = sizeX;
+		this.sizeZ = sizeZ;
+		this.index = index;
+		this.end = end;
+	}
+	
+	private long positionAt(long i) {
+		long layer = sizeX * sizeZ;
+		int y = (int) (i / layer);
+		long inLayer = i - y * layer;
+		int z = (int) (inLayer / sizeX);
+		int x = (int) (inLayer - z * sizeX);
+		return PackedPosition.pack(minX + x, minY + y, minZ + z);
+	}
+	
+	@Override
+	public boolean tryAdvance(LongConsumer action) {
+		if (index >= end) {
+			return false;
+		}
+		action.accept(positionAt(index++));
+		return true;
+	}
+	
+	@Override
+	public void forEachRemaining(LongConsumer action) {
+		if (index >= end) {
+			return;
+		}
+		// walk the coordinates incrementally instead of dividing per block
+		long layer = sizeX * sizeZ;
+		int y = (int) (index / layer);
+		long inLayer = index - y * layer;
+		int z = (int) (inLayer / sizeX);
+		int x = (int) (inLayer - z * sizeX);
+		long remaining = end - index;
+		index = end;
+		while (remaining-- > 0) {
+			action.accept(PackedPosition.pack(minX + x, minY + y, minZ + z));
+			if (++x == sizeX) {
+				x = 0;
+				if (++z == sizeZ) {
+					z = 0;
+					y++;
+				}
+			}
+		}
+	}
+	
+	@Override
+	public Spliterator.OfLong trySplit() {
+		long mid = index + (end - index) / 2;
+		if (mid <= index) {
+			return null;
+		}
+		CuboidSpliterator prefix = new CuboidSpliterator(minX, minY, minZ, sizeX, sizeZ, index, mid);
+		index = mid;
+		return prefix;
+	}
+	
+	@Override
+	public long estimateSize() {
+		return end - index;
+	}
+	
+	@Override
+	public int characteristics() {
+		return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+}
@@ -8,6 +8,8 @@ import net.canarymod.api.world.Chunk;
  *
  */
 public class FishyChunk extends FishyLocationInt {
+	// hashes the chunk coordinates, not the origin's block coordinates
+	private final int chunkHash;
 	
 	public FishyChunk(Chunk chunk) {
 		this(FishyWorld.factory(chunk.getDimension()), chunk.getX(), chunk.getZ());
@@ -18,6 +20,7 @@ public class FishyChunk extends FishyLocationInt {
 				chunkToWorld(chunkX),
 				0,
 				chunkToWorld(chunkZ));
+		this.chunkHash = CoordinateHash.combine(CoordinateHash.hash(getChunkX(), 0, getChunkZ()), world.hashCode());
 	}
 	
 	public FishyChunk(FishyWorld world, int worldX, int worldY, int worldZ) {
@@ -25,9 +28,10 @@ public class FishyChunk extends FishyLocationInt {
 				chunkOriginOf(worldX),
 				0,
 				chunkOriginOf(worldZ));
+		this.chunkHash = CoordinateHash.combine(CoordinateHash.hash(getChunkX(), 0, getChunkZ()), world.hashCode());
 	}
 	
-	public boolean contains(FishyLocationInt location) {
+	public boolean contains(IFishyLocation location) {
 		return this.getWorld().equals(location.getWorld())
 				&& worldToChunk(location.getIntX()) == this.getChunkX()
 				&& worldToChunk(location.getIntZ()) == this.getChunkZ();
@@ -41,6 +45,13 @@ public class FishyChunk extends FishyLocationInt {
 		return worldToChunk(this.getIntZ());
 	}
 	
+	/**
+	 * @return the chunk coordinates packed into a long, see <code>PackedPosition</code>
+	 */
+	public long getChunkKey() {
+		return PackedPosition.packChunk(getChunkX(), getChunkZ());
+	}
+	
 	@Override
 	public String toString(){
 		return "FishyChunk <"
@@ -84,7 +95,7 @@ public class FishyChunk extends FishyLocationInt {
 	}
 	
 	// TODO: why the factory method? convert to constructor
-	public static FishyChunk getChunkContaining(FishyLocation location) {
+	public static FishyChunk getChunkContaining(IFishyLocation location) {
 		return new FishyChunk(location.getWorld(),
 				location.getIntX(),
 				location.getIntY(),
@@ -107,6 +118,6 @@ public class FishyChunk extends FishyLocationInt {
 	
 	@Override
 	public int hashCode() {
-		return this.getPoint().hashCode() * 89 + this.getWorld().hashCode();
+		return chunkHash;
 	}
 }
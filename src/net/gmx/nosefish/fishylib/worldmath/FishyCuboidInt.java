@@ -1,9 +1,16 @@
 package net.gmx.nosefish.fishylib.worldmath;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
 public class FishyCuboidInt {
 	protected final FishyWorld world;
 	protected final FishyPointInt lowPoint;
 	protected final FishyPointInt highPoint;
+	private final int hash;
 	
 	public FishyCuboidInt(FishyWorld world, FishyPointInt point1, FishyPointInt point2) {
 		this.world = world;
@@ -19,6 +26,14 @@ public class FishyCuboidInt {
 		}
 		this.lowPoint = new FishyPointInt(lowPointL[0], lowPointL[1], lowPointL[2]);
 		this.highPoint = new FishyPointInt(highPointL[0], highPointL[1], highPointL[2]);
+		this.hash = hash(world, lowPoint, highPoint);
+	}
+	
+	public FishyCuboidInt(FishyWorld world, int x1, int y1, int z1, int x2, int y2, int z2) {
+		this.world = world;
+		this.lowPoint = new FishyPointInt(Math.min(x1, x2), Math.min(y1, y2), Math.min(z1, z2));
+		this.highPoint = new FishyPointInt(Math.max(x1, x2), Math.max(y1, y2), Math.max(z1, z2));
+		this.hash = hash(world, lowPoint, highPoint);
 	}
 
 	/**
@@ -52,29 +67,107 @@ public class FishyCuboidInt {
 		     * (highPoint.getIntZ() - lowPoint.getIntZ() + 1);
 	}
 	
-	public boolean containsLocation(FishyLocation location) {
+	public boolean containsLocation(IFishyLocation location) {
 		return (location.getWorld().equals(world) &&
 				lowPoint.getIntX() <= location.getIntX() &&
 				highPoint.getIntX() >= location.getIntX() &&
-				lowPoint.getIntY() <= location.getIntZ() &&
-				highPoint.getIntY() >= location.getIntZ() &&
+				lowPoint.getIntY() <= location.getIntY() &&
+				highPoint.getIntY() >= location.getIntY() &&
 				lowPoint.getIntZ() <= location.getIntZ() &&
 				highPoint.getIntZ() >= location.getIntZ());
 	}
 
+	/**
+	 * Calls <code>action</code> for every block in the cuboid, without
+	 * allocating anything. Blocks are visited ordered by y, then z, then x,
+	 * with x changing fastest.
+	 * 
+	 * @param action
+	 */
+	public void forEachBlock(IntTriConsumer action) {
+		int minX = lowPoint.getIntX();
+		int minY = lowPoint.getIntY();
+		int minZ = lowPoint.getIntZ();
+		// counted loops, "x <= maxX" never ends if maxX is Integer.MAX_VALUE
+		long lastX = (long) highPoint.getIntX() - minX;
+		long lastY = (long) highPoint.getIntY() - minY;
+		long lastZ = (long) highPoint.getIntZ() - minZ;
+		for (long dy = 0; dy <= lastY; dy++) {
+			int y = minY + (int) dy;
+			for (long dz = 0; dz <= lastZ; dz++) {
+				int z = minZ + (int) dz;
+				for (long dx = 0; dx <= lastX; dx++) {
+					action.accept(minX + (int) dx, y, z);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Splits the cuboid along chunk borders, so that the work
+	 * for one chunk can be done in one go.
+	 * 
+	 * @return sub-cuboids that each lie within a single chunk,
+	 *     ordered by chunk x, then chunk z
+	 */
+	public List<FishyCuboidInt> splitByChunk() {
+		int minX = lowPoint.getIntX();
+		int minZ = lowPoint.getIntZ();
+		int maxX = highPoint.getIntX();
+		int maxZ = highPoint.getIntZ();
+		int minChunkX = FishyChunk.worldToChunk(minX);
+		int maxChunkX = FishyChunk.worldToChunk(maxX);
+		int minChunkZ = FishyChunk.worldToChunk(minZ);
+		int maxChunkZ = FishyChunk.worldToChunk(maxZ);
+		List<FishyCuboidInt> parts = new ArrayList<>(
+				(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1));
+		for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+			int x1 = Math.max(minX, FishyChunk.chunkToWorld(chunkX));
+			int x2 = Math.min(maxX, FishyChunk.chunkToWorld(chunkX) + 15);
+			for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+				int z1 = Math.max(minZ, FishyChunk.chunkToWorld(chunkZ));
+				int z2 = Math.min(maxZ, FishyChunk.chunkToWorld(chunkZ) + 15);
+				parts.add(new FishyCuboidInt(world,
+						x1, lowPoint.getIntY(), z1,
+						x2, highPoint.getIntY(), z2));
+			}
+		}
+		return parts;
+	}
+	
+	/**
+	 * Spliterator over the packed positions of all blocks in the cuboid
+	 * (see <code>PackedPosition</code>), in the same order as <code>forEachBlock</code>.
+	 * 
+	 * @return the spliterator
+	 */
+	public Spliterator.OfLong spliterator() {
+		return new CuboidSpliterator(
+				lowPoint.getIntX(), lowPoint.getIntY(), lowPoint.getIntZ(),
+				highPoint.getIntX(), highPoint.getIntY(), highPoint.getIntZ());
+	}
+	
+	/**
+	 * Stream of the packed positions of all blocks in the cuboid.
+	 * 
+	 * @param parallel <code>true</code> for a parallel stream
+	 * @return the stream
+	 */
+	public LongStream packedPositions(boolean parallel) {
+		return StreamSupport.longStream(spliterator(), parallel);
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#hashCode()
 	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result
-				+ ((highPoint == null) ? 0 : highPoint.hashCode());
-		result = prime * result
-				+ ((lowPoint == null) ? 0 : lowPoint.hashCode());
-		result = prime * result + ((world == null) ? 0 : world.hashCode());
-		return result;
+		return hash;
+	}
+	
+	private static int hash(FishyWorld world, FishyPointInt lowPoint, FishyPointInt highPoint) {
+		int result = CoordinateHash.combine(lowPoint.hashCode(), highPoint.hashCode());
+		return CoordinateHash.combine(result, (world == null) ? 0 : world.hashCode());
 	}
 
 	/* (non-Javadoc)
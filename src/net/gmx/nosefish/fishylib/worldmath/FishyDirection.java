@@ -2,10 +2,7 @@ package net.gmx.nosefish.fishylib.worldmath;
 
 import java.util.Collections;
 import java.util.EnumSet;
-import java.util.Map;
-import java.util.NavigableMap;
 import java.util.Set;
-import java.util.TreeMap;
 
 import net.canarymod.api.world.position.Direction;
 
@@ -35,98 +32,183 @@ public enum FishyDirection {
 	public static final Set<FishyDirection> ordinalDirections =
 			Collections.unmodifiableSet(EnumSet.of(NORTHEAST, SOUTHEAST, SOUTHWEST, NORTHWEST));
 	
-	// private fields
-	private final Double degrees;
-	private static final NavigableMap<Double, FishyDirection> index =
-			new TreeMap<>();
+	// all tables are indexed by ordinal; the 16 compass directions
+	// come first, ordinal * 22.5 = degrees clockwise from north
+	private static final int COMPASS_POINTS = 16;
+	private static final double DEGREES_PER_POINT = 360.0 / COMPASS_POINTS;
+	private static final FishyDirection[] VALUES = values();
+	private static final FishyDirection[] OPPOSITE = new FishyDirection[VALUES.length];
+	private static final Direction[] CANARY = new Direction[VALUES.length];
+	private static final FishyVectorDouble[] UNIT_DOUBLE = new FishyVectorDouble[VALUES.length];
+	private static final FishyVectorInt[] UNIT_INT = new FishyVectorInt[VALUES.length];
+	// tan(11.25°) and tan(33.75°) as 1.31 fixed point, boundaries between compass points
+	private static final long TAN_HALF_POINT = Math.round(Math.tan(Math.toRadians(DEGREES_PER_POINT / 2.0)) * (1L << 31));
+	private static final long TAN_ONE_AND_A_HALF_POINTS = Math.round(Math.tan(Math.toRadians(DEGREES_PER_POINT * 1.5)) * (1L << 31));
+	
 	static {
-		for (FishyDirection dir : FishyDirection.values()) {
-			if (dir.degrees != null) {
-				index.put(dir.degrees, dir);
+		for (int i = 0; i < COMPASS_POINTS; i++) {
+			FishyDirection dir = VALUES[i];
+			OPPOSITE[i] = VALUES[(i + COMPASS_POINTS / 2) % COMPASS_POINTS];
+			double rad = dir.toRadians();
+			UNIT_DOUBLE[i] = new FishyVectorDouble(snapToZero(Math.sin(rad)), 0.0, snapToZero(- Math.cos(rad)));
+			// Canary uses the old direction system:
+			// Canary North = +X, real North is -Z, +X is East
+			// Canary = Fishy - 90°
+			// TODO: check, I may be lying!
+			try {
+				CANARY[i] = Direction.valueOf(nearestDirection(dir.degrees - 90.0).toString());
+			} catch (IllegalArgumentException e) {
+				CANARY[i] = Direction.ERROR;
 			}
 		}
+		OPPOSITE[UP.ordinal()] = DOWN;
+		OPPOSITE[DOWN.ordinal()] = UP;
+		OPPOSITE[ERROR.ordinal()] = ERROR;
+		CANARY[UP.ordinal()] = Direction.UP;
+		CANARY[DOWN.ordinal()] = Direction.DOWN;
+		CANARY[ERROR.ordinal()] = Direction.ERROR;
+		UNIT_DOUBLE[UP.ordinal()] = new FishyVectorDouble(0.0, 1.0, 0.0);
+		UNIT_DOUBLE[DOWN.ordinal()] = new FishyVectorDouble(0.0, -1.0, 0.0);
+		UNIT_INT[UP.ordinal()] = FishyVectorInt.UNIT_Y;
+		UNIT_INT[DOWN.ordinal()] = FishyVectorInt.UNIT_MINUS_Y;
+		UNIT_INT[NORTH.ordinal()] = FishyVectorInt.UNIT_MINUS_Z;
+		UNIT_INT[EAST.ordinal()] = FishyVectorInt.UNIT_X;
+		UNIT_INT[SOUTH.ordinal()] = FishyVectorInt.UNIT_Z;
+		UNIT_INT[WEST.ordinal()] = FishyVectorInt.UNIT_MINUS_X;
 	}
 	
+	// private fields
+	// NaN for UP, DOWN and ERROR
+	private final double degrees;
+	
 	private FishyDirection(Double degrees) {
-		this.degrees = degrees;
+		this.degrees = (degrees == null) ? Double.NaN : degrees.doubleValue();
 	}
 	
-	// Canary uses the old direction system: 
-	// Canary North = +X, real North is -Z, +X is East
-	// Canary = Fishy - 90° 
-	// TODO: check, I may be lying!
+	/**
+	 * UP and DOWN map to their Canary counterparts,
+	 * directions Canary doesn't have map to <code>Direction.ERROR</code>.
+	 * 
+	 * @return the Canary direction
+	 */
 	public Direction toCanaryDirection() {
-		Direction dir;
-		try {
-			dir = Direction.valueOf(nearestDirection(degrees - 90.0).toString());
-		} catch (IllegalArgumentException e){
-			dir = Direction.ERROR;
-		}
-		return dir;
+		return CANARY[ordinal()];
 	}
 	
 	public FishyDirection opposite() {
-		switch(this) {
-		case UP: return DOWN;
-		case DOWN: return UP;
-		case ERROR: return ERROR;
-		default:
-			double opposite = (this.degrees + 180.0);
-			opposite = opposite < 360.0 ? opposite : opposite - 360.0;
-			return index.get(opposite);
+		return OPPOSITE[ordinal()];
+	}
+	
+	/**
+	 * Rotates a compass direction clockwise by <code>steps</code> times 22.5°.
+	 * Negative steps rotate counter-clockwise. UP, DOWN and ERROR are returned unchanged.
+	 * 
+	 * @param steps
+	 * @return the rotated direction
+	 */
+	public FishyDirection rotate(int steps) {
+		int i = ordinal();
+		if (i >= COMPASS_POINTS) {
+			return this;
 		}
+		return VALUES[(i + steps) & (COMPASS_POINTS - 1)];
 	}
 	
+	/**
+	 * @return degrees clockwise from north, NaN for UP, DOWN and ERROR
+	 */
 	public double toDegrees() {
 		return this.degrees;
 	}
 	
+	/**
+	 * @return radians clockwise from north, NaN for UP, DOWN and ERROR
+	 */
 	public double toRadians() {
-		return Math.toRadians(this.degrees.doubleValue());
+		return Math.toRadians(this.degrees);
 	}
 	
+	/**
+	 * @return a shared unit vector, null for ERROR
+	 */
 	public FishyVectorDouble toUnitDoubleVector() {
-		switch (this) {
-		case UP: return new FishyVectorDouble(0.0, 1.0, 0.0);
-		case DOWN: return new FishyVectorDouble(0.0, -1.0, 0.0);
-		case ERROR: return null;
-		// TODO: complete trivial cases, add constants to FishyVectorDouble
-		default:
-			double rad = this.toRadians();
-			return new FishyVectorDouble(Math.sin(rad), 0.0, - Math.cos(rad));
-		}
+		return UNIT_DOUBLE[ordinal()];
 	}
 	
+	/**
+	 * @return the unit vector for UP, DOWN and the cardinal directions, null for all others
+	 */
 	public FishyVectorInt toUnitIntVector() {
-		switch (this) {
-		case UP   : return FishyVectorInt.UNIT_Y;
-		case DOWN : return FishyVectorInt.UNIT_MINUS_Y;
-		case NORTH: return FishyVectorInt.UNIT_MINUS_Z;
-		case EAST : return FishyVectorInt.UNIT_X;
-		case SOUTH: return FishyVectorInt.UNIT_Z;
-		case WEST : return FishyVectorInt.UNIT_MINUS_X;
-		default: return null;
-		}
+		return UNIT_INT[ordinal()];
 	}
 	
+	/**
+	 * @param degrees
+	 * @return the angle in the range [0, 360)
+	 */
 	public static double normalizeDegrees(double degrees) {
-		double clamped = degrees % 360F;
-		clamped = (clamped >= 0F) ? clamped : (360F - clamped);
-		return clamped;
+		double clamped = degrees % 360.0;
+		clamped = (clamped >= 0.0) ? clamped : (clamped + 360.0);
+		// tiny negative values round up to 360
+		return (clamped < 360.0) ? clamped : 0.0;
 	}
 	
+	/**
+	 * @param degrees clockwise from north, any range
+	 * @return the nearest of the 16 compass directions, ERROR for NaN or infinite degrees
+	 */
 	public static FishyDirection nearestDirection(double degrees) {
-		// normalize to value range
-		double clamped = normalizeDegrees(degrees);
-		// clamped >= 0 => this is never null
-		Map.Entry<Double, FishyDirection> floorEntry = index.floorEntry(clamped);
-		// granularity is 22.5°
-		if (clamped - floorEntry.getKey() >= 11.25) {
-			// this will return null for clamped >= 337.5
-			Map.Entry<Double, FishyDirection> ceilingEntry = index.ceilingEntry(clamped);
-			return (ceilingEntry == null) ? NORTH : ceilingEntry.getValue();
+		if (Double.isNaN(degrees) || Double.isInfinite(degrees)) {
+			return ERROR;
+		}
+		// rounds half up, like the old floor/ceiling lookup
+		int point = (int) (normalizeDegrees(degrees) / DEGREES_PER_POINT + 0.5);
+		return VALUES[point & (COMPASS_POINTS - 1)];
+	}
+	
+	/**
+	 * Nearest compass direction of the horizontal vector (x, z),
+	 * computed with integer comparisons only.
+	 * 
+	 * @param x east component
+	 * @param z south component
+	 * @return the nearest of the 16 compass directions, ERROR if x and z are both 0
+	 */
+	public static FishyDirection nearestDirection(int x, int z) {
+		if (x == 0 && z == 0) {
+			return ERROR;
+		}
+		long east = Math.abs((long) x);
+		long north = Math.abs((long) z);
+		// compass points away from the north-south axis, 0 to 4
+		int fromAxis;
+		if (east <= north) {
+			if ((east << 31) < north * TAN_HALF_POINT) {
+				fromAxis = 0;
+			} else if ((east << 31) < north * TAN_ONE_AND_A_HALF_POINTS) {
+				fromAxis = 1;
+			} else {
+				fromAxis = 2;
+			}
+		} else {
+			if ((north << 31) < east * TAN_HALF_POINT) {
+				fromAxis = 4;
+			} else if ((north << 31) < east * TAN_ONE_AND_A_HALF_POINTS) {
+				fromAxis = 3;
+			} else {
+				fromAxis = 2;
+			}
+		}
+		int point;
+		if (z <= 0) {
+			point = (x >= 0) ? fromAxis : COMPASS_POINTS - fromAxis;
 		} else {
-			return floorEntry.getValue();
-		}		
+			point = (x >= 0) ? COMPASS_POINTS / 2 - fromAxis : COMPASS_POINTS / 2 + fromAxis;
+		}
+		return VALUES[point & (COMPASS_POINTS - 1)];
+	}
+	
+	private static double snapToZero(double value) {
+		return (Math.abs(value) < 1e-12) ? 0.0 : value;
 	}
 }
@@ -13,7 +13,7 @@ public class FishyLocationDouble extends FishyLocation {
 		}
 	}
 	
-	public FishyLocationDouble(FishyWorld world, FishyPoint point) {
+	public FishyLocationDouble(FishyWorld world, IFishyPoint point) {
 		this(world,
 				point.getIntX(),
 				point.getIntY(),
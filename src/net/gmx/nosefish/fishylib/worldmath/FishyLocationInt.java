@@ -5,12 +5,14 @@ import net.canarymod.api.world.position.Location;
 public class FishyLocationInt extends FishyLocation{
 	private final FishyWorld world;
 	private final FishyPointInt point;
+	private final int hash;
 	
 	public FishyLocationInt(Location canaryLocation) {
 		point = new FishyPointInt(canaryLocation.getBlockX(),
 				canaryLocation.getBlockY(),
 				canaryLocation.getBlockZ());
 		this.world = FishyWorld.factory(canaryLocation.getWorldName(), canaryLocation.getType());
+		this.hash = CoordinateHash.combine(point.hashCode(), world.hashCode());
 	}
 	
 	public FishyLocationInt(FishyWorld world, int x, int y, int z) {
@@ -20,9 +22,10 @@ public class FishyLocationInt extends FishyLocation{
 		} else {
 			throw new NullPointerException("Parameter world was null.");
 		}
+		this.hash = CoordinateHash.combine(point.hashCode(), world.hashCode());
 	}
 	
-	public FishyLocationInt(FishyWorld world, FishyPoint point) {
+	public FishyLocationInt(FishyWorld world, IFishyPoint point) {
 		this(world,
 				point.getIntX(),
 				point.getIntY(),
@@ -69,8 +72,24 @@ public class FishyLocationInt extends FishyLocation{
 		return this.point;
 	}
 	
-	public FishyLocationInt addIntVector(FishyVectorInt vector) {
-		return new FishyLocationInt(this.world, point.addIntVector(vector));
+	/**
+	 * @return the coordinates packed into a long, see <code>PackedPosition</code>
+	 */
+	public long toPackedPosition() {
+		return PackedPosition.pack(getIntX(), getIntY(), getIntZ());
+	}
+	
+	/**
+	 * Adds the vector truncated to block coordinates.
+	 * 
+	 * @param vector
+	 * @return the new location
+	 */
+	public FishyLocationInt addIntVector(FishyVector vector) {
+		return new FishyLocationInt(this.world,
+				this.getIntX() + vector.getIntX(),
+				this.getIntY() + vector.getIntY(),
+				this.getIntZ() + vector.getIntZ());
 	}
 	
 	@Override
@@ -94,6 +113,6 @@ public class FishyLocationInt extends FishyLocation{
 	
 	@Override
 	public int hashCode() {
-		return this.point.hashCode() * 89 + this.getWorld().hashCode();
+		return hash;
 	}
 }
@@ -3,21 +3,24 @@ package net.gmx.nosefish.fishylib.worldmath;
 public class FishyPointInt extends FishyPoint{
 	public static final FishyPointInt ORIGIN = new FishyPointInt(0, 0, 0);
 	final FishyVectorInt coordinates;
+	// same as the vector's, saves the indirection
+	private final int hash;
 	
 	public FishyPointInt(int x, int y, int z) {
-		this.coordinates = new FishyVectorInt(x, y, z);
+		this(new FishyVectorInt(x, y, z));
 	}
 	
 	public FishyPointInt(IFishyPoint point) {
-		this.coordinates = new FishyVectorInt(
+		this(new FishyVectorInt(
 				point.getIntX(),
 				point.getIntY(),
 				point.getIntZ()
-				);
+				));
 	}
 	
 	private FishyPointInt(FishyVectorInt vector) {
 		this.coordinates = vector;
+		this.hash = vector.hashCode();
 	}
 	
 	@Override
@@ -55,7 +58,7 @@ public class FishyPointInt extends FishyPoint{
 		return FishyPointDouble.ORIGIN.addVector(this.coordinates.add(vector));
 	}
 	
-	public FishyPointInt addIntVector(FishyVectorInt vector) {
+	public FishyPointInt addIntVector(FishyVector vector) {
 		return new FishyPointInt(this.coordinates.addInt(vector));
 	}
 	
@@ -67,7 +70,7 @@ public class FishyPointInt extends FishyPoint{
 		return coordinates.toDoubleArray();
 	}
 	
-	public FishyVectorInt getIntVectorTo(FishyPointInt point) {
+	public FishyVectorInt getIntVectorTo(IFishyPoint point) {
 		return new FishyVectorInt(
 				point.getIntX() - this.getIntX(),
 				point.getIntY() - this.getIntY(),
@@ -92,6 +95,6 @@ public class FishyPointInt extends FishyPoint{
 	
 	@Override
 	public int hashCode() {
-		return coordinates.hashCode();
+		return hash;
 	}
 }
@@ -12,17 +12,15 @@ public class FishyVectorInt extends FishyVector {
 	public static final FishyVectorInt UNIT_MINUS_Z = new FishyVectorInt( 0,  0, -1);
 	
 	final int[] vec;
+	private final int hash;
 	
 	public FishyVectorInt(int x, int y, int z) {
 		this.vec = new int[] {x,y,z};
+		this.hash = CoordinateHash.hash(x, y, z);
 	}
 	
 	public FishyVectorInt(FishyVector vec) {
-		this.vec = new int[] {
-				       vec.getIntX(),
-				       vec.getIntY(),
-				       vec.getIntZ()
-				       };
+		this(vec.getIntX(), vec.getIntY(), vec.getIntZ());
 	}
 	
     @Override
@@ -106,7 +104,7 @@ public class FishyVectorInt extends FishyVector {
 	
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(vec);
+		return hash;
 	}
 	
 	@Override
@@ -135,7 +133,12 @@ public class FishyVectorInt extends FishyVector {
 		return FishyDirection.ERROR;
 	}
 
+	/**
+	 * Ignores the y component.
+	 * 
+	 * @return the nearest of the 16 compass directions, ERROR if x and z are both 0
+	 */
 	public FishyDirection getNearestFishyDirection() {
-		return FishyDirection.nearestDirection(Math.toDegrees(getXZDirectionRadians()));
+		return FishyDirection.nearestDirection(getIntX(), getIntZ());
 	}
 }
@@ -1,15 +1,22 @@
 package net.gmx.nosefish.fishylib.worldmath;
 
-import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import net.canarymod.Canary;
+import net.canarymod.api.world.Chunk;
 import net.canarymod.api.world.DimensionType;
 import net.canarymod.api.world.World;
 import net.canarymod.api.world.WorldManager;
+import net.gmx.nosefish.fishylib.datastructures.ConcurrentLongSet;
 
 /**
  * Canary.getServer().getWorld(String) is slow, as are the
@@ -24,24 +31,34 @@ import net.canarymod.api.world.WorldManager;
  * Use the static <code>makeworldname</code> method (threadsafe) 
  * to generate a name from a world name and a <code>DimensionType</code>.
  * <p>
- * As usual, world access through the cache must be performed in the server thread.
- * <p>
- * Worlds are weakly referenced, but entries are only actively removed from the cache if
- * they are found to have been garbage collected in an accessor method call.
+ * While FishyLib is enabled, the loaded worlds are tracked by <code>WorldListener</code>
+ * in a copy-on-write registry, so looking up a loaded world or its status is a single
+ * volatile read and safe from any thread. As usual, the <code>World</code> objects
+ * themselves must only be used in the server thread.
  * 
  * @author Stefan Steinheimer (nosefish)
  *
  */
 public class FishyWorld {
-	private static final Map<String, WeakReference<World>> cache = new HashMap<>(3);
+	// copy-on-write: replaced as a whole on every change, read without locking;
+	// null while the worlds are not tracked
+	private static volatile Map<String, World> loadedWorlds = null;
 	private static final ConcurrentMap<String, FishyWorld> fishyWorldPool = new ConcurrentHashMap<>(3, 0.9F, 1);
+	// copy-on-write as well; World does not override equals, so identity is the natural key
+	private static volatile Map<World, FishyWorld> byCanaryWorld = new IdentityHashMap<>();
+	// copy-on-write, index = id
+	private static volatile FishyWorld[] byId = new FishyWorld[0];
 	
 	private final String worldName;
 	private final DimensionType dimensionType;
+	private final int id;
+	// packed chunk keys, see PackedPosition.packChunk; only filled while the worlds are tracked
+	private final ConcurrentLongSet loadedChunks = new ConcurrentLongSet(256);
 	
-	private FishyWorld(String name, DimensionType dim) {
+	private FishyWorld(String name, DimensionType dim, int id) {
 		this.worldName = name;
 		this.dimensionType = dim;
+		this.id = id;
 	}
 	
 	public World getWorldIfLoaded() {
@@ -60,9 +77,39 @@ public class FishyWorld {
 		return this.worldName;
 	}
 	
+	/**
+	 * Ids are handed out in order of creation, starting at 0, and stay the
+	 * same until the server stops. Use them to index arrays of per-world data.
+	 * 
+	 * @return the id of this world
+	 */
+	public int getId() {
+		return this.id;
+	}
+	
+	/**
+	 * Thread-safe.
+	 * 
+	 * @param id
+	 * @return the world with that id, null if there is none
+	 */
+	public static FishyWorld getById(int id) {
+		FishyWorld[] worlds = byId;
+		return (id >= 0 && id < worlds.length) ? worlds[id] : null;
+	}
+	
+	/**
+	 * Thread-safe.
+	 * 
+	 * @return the number of ids handed out so far; all ids are below this
+	 */
+	public static int getWorldCount() {
+		return byId.length;
+	}
+	
 	@Override
 	public int hashCode() {
-		return this.worldName.hashCode();
+		return this.id;
 	}
 	
 	@Override
@@ -70,28 +117,49 @@ public class FishyWorld {
 		return this.worldName;
 	}
 	
+	/**
+	 * There is only one instance per world name, so this is a reference comparison.
+	 */
 	@Override
 	public boolean equals(Object other) {
-		if (this == other) {
-			return true;
-		}
-		if (other instanceof FishyWorld) {
-			return ((FishyWorld) other).worldName.equals(this.worldName);
-		}
-		return false;
+		return this == other;
 	}
 	
+	/**
+	 * Does not allocate after the first call for a <code>World</code> instance.
+	 * 
+	 * @param world
+	 * @return the FishyWorld for the world
+	 */
 	public static FishyWorld factory(World world) {
-		return factory(world.getName(), world.getType());
+		FishyWorld toReturn = byCanaryWorld.get(world);
+		if (toReturn == null) {
+			toReturn = factory(world.getName(), world.getType());
+			synchronized (FishyWorld.class) {
+				Map<World, FishyWorld> copy = new IdentityHashMap<>(byCanaryWorld);
+				copy.put(world, toReturn);
+				byCanaryWorld = copy;
+			}
+		}
+		return toReturn;
 	}
 	
 	public static FishyWorld factory(String worldName, DimensionType dim) {
 		String name = makeWorldName(worldName, dim);
 		FishyWorld toReturn = fishyWorldPool.get(name);
 		if (toReturn == null) {
-			FishyWorld newWorld = new FishyWorld(name, dim);
-			FishyWorld oldWorld = fishyWorldPool.putIfAbsent(name, newWorld);
-			toReturn = oldWorld != null ? oldWorld : newWorld;
+			// locked so that ids stay dense
+			synchronized (FishyWorld.class) {
+				toReturn = fishyWorldPool.get(name);
+				if (toReturn == null) {
+					FishyWorld[] worlds = byId;
+					toReturn = new FishyWorld(name, dim, worlds.length);
+					FishyWorld[] newIds = Arrays.copyOf(worlds, worlds.length + 1);
+					newIds[toReturn.id] = toReturn;
+					byId = newIds;
+					fishyWorldPool.put(name, toReturn);
+				}
+			}
 		}
 		return toReturn;
 	}
@@ -99,80 +167,162 @@ public class FishyWorld {
 	
 	/**
 	 * Gets the world for the name. Does not load unloaded worlds.
+	 * <p>
+	 * Thread-safe while FishyLib is enabled. The result must still only be
+	 * used in the server thread.
 	 * 
 	 * @param name the world name
 	 * @return the matching <code>World</code>, or null if no world with that name is loaded
 	 */
 	public static World getLoadedWorld(String name) {
-		World returnWorld = null;
+		Map<String, World> registry = loadedWorlds;
+		if (registry != null) {
+			return registry.get(name);
+		}
+		// FishyLib not enabled, ask the server
 		WorldManager worldMan = Canary.getServer().getWorldManager();
 		if (worldMan.worldIsLoaded(name)) {
-			// it's loaded
-			WeakReference<World> wRef = cache.get(name);
-			if (wRef != null) {
-				// found in cache, we're probably done, just one more thing..
-				returnWorld = wRef.get();
-				if (returnWorld == null) {
-					// existed previously, but has been garbage collected
-					cache.remove(name);
-					returnWorld = Canary.getServer().getWorld(name);
-					if (returnWorld != null) {
-						// but it exists again (it's loaded, after all...)
-						cache.put(name, new WeakReference<>(returnWorld));
-					}
-				} 
-			} else {
-				// not in cache
-				returnWorld = Canary.getServer().getWorld(name);
-				if (returnWorld != null) {
-					// but it exists
-					cache.put(name, new WeakReference<>(returnWorld));
-				}
-			}
+			return Canary.getServer().getWorld(name);
 		}
-		return returnWorld;
+		return null;
 	}
 	
 	/**
 	 * Gets the world for the name. Loads the world if it
 	 * is not loaded, just like <code>Canary.getServer().getWorld(String)</code>.
+	 * <p>
+	 * Only call from the server thread.
 	 * 
 	 * @param name the world name
 	 * @return the matching <code>World</code>, or null if no world with that name exists
 	 */
 	public static World getWorld(String name) {
-		World returnWorld;
-		WeakReference<World> wRef = cache.get(name);
-		if (wRef != null) {
-			// found in cache, is the value still valid?
-			returnWorld = wRef.get();
-			if (returnWorld != null) {
-				// it's in there, but is it loaded?
-				WorldManager worldMan = Canary.getServer().getWorldManager();
-				if (! worldMan.worldIsLoaded(name)) {
-					// not loaded, let's change that
-					returnWorld = Canary.getServer().getWorld(name);
-				}
-			} else {
-				// existed previously, but has been garbage collected
-				cache.remove(name);
-				returnWorld = Canary.getServer().getWorld(name);
-				if (returnWorld != null) {
-					// but it exists again
-					cache.put(name, new WeakReference<>(returnWorld));
-				}
-			}
-		} else {
-			// not in cache
+		Map<String, World> registry = loadedWorlds;
+		World returnWorld = (registry != null) ? registry.get(name) : null;
+		if (returnWorld == null) {
 			returnWorld = Canary.getServer().getWorld(name);
-			if (returnWorld != null) {
-				// but it exists
-				cache.put(name, new WeakReference<>(returnWorld));
+			if (returnWorld != null && registry != null) {
+				// the load hook does this too, but may not have run yet
+				worldLoaded(returnWorld);
 			}
 		}
 		return returnWorld;
 	}
 	
+	/**
+	 * Thread-safe while FishyLib is enabled.
+	 * 
+	 * @param name the world name
+	 * @return <code>true</code> if a world with that name is loaded
+	 */
+	public static boolean isWorldLoaded(String name) {
+		Map<String, World> registry = loadedWorlds;
+		if (registry != null) {
+			return registry.containsKey(name);
+		}
+		return Canary.getServer().getWorldManager().worldIsLoaded(name);
+	}
+	
+	/**
+	 * Thread-safe while FishyLib is enabled.
+	 * 
+	 * @return <code>true</code> if this world is loaded
+	 */
+	public boolean isLoaded() {
+		return isWorldLoaded(this.worldName);
+	}
+	
+	/**
+	 * Only complete while FishyLib is enabled, empty otherwise.
+	 * 
+	 * @return a snapshot of the loaded worlds
+	 */
+	public static Set<FishyWorld> getLoadedWorlds() {
+		Set<FishyWorld> worlds = new HashSet<>();
+		Map<String, World> registry = loadedWorlds;
+		if (registry == null) {
+			return worlds;
+		}
+		for (World world : registry.values()) {
+			worlds.add(factory(world));
+		}
+		return worlds;
+	}
+	
+	// ---- registry updates, called by WorldListener in the server thread ----
+	
+	/**
+	 * Fills the registry and makes the lookups use it.
+	 * 
+	 * @param worlds the currently loaded worlds
+	 */
+	static synchronized void startTracking(Collection<World> worlds) {
+		Map<String, World> copy = new HashMap<>();
+		for (World world : worlds) {
+			copy.put(makeWorldName(world.getName(), world.getType()), world);
+			// chunks first, so that nobody sees a loaded world without chunks
+			factory(world).trackLoadedChunks(world);
+		}
+		loadedWorlds = Collections.unmodifiableMap(copy);
+	}
+	
+	/**
+	 * Empties the registry and makes the lookups ask the server again.
+	 */
+	static synchronized void stopTracking() {
+		loadedWorlds = null;
+		for (FishyWorld world : byId) {
+			world.loadedChunks.clear();
+		}
+	}
+	
+	static synchronized void worldLoaded(World world) {
+		String name = makeWorldName(world.getName(), world.getType());
+		if (loadedWorlds == null || loadedWorlds.get(name) == world) {
+			return;
+		}
+		factory(world).trackLoadedChunks(world);
+		Map<String, World> copy = new HashMap<>(loadedWorlds);
+		copy.put(name, world);
+		loadedWorlds = Collections.unmodifiableMap(copy);
+	}
+	
+	static synchronized void worldUnloaded(World world) {
+		if (byCanaryWorld.containsKey(world)) {
+			// don't keep unloaded worlds alive
+			Map<World, FishyWorld> identityCopy = new IdentityHashMap<>(byCanaryWorld);
+			identityCopy.remove(world);
+			byCanaryWorld = identityCopy;
+		}
+		String name = makeWorldName(world.getName(), world.getType());
+		if (loadedWorlds == null || ! loadedWorlds.containsKey(name)) {
+			return;
+		}
+		Map<String, World> copy = new HashMap<>(loadedWorlds);
+		copy.remove(name);
+		loadedWorlds = Collections.unmodifiableMap(copy);
+		factory(world).loadedChunks.clear();
+	}
+	
+	static void chunkLoaded(World world, int chunkX, int chunkZ) {
+		if (loadedWorlds != null) {
+			factory(world).loadedChunks.add(PackedPosition.packChunk(chunkX, chunkZ));
+		}
+	}
+	
+	static void chunkUnloaded(World world, int chunkX, int chunkZ) {
+		if (loadedWorlds != null) {
+			factory(world).loadedChunks.remove(PackedPosition.packChunk(chunkX, chunkZ));
+		}
+	}
+	
+	private void trackLoadedChunks(World world) {
+		loadedChunks.clear();
+		for (Chunk chunk : world.getLoadedChunks()) {
+			loadedChunks.add(PackedPosition.packChunk(chunk.getX(), chunk.getZ()));
+		}
+	}
+	
 	/**
 	 * Generates a world name to use with the <code>WorldNameCache</code>
 	 * from a world name string and a <code>DimensionType</code>.
@@ -191,18 +341,75 @@ public class FishyWorld {
 	}
 
 	/**
-	 * <b>Not thread-safe! Only call from server thread, or be prepared for CMEs</b>
+	 * Lock-free and thread-safe while FishyLib is enabled.
+	 * <b>Otherwise not thread-safe! Only call from server thread, or be prepared for CMEs</b>
 	 * 
 	 * @param loc
-	 * @return
+	 * @return <code>true</code> if the chunk containing the block is loaded
+	 */
+	public static boolean isBlockLoaded(IFishyLocation loc) {
+		return loc.getWorld().isChunkLoaded(
+				FishyChunk.worldToChunk(loc.getIntX()),
+				FishyChunk.worldToChunk(loc.getIntZ()));
+	}
+	
+	/**
+	 * Same thread-safety as <code>isBlockLoaded</code>.
+	 * 
+	 * @param chunk
+	 * @return <code>true</code> if the chunk is loaded
+	 */
+	public static boolean isChunkLoaded(FishyChunk chunk) {
+		return chunk.getWorld().isChunkLoaded(chunk.getChunkX(), chunk.getChunkZ());
+	}
+	
+	/**
+	 * Checks all chunks touched by the cuboid at once, e.g. before scanning
+	 * the blocks in it. Same thread-safety as <code>isBlockLoaded</code>.
+	 * 
+	 * @param cuboid
+	 * @return <code>true</code> if all chunks the cuboid touches are loaded
 	 */
-	public static boolean isBlockLoaded(FishyLocationInt loc) {
-		World world = loc.getWorld().getWorldIfLoaded();
-		if (world == null) {
-			return false;
+	public static boolean isCuboidLoaded(FishyCuboidInt cuboid) {
+		FishyPointInt low = cuboid.getLowPoint();
+		FishyPointInt high = cuboid.getHighPoint();
+		return cuboid.getWorld().areChunksLoaded(
+				FishyChunk.worldToChunk(low.getIntX()), FishyChunk.worldToChunk(low.getIntZ()),
+				FishyChunk.worldToChunk(high.getIntX()), FishyChunk.worldToChunk(high.getIntZ()));
+	}
+	
+	/**
+	 * Same thread-safety as <code>isBlockLoaded</code>.
+	 * 
+	 * @param chunkX
+	 * @param chunkZ
+	 * @return <code>true</code> if the chunk in this world is loaded
+	 */
+	public boolean isChunkLoaded(int chunkX, int chunkZ) {
+		if (loadedWorlds != null) {
+			return loadedChunks.contains(PackedPosition.packChunk(chunkX, chunkZ));
 		}
-		if (! world.isChunkLoaded(loc.getIntX(), loc.getIntY(), loc.getIntZ())) {
-			return false;
+		World world = getWorldIfLoaded();
+		return world != null
+				&& world.isChunkLoaded(FishyChunk.chunkToWorld(chunkX), 0, FishyChunk.chunkToWorld(chunkZ));
+	}
+	
+	/**
+	 * Checks a rectangle of chunks. Same thread-safety as <code>isBlockLoaded</code>.
+	 * 
+	 * @param minChunkX
+	 * @param minChunkZ
+	 * @param maxChunkX
+	 * @param maxChunkZ
+	 * @return <code>true</code> if all chunks from min to max, inclusive, are loaded
+	 */
+	public boolean areChunksLoaded(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+		for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+			for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+				if (! isChunkLoaded(chunkX, chunkZ)) {
+					return false;
+				}
+			}
 		}
 		return true;
 	}
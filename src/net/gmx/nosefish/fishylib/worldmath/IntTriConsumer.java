@@ -0,0 +1,12 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+/**
+ * Callback taking block coordinates, so that loops over blocks
+ * don't need to allocate a location per block.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public interface IntTriConsumer {
+	public void accept(int x, int y, int z);
+}
@@ -0,0 +1,311 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+import java.util.Arrays;
+
+/**
+ * A growable batch of locations stored as parallel primitive arrays
+ * (structure of arrays) for filtering thousands of positions per tick.
+ * <p>
+ * The kernels are plain counted loops over the arrays, with no calls and
+ * no objects inside the loop. <code>distancesSquared</code> has no
+ * branches at all, so C2 can auto-vectorize it; the filters only branch
+ * to write the matching index.
+ * <p>
+ * Worlds are stored as their ids (see <code>FishyWorld.getId</code>), so that
+ * comparing worlds is an int comparison.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class LocationBatch {
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private double[] x;
+	private double[] y;
+	private double[] z;
+	private int[] worldIds;
+	private int size = 0;
+
+	public LocationBatch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LocationBatch(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 1);
+		x = new double[capacity];
+		y = new double[capacity];
+		z = new double[capacity];
+		worldIds = new int[capacity];
+	}
+
+	/**
+	 * @param location
+	 * @return the index of the added location
+	 */
+	public int add(IFishyLocation location) {
+		return add(location.getWorld(),
+				location.getDoubleX(),
+				location.getDoubleY(),
+				location.getDoubleZ());
+	}
+
+	/**
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the index of the added location
+	 */
+	public int add(FishyWorld world, double x, double y, double z) {
+		if (world == null) {
+			throw new NullPointerException("Parameter world was null.");
+		}
+		if (size == this.x.length) {
+			int capacity = size * 2;
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+			this.z = Arrays.copyOf(this.z, capacity);
+			this.worldIds = Arrays.copyOf(this.worldIds, capacity);
+		}
+		this.x[size] = x;
+		this.y[size] = y;
+		this.z[size] = z;
+		this.worldIds[size] = world.getId();
+		return size++;
+	}
+
+	/**
+	 * Moves a location, keeping its world.
+	 *
+	 * @param index
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	public void set(int index, double x, double y, double z) {
+		checkIndex(index);
+		this.x[index] = x;
+		this.y[index] = y;
+		this.z[index] = z;
+	}
+
+	/**
+	 * Removes all locations. Keeps the arrays for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double getX(int index) {
+		checkIndex(index);
+		return x[index];
+	}
+
+	public double getY(int index) {
+		checkIndex(index);
+		return y[index];
+	}
+
+	public double getZ(int index) {
+		checkIndex(index);
+		return z[index];
+	}
+
+	public FishyWorld getWorld(int index) {
+		checkIndex(index);
+		return FishyWorld.getById(worldIds[index]);
+	}
+
+	/**
+	 * @param index
+	 * @return a new location object for the entry
+	 */
+	public FishyLocationDouble toLocation(int index) {
+		checkIndex(index);
+		return new FishyLocationDouble(FishyWorld.getById(worldIds[index]), x[index], y[index], z[index]);
+	}
+
+	/**
+	 * Computes the squared distance of every location to a point,
+	 * ignoring worlds. Branch-free, vectorizable.
+	 *
+	 * @param centre
+	 * @param out receives the squared distances, at least <code>size()</code> long
+	 */
+	public void distancesSquared(IFishyPoint centre, double[] out) {
+		checkOut(out.length);
+		double cx = centre.getDoubleX();
+		double cy = centre.getDoubleY();
+		double cz = centre.getDoubleZ();
+		double[] x = this.x;
+		double[] y = this.y;
+		double[] z = this.z;
+		for (int i = 0; i < size; i++) {
+			double dx = x[i] - cx;
+			double dy = y[i] - cy;
+			double dz = z[i] - cz;
+			out[i] = dx * dx + dy * dy + dz * dz;
+		}
+	}
+
+	/**
+	 * Finds all locations in the centre's world within <code>radius</code>
+	 * of the centre, border included.
+	 *
+	 * @param centre
+	 * @param radius
+	 * @param out receives the indices of the matching locations in ascending order,
+	 *        at least <code>size()</code> long
+	 * @return the number of matching locations
+	 */
+	public int filterWithinDistance(IFishyLocation centre, double radius, int[] out) {
+		checkOut(out.length);
+		int world = centre.getWorld().getId();
+		double cx = centre.getDoubleX();
+		double cy = centre.getDoubleY();
+		double cz = centre.getDoubleZ();
+		double limit = radius * radius;
+		double[] x = this.x;
+		double[] y = this.y;
+		double[] z = this.z;
+		int[] worldIds = this.worldIds;
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			double dx = x[i] - cx;
+			double dy = y[i] - cy;
+			double dz = z[i] - cz;
+			if ((dx * dx + dy * dy + dz * dz <= limit) & (worldIds[i] == world)) {
+				out[count++] = i;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds all locations inside the blocks of a cuboid. A location is
+	 * inside a block if its coordinates are within [block, block + 1).
+	 *
+	 * @param cuboid
+	 * @param out receives the indices of the matching locations in ascending order,
+	 *        at least <code>size()</code> long
+	 * @return the number of matching locations
+	 */
+	public int filterInCuboid(FishyCuboidInt cuboid, int[] out) {
+		checkOut(out.length);
+		int world = cuboid.getWorld().getId();
+		FishyPointInt low = cuboid.getLowPoint();
+		FishyPointInt high = cuboid.getHighPoint();
+		return filterInBox(world,
+				low.getIntX(), low.getIntY(), low.getIntZ(),
+				high.getIntX() + 1.0, high.getIntY() + 1.0, high.getIntZ() + 1.0,
+				out);
+	}
+
+	/**
+	 * Finds all locations inside an axis-aligned box.
+	 *
+	 * @param world
+	 * @param minX
+	 * @param minY
+	 * @param minZ lower bounds, inclusive
+	 * @param maxX
+	 * @param maxY
+	 * @param maxZ upper bounds, exclusive
+	 * @param out receives the indices of the matching locations in ascending order,
+	 *        at least <code>size()</code> long
+	 * @return the number of matching locations
+	 */
+	public int filterInBox(FishyWorld world,
+			double minX, double minY, double minZ,
+			double maxX, double maxY, double maxZ,
+			int[] out) {
+		checkOut(out.length);
+		return filterInBox(world.getId(), minX, minY, minZ, maxX, maxY, maxZ, out);
+	}
+
+	/**
+	 * For every location, finds the nearest centre in the same world.
+	 * Centres are processed one at a time, so the inner loop runs
+	 * over the arrays only.
+	 *
+	 * @param centres
+	 * @param nearest receives the index into <code>centres</code> of the nearest
+	 *        centre, or -1 if no centre is in the location's world
+	 * @param distanceSquared receives the squared distance to that centre,
+	 *        or positive infinity; may be null
+	 */
+	public void nearestCentres(IFishyLocation[] centres, int[] nearest, double[] distanceSquared) {
+		checkOut(nearest.length);
+		double[] best = distanceSquared;
+		if (best == null) {
+			best = new double[size];
+		} else {
+			checkOut(best.length);
+		}
+		Arrays.fill(nearest, 0, size, -1);
+		Arrays.fill(best, 0, size, Double.POSITIVE_INFINITY);
+		double[] x = this.x;
+		double[] y = this.y;
+		double[] z = this.z;
+		int[] worldIds = this.worldIds;
+		for (int c = 0; c < centres.length; c++) {
+			int world = centres[c].getWorld().getId();
+			double cx = centres[c].getDoubleX();
+			double cy = centres[c].getDoubleY();
+			double cz = centres[c].getDoubleZ();
+			for (int i = 0; i < size; i++) {
+				double dx = x[i] - cx;
+				double dy = y[i] - cy;
+				double dz = z[i] - cz;
+				double d = dx * dx + dy * dy + dz * dz;
+				// ties go to the first centre
+				if ((d < best[i]) & (worldIds[i] == world)) {
+					best[i] = d;
+					nearest[i] = c;
+				}
+			}
+		}
+	}
+
+	private int filterInBox(int world,
+			double minX, double minY, double minZ,
+			double maxX, double maxY, double maxZ,
+			int[] out) {
+		double[] x = this.x;
+		double[] y = this.y;
+		double[] z = this.z;
+		int[] worldIds = this.worldIds;
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			double px = x[i];
+			double py = y[i];
+			double pz = z[i];
+			// non-short-circuit &: no branches until the store
+			if ((px >= minX) & (px < maxX)
+					& (py >= minY) & (py < maxY)
+					& (pz >= minZ) & (pz < maxZ)
+					& (worldIds[i] == world)) {
+				out[count++] = i;
+			}
+		}
+		return count;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+
+	private void checkOut(int length) {
+		if (length < size) {
+			throw new IllegalArgumentException("Output array too short: " + length + " < " + size);
+		}
+	}
+}
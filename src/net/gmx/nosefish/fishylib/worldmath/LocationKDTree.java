@@ -0,0 +1,512 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * KD-tree over the locations of one world, for "nearest station",
+ * "nearest chest" and "closest N players" queries in logarithmic time.
+ * <p>
+ * The tree is static: build it with <code>build</code> and <code>rebuild</code>
+ * it when the locations change. Rebuilding is O(n log n) and reuses the
+ * arrays, so a snapshot of moving things can be rebuilt once per tick.
+ * The coordinates are stored in one flat array, with the median of each
+ * subtree in the middle of its range; there are no node objects.
+ * <p>
+ * Queries write into a reusable <code>Neighbours</code> buffer instead of
+ * returning new lists. Distances are measured between
+ * <code>getDoubleX/Y/Z</code> coordinates, which is the block corner
+ * for block locations.
+ * <p>
+ * Not thread-safe. Safe for concurrent queries if nobody rebuilds and every
+ * thread uses its own buffer.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ * @param <L> the location type
+ */
+public class LocationKDTree<L extends IFishyLocation> {
+
+	/**
+	 * Reusable query result: locations and their squared distances to
+	 * the query point.
+	 *
+	 * @param <L> the location type
+	 */
+	public static final class Neighbours<L> {
+		private Object[] items;
+		private double[] distances;
+		private int size = 0;
+		// maximum size while collecting the k nearest, 0 for radius queries
+		private int limit = 0;
+
+		public Neighbours() {
+			this(16);
+		}
+
+		public Neighbours(int initialCapacity) {
+			int capacity = Math.max(initialCapacity, 1);
+			items = new Object[capacity];
+			distances = new double[capacity];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		/**
+		 * @param index
+		 * @return the location
+		 */
+		@SuppressWarnings("unchecked")
+		public L get(int index) {
+			checkIndex(index);
+			return (L) items[index];
+		}
+
+		/**
+		 * @param index
+		 * @return the squared distance of the location to the query point
+		 */
+		public double getDistanceSquared(int index) {
+			checkIndex(index);
+			return distances[index];
+		}
+
+		/**
+		 * Empties the buffer and releases the references to the locations.
+		 */
+		public void clear() {
+			Arrays.fill(items, 0, size, null);
+			size = 0;
+		}
+
+		private void reset(int limit, int capacity) {
+			clear();
+			this.limit = limit;
+			if (capacity > items.length) {
+				items = new Object[capacity];
+				distances = new double[capacity];
+			}
+		}
+
+		/**
+		 * @return the distance a location must beat to get in
+		 */
+		private double bound() {
+			return (size < limit) ? Double.POSITIVE_INFINITY : distances[0];
+		}
+
+		private void add(Object item, double distance) {
+			if (size == items.length) {
+				items = Arrays.copyOf(items, size * 2);
+				distances = Arrays.copyOf(distances, size * 2);
+			}
+			items[size] = item;
+			distances[size] = distance;
+			size++;
+		}
+
+		/**
+		 * Offers a candidate to the max-heap of the k nearest.
+		 */
+		private void offer(Object item, double distance) {
+			if (size < limit) {
+				items[size] = item;
+				distances[size] = distance;
+				siftUp(size++);
+			} else if (distance < distances[0]) {
+				items[0] = item;
+				distances[0] = distance;
+				siftDown(0, size);
+			}
+		}
+
+		/**
+		 * Turns the max-heap into an array sorted by ascending distance.
+		 */
+		private void sortHeap() {
+			for (int end = size - 1; end > 0; end--) {
+				swap(0, end);
+				siftDown(0, end);
+			}
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (distances[parent] >= distances[i]) {
+					return;
+				}
+				swap(parent, i);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i, int end) {
+			while (true) {
+				int largest = i;
+				int left = 2 * i + 1;
+				int right = left + 1;
+				if (left < end && distances[left] > distances[largest]) {
+					largest = left;
+				}
+				if (right < end && distances[right] > distances[largest]) {
+					largest = right;
+				}
+				if (largest == i) {
+					return;
+				}
+				swap(i, largest);
+				i = largest;
+			}
+		}
+
+		private void swap(int a, int b) {
+			Object item = items[a];
+			items[a] = items[b];
+			items[b] = item;
+			double distance = distances[a];
+			distances[a] = distances[b];
+			distances[b] = distance;
+		}
+
+		private void checkIndex(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+			}
+		}
+	}
+
+	private final FishyWorld world;
+	// x, y, z of slot i at 3 * i
+	private double[] coordinates = new double[0];
+	private Object[] items = new Object[0];
+	// split axis (0, 1, 2) of the subtree whose median is in slot i
+	private byte[] axes = new byte[0];
+	private int size = 0;
+
+	/**
+	 * Creates an empty tree.
+	 *
+	 * @param world the world of the locations
+	 */
+	public LocationKDTree(FishyWorld world) {
+		if (world == null) {
+			throw new NullPointerException("Parameter world was null.");
+		}
+		this.world = world;
+	}
+
+	/**
+	 * Builds a tree.
+	 *
+	 * @param world the world of the locations
+	 * @param locations the locations; those in other worlds are skipped
+	 * @return the new tree
+	 */
+	public static <L extends IFishyLocation> LocationKDTree<L> build(FishyWorld world, Collection<? extends L> locations) {
+		LocationKDTree<L> tree = new LocationKDTree<>(world);
+		tree.rebuild(locations);
+		return tree;
+	}
+
+	/**
+	 * Replaces the contents of the tree, reusing its arrays.
+	 *
+	 * @param locations the locations; those in other worlds are skipped
+	 */
+	public void rebuild(Collection<? extends L> locations) {
+		int capacity = locations.size();
+		if (capacity > items.length) {
+			coordinates = new double[3 * capacity];
+			items = new Object[capacity];
+			axes = new byte[capacity];
+		} else {
+			Arrays.fill(items, 0, size, null);
+		}
+		size = 0;
+		for (L location : locations) {
+			if (! world.equals(location.getWorld())) {
+				continue;
+			}
+			coordinates[3 * size]     = location.getDoubleX();
+			coordinates[3 * size + 1] = location.getDoubleY();
+			coordinates[3 * size + 2] = location.getDoubleZ();
+			items[size] = location;
+			size++;
+		}
+		buildSubtree(0, size);
+	}
+
+	public FishyWorld getWorld() {
+		return world;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(items, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * @param location
+	 * @return the nearest location in the tree, null if the tree is empty
+	 *         or the location is in another world
+	 */
+	public L nearest(IFishyLocation location) {
+		Neighbours<L> result = new Neighbours<>(1);
+		return (nearest(location, 1, result) == 0) ? null : result.get(0);
+	}
+
+	/**
+	 * Finds the k nearest locations. Locations in other worlds have no neighbours.
+	 *
+	 * @param location the query point
+	 * @param k how many neighbours to find
+	 * @param result receives the neighbours, nearest first
+	 * @return the number of neighbours found, at most k
+	 */
+	public int nearest(IFishyLocation location, int k, Neighbours<L> result) {
+		if (! world.equals(location.getWorld())) {
+			result.reset(0, 0);
+			return 0;
+		}
+		return nearest(location.getDoubleX(), location.getDoubleY(), location.getDoubleZ(), k, result);
+	}
+
+	/**
+	 * Finds the k nearest locations.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param k how many neighbours to find
+	 * @param result receives the neighbours, nearest first
+	 * @return the number of neighbours found, at most k
+	 */
+	public int nearest(double x, double y, double z, int k, Neighbours<L> result) {
+		if (k < 0) {
+			throw new IllegalArgumentException("Negative k: " + k);
+		}
+		result.reset(k, Math.min(k, size));
+		if (k > 0) {
+			searchNearest(0, size, x, y, z, result);
+		}
+		result.sortHeap();
+		return result.size();
+	}
+
+	/**
+	 * Finds all locations within a radius, border included. Locations in other
+	 * worlds have no neighbours.
+	 *
+	 * @param location the query point
+	 * @param radius
+	 * @param result receives the neighbours, in no particular order
+	 * @return the number of neighbours found
+	 */
+	public int withinRadius(IFishyLocation location, double radius, Neighbours<L> result) {
+		if (! world.equals(location.getWorld())) {
+			result.reset(0, 0);
+			return 0;
+		}
+		return withinRadius(location.getDoubleX(), location.getDoubleY(), location.getDoubleZ(), radius, result);
+	}
+
+	/**
+	 * Finds all locations within a radius, border included.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param radius
+	 * @param result receives the neighbours, in no particular order
+	 * @return the number of neighbours found
+	 */
+	public int withinRadius(double x, double y, double z, double radius, Neighbours<L> result) {
+		result.reset(0, 0);
+		if (radius >= 0.0) {
+			searchRadius(0, size, x, y, z, radius * radius, result);
+		}
+		return result.size();
+	}
+
+	// ---- internals ----
+
+	private void searchNearest(int from, int to, double x, double y, double z, Neighbours<L> result) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			double distance = distanceSquared(mid, x, y, z);
+			if (distance < result.bound()) {
+				result.offer(items[mid], distance);
+			}
+			int axis = axes[mid];
+			double diff = coordinate(axis, x, y, z) - coordinates[3 * mid + axis];
+			// search the near side first, the far side only if the splitting plane is close enough
+			if (diff < 0.0) {
+				searchNearest(from, mid, x, y, z, result);
+				if (diff * diff >= result.bound()) {
+					return;
+				}
+				from = mid + 1;
+			} else {
+				searchNearest(mid + 1, to, x, y, z, result);
+				if (diff * diff >= result.bound()) {
+					return;
+				}
+				to = mid;
+			}
+		}
+	}
+
+	private void searchRadius(int from, int to, double x, double y, double z, double limit, Neighbours<L> result) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (distanceSquared(mid, x, y, z) <= limit) {
+				result.add(items[mid], distanceSquared(mid, x, y, z));
+			}
+			int axis = axes[mid];
+			double diff = coordinate(axis, x, y, z) - coordinates[3 * mid + axis];
+			if (diff * diff <= limit) {
+				searchRadius(from, mid, x, y, z, limit, result);
+				from = mid + 1;
+			} else if (diff < 0.0) {
+				to = mid;
+			} else {
+				from = mid + 1;
+			}
+		}
+	}
+
+	private double distanceSquared(int slot, double x, double y, double z) {
+		double dx = coordinates[3 * slot] - x;
+		double dy = coordinates[3 * slot + 1] - y;
+		double dz = coordinates[3 * slot + 2] - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private static double coordinate(int axis, double x, double y, double z) {
+		switch (axis) {
+		case 0: return x;
+		case 1: return y;
+		default: return z;
+		}
+	}
+
+	/**
+	 * Puts the median along the widest axis of [from, to) in the middle,
+	 * smaller or equal values before it, larger or equal after it,
+	 * then does the same for both halves.
+	 */
+	private void buildSubtree(int from, int to) {
+		while (to - from > 1) {
+			int axis = widestAxis(from, to);
+			int mid = (from + to) >>> 1;
+			select(from, to - 1, mid, axis);
+			axes[mid] = (byte) axis;
+			buildSubtree(from, mid);
+			from = mid + 1;
+		}
+		if (to - from == 1) {
+			axes[from] = 0;
+		}
+	}
+
+	private int widestAxis(int from, int to) {
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		double minZ = Double.POSITIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			double x = coordinates[3 * i];
+			double y = coordinates[3 * i + 1];
+			double z = coordinates[3 * i + 2];
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+			minZ = Math.min(minZ, z);
+			maxZ = Math.max(maxZ, z);
+		}
+		double spreadX = maxX - minX;
+		double spreadY = maxY - minY;
+		double spreadZ = maxZ - minZ;
+		if (spreadX >= spreadY && spreadX >= spreadZ) {
+			return 0;
+		}
+		return (spreadY >= spreadZ) ? 1 : 2;
+	}
+
+	/**
+	 * Quickselect: moves the element of rank <code>k</code> along <code>axis</code>
+	 * within [left, right] to slot k.
+	 */
+	private void select(int left, int right, int k, int axis) {
+		while (right > left) {
+			// median of three as pivot, moved to the left end
+			int middle = (left + right) >>> 1;
+			if (value(middle, axis) < value(left, axis)) {
+				swap(middle, left);
+			}
+			if (value(right, axis) < value(left, axis)) {
+				swap(right, left);
+			}
+			if (value(right, axis) < value(middle, axis)) {
+				swap(right, middle);
+			}
+			swap(left, middle);
+			double pivot = value(left, axis);
+			int i = left;
+			int j = right + 1;
+			while (true) {
+				do {
+					i++;
+				} while (i <= right && value(i, axis) < pivot);
+				do {
+					j--;
+				} while (value(j, axis) > pivot);
+				if (i >= j) {
+					break;
+				}
+				swap(i, j);
+			}
+			swap(left, j);
+			if (j == k) {
+				return;
+			} else if (j < k) {
+				left = j + 1;
+			} else {
+				right = j - 1;
+			}
+		}
+	}
+
+	private double value(int slot, int axis) {
+		return coordinates[3 * slot + axis];
+	}
+
+	private void swap(int a, int b) {
+		if (a == b) {
+			return;
+		}
+		for (int i = 0; i < 3; i++) {
+			double c = coordinates[3 * a + i];
+			coordinates[3 * a + i] = coordinates[3 * b + i];
+			coordinates[3 * b + i] = c;
+		}
+		Object item = items[a];
+		items[a] = items[b];
+		items[b] = item;
+	}
+}
@@ -0,0 +1,188 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+/**
+ * Mutable block location for use as a scratch variable in tight loops.
+ * Can be passed to everything that takes an <code>IFishyPoint</code>
+ * or <code>IFishyLocation</code>. The in-place methods modify and
+ * return <code>this</code>.
+ * <p>
+ * Not thread-safe. Do not use as a key in hash-based collections,
+ * <code>freeze</code> it instead.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class MutableLocationInt implements IFishyLocation {
+	private FishyWorld world;
+	private int x;
+	private int y;
+	private int z;
+
+	public MutableLocationInt(FishyWorld world, int x, int y, int z) {
+		set(world, x, y, z);
+	}
+
+	public MutableLocationInt(IFishyLocation location) {
+		set(location);
+	}
+
+	@Override
+	public int getIntX() {
+		return x;
+	}
+
+	@Override
+	public int getIntY() {
+		return y;
+	}
+
+	@Override
+	public int getIntZ() {
+		return z;
+	}
+
+	@Override
+	public double getDoubleX() {
+		return (double) x;
+	}
+
+	@Override
+	public double getDoubleY() {
+		return (double) y;
+	}
+
+	@Override
+	public double getDoubleZ() {
+		return (double) z;
+	}
+
+	@Override
+	public FishyWorld getWorld() {
+		return world;
+	}
+
+	public MutableLocationInt set(FishyWorld world, int x, int y, int z) {
+		if (world == null) {
+			throw new NullPointerException("Parameter world was null.");
+		}
+		this.world = world;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+
+	/**
+	 * Copies the other location, truncated to block coordinates.
+	 *
+	 * @param location
+	 * @return this
+	 */
+	public MutableLocationInt set(IFishyLocation location) {
+		return set(location.getWorld(),
+				location.getIntX(),
+				location.getIntY(),
+				location.getIntZ());
+	}
+
+	/**
+	 * Sets the coordinates, keeps the world.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return this
+	 */
+	public MutableLocationInt setPoint(int x, int y, int z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+
+	/**
+	 * Sets the coordinates to <code>origin + (dx, dy, dz)</code> and the world
+	 * to the world of <code>origin</code>. Handy for scanning around a fixed location.
+	 *
+	 * @param origin
+	 * @param dx
+	 * @param dy
+	 * @param dz
+	 * @return this
+	 */
+	public MutableLocationInt setOffset(IFishyLocation origin, int dx, int dy, int dz) {
+		return set(origin.getWorld(),
+				origin.getIntX() + dx,
+				origin.getIntY() + dy,
+				origin.getIntZ() + dz);
+	}
+
+	public MutableLocationInt addInPlace(int dx, int dy, int dz) {
+		this.x += dx;
+		this.y += dy;
+		this.z += dz;
+		return this;
+	}
+
+	/**
+	 * Adds the vector truncated to block coordinates.
+	 *
+	 * @param vector
+	 * @return this
+	 */
+	public MutableLocationInt addInPlace(FishyVector vector) {
+		return addInPlace(vector.getIntX(), vector.getIntY(), vector.getIntZ());
+	}
+
+	/**
+	 * @return an immutable copy of the current value
+	 */
+	public FishyLocationInt freeze() {
+		return new FishyLocationInt(world, x, y, z);
+	}
+
+	/**
+	 * @return the coordinates packed into a long, see <code>PackedPosition</code>
+	 */
+	public long toPackedPosition() {
+		return PackedPosition.pack(x, y, z);
+	}
+
+	@Override
+	public boolean equalsPoint(IFishyPoint other) {
+		if (this == other) {
+			return true;
+		}
+		if (other == null) {
+			return false;
+		}
+		return (this.getDoubleX() == other.getDoubleX()
+		     && this.getDoubleY() == other.getDoubleY()
+		     && this.getDoubleZ() == other.getDoubleZ()
+		);
+	}
+
+	@Override
+	public boolean equalsLocation(IFishyLocation location) {
+		if (this == location) {
+			return true;
+		}
+		if (! this.equalsPoint(location)) {
+			return false;
+		}
+		return location.getWorld().equals(this.world);
+	}
+
+	@Override
+	public String toString() {
+		return "["
+				+ world.toString()
+				+ ": <"
+				+ x
+				+ ", "
+				+ y
+				+ ", "
+				+ z
+				+ ">]";
+	}
+}
@@ -0,0 +1,136 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+/**
+ * Mutable int vector for use as a scratch variable in tight loops.
+ * The in-place methods modify and return <code>this</code>, so they
+ * can be chained without allocating anything.
+ * <p>
+ * Not thread-safe. Do not use as a key in hash-based collections,
+ * <code>freeze</code> it instead.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class MutableVectorInt extends FishyVector {
+	private int x;
+	private int y;
+	private int z;
+
+	public MutableVectorInt() {
+		this(0, 0, 0);
+	}
+
+	public MutableVectorInt(int x, int y, int z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	public MutableVectorInt(FishyVector vec) {
+		this(vec.getIntX(), vec.getIntY(), vec.getIntZ());
+	}
+
+	@Override
+	public int getIntX() {
+		return x;
+	}
+
+	@Override
+	public int getIntY() {
+		return y;
+	}
+
+	@Override
+	public int getIntZ() {
+		return z;
+	}
+
+	@Override
+	public double getDoubleX() {
+		return (double) x;
+	}
+
+	@Override
+	public double getDoubleY() {
+		return (double) y;
+	}
+
+	@Override
+	public double getDoubleZ() {
+		return (double) z;
+	}
+
+	public MutableVectorInt set(int x, int y, int z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+
+	/**
+	 * Copies the other vector, truncated to block coordinates.
+	 *
+	 * @param other
+	 * @return this
+	 */
+	public MutableVectorInt set(FishyVector other) {
+		return set(other.getIntX(), other.getIntY(), other.getIntZ());
+	}
+
+	public MutableVectorInt addInPlace(int dx, int dy, int dz) {
+		this.x += dx;
+		this.y += dy;
+		this.z += dz;
+		return this;
+	}
+
+	/**
+	 * Adds the other vector as an int vector truncated to
+	 * block coordinates.
+	 *
+	 * @param other the vector to add
+	 * @return this
+	 */
+	public MutableVectorInt addInPlace(FishyVector other) {
+		return addInPlace(other.getIntX(), other.getIntY(), other.getIntZ());
+	}
+
+	public MutableVectorInt scaleInPlace(int scalar) {
+		this.x *= scalar;
+		this.y *= scalar;
+		this.z *= scalar;
+		return this;
+	}
+
+	public MutableVectorInt negateInPlace() {
+		return scaleInPlace(-1);
+	}
+
+	/**
+	 * @return an immutable copy of the current value
+	 */
+	public FishyVectorInt freeze() {
+		return new FishyVectorInt(x, y, z);
+	}
+
+	@Override
+	public FishyVectorDouble add(FishyVector other) {
+		return new FishyVectorDouble(
+				   this.getDoubleX() + other.getDoubleX(),
+				   this.getDoubleY() + other.getDoubleY(),
+				   this.getDoubleZ() + other.getDoubleZ()
+				   );
+	}
+
+	@Override
+	public FishyVectorDouble scalarMult(double scalar) {
+		return new FishyVectorDouble(getDoubleX() * scalar,  getDoubleY() * scalar, getDoubleZ() * scalar);
+	}
+
+	@Override
+	public double lengthSquared() {
+		return    x * x
+				+ y * y
+				+ z * z;
+	}
+}
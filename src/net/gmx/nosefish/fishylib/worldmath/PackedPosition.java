@@ -0,0 +1,244 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+/**
+ * Packs block coordinates into a single <code>long</code>, so that
+ * positions can be stored and passed around as primitives instead of
+ * <code>FishyLocationInt</code> objects.
+ * <p>
+ * Layout, from the most significant bit: 26 bits x, 26 bits z, 12 bits y.
+ * All three are stored as two's complement, so the valid ranges are
+ * <code>-33554432 &lt;= x, z &lt;= 33554431</code> and
+ * <code>-2048 &lt;= y &lt;= 2047</code>. That covers the whole Minecraft
+ * world. Coordinates outside these ranges are silently truncated, use
+ * <code>canPack</code> if in doubt.
+ * <p>
+ * A packed position does not know its world. Keep positions from
+ * different worlds in different collections.
+ * <p>
+ * Chunks are packed into chunk keys: chunk x in the upper,
+ * chunk z in the lower 32 bits.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class PackedPosition {
+	public static final int BITS_X = 26;
+	public static final int BITS_Z = 26;
+	public static final int BITS_Y = 12;
+
+	public static final int MIN_XZ = -(1 << (BITS_X - 1));
+	public static final int MAX_XZ = (1 << (BITS_X - 1)) - 1;
+	public static final int MIN_Y = -(1 << (BITS_Y - 1));
+	public static final int MAX_Y = (1 << (BITS_Y - 1)) - 1;
+
+	private static final int SHIFT_X = BITS_Z + BITS_Y;
+	private static final int SHIFT_Z = BITS_Y;
+	private static final long MASK_X = (1L << BITS_X) - 1L;
+	private static final long MASK_Z = (1L << BITS_Z) - 1L;
+	private static final long MASK_Y = (1L << BITS_Y) - 1L;
+
+	/**
+	 * Packed position of the origin. Note that 0L is a valid position,
+	 * so it cannot be used as a "no position" marker.
+	 */
+	public static final long ORIGIN = 0L;
+
+	private PackedPosition() {
+		// static methods only
+	}
+
+	/**
+	 * Packs block coordinates into a long.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the packed position
+	 */
+	public static long pack(int x, int y, int z) {
+		return ((x & MASK_X) << SHIFT_X)
+		     | ((z & MASK_Z) << SHIFT_Z)
+		     |  (y & MASK_Y);
+	}
+
+	/**
+	 * Packs the block coordinates of a point.
+	 *
+	 * @param point
+	 * @return the packed position
+	 */
+	public static long pack(IFishyPoint point) {
+		return pack(point.getIntX(), point.getIntY(), point.getIntZ());
+	}
+
+	/**
+	 * Checks whether the coordinates survive a round trip through
+	 * <code>pack</code> and the getters.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return <code>true</code> if the coordinates are within range
+	 */
+	public static boolean canPack(int x, int y, int z) {
+		return x >= MIN_XZ && x <= MAX_XZ
+		    && z >= MIN_XZ && z <= MAX_XZ
+		    && y >= MIN_Y  && y <= MAX_Y;
+	}
+
+	public static int getX(long packed) {
+		return (int) (packed >> SHIFT_X);
+	}
+
+	public static int getY(long packed) {
+		return (int) (packed << (64 - BITS_Y) >> (64 - BITS_Y));
+	}
+
+	public static int getZ(long packed) {
+		return (int) (packed << BITS_X >> (64 - BITS_Z));
+	}
+
+	/**
+	 * Adds an offset to a packed position.
+	 *
+	 * @param packed
+	 * @param dx
+	 * @param dy
+	 * @param dz
+	 * @return the packed position of the offset block
+	 */
+	public static long offset(long packed, int dx, int dy, int dz) {
+		return pack(getX(packed) + dx, getY(packed) + dy, getZ(packed) + dz);
+	}
+
+	public static long offset(long packed, FishyVectorInt vector) {
+		return offset(packed, vector.getIntX(), vector.getIntY(), vector.getIntZ());
+	}
+
+	/**
+	 * Gets the adjacent block in the given direction. Only
+	 * UP, DOWN and the cardinal directions are supported.
+	 *
+	 * @param packed
+	 * @param direction
+	 * @return the packed position of the neighbour
+	 * @throws IllegalArgumentException for all other directions
+	 */
+	public static long neighbor(long packed, FishyDirection direction) {
+		switch (direction) {
+		case UP:    return offset(packed,  0,  1,  0);
+		case DOWN:  return offset(packed,  0, -1,  0);
+		case NORTH: return offset(packed,  0,  0, -1);
+		case EAST:  return offset(packed,  1,  0,  0);
+		case SOUTH: return offset(packed,  0,  0,  1);
+		case WEST:  return offset(packed, -1,  0,  0);
+		default:
+			throw new IllegalArgumentException("Not an axis-aligned direction: " + direction);
+		}
+	}
+
+	public static long up(long packed) {
+		return offset(packed, 0, 1, 0);
+	}
+
+	public static long down(long packed) {
+		return offset(packed, 0, -1, 0);
+	}
+
+	public static long north(long packed) {
+		return offset(packed, 0, 0, -1);
+	}
+
+	public static long east(long packed) {
+		return offset(packed, 1, 0, 0);
+	}
+
+	public static long south(long packed) {
+		return offset(packed, 0, 0, 1);
+	}
+
+	public static long west(long packed) {
+		return offset(packed, -1, 0, 0);
+	}
+
+	/**
+	 * Squared euclidean distance between two packed positions.
+	 *
+	 * @param a
+	 * @param b
+	 * @return the squared distance
+	 */
+	public static long distanceSquared(long a, long b) {
+		long dx = getX(a) - getX(b);
+		long dy = getY(a) - getY(b);
+		long dz = getZ(a) - getZ(b);
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	// ---- chunks ----
+
+	public static int getChunkX(long packed) {
+		return FishyChunk.worldToChunk(getX(packed));
+	}
+
+	public static int getChunkZ(long packed) {
+		return FishyChunk.worldToChunk(getZ(packed));
+	}
+
+	/**
+	 * Packs chunk coordinates into a chunk key.
+	 *
+	 * @param chunkX
+	 * @param chunkZ
+	 * @return the chunk key
+	 */
+	public static long packChunk(int chunkX, int chunkZ) {
+		return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Gets the key of the chunk that contains the packed position.
+	 *
+	 * @param packed
+	 * @return the chunk key
+	 */
+	public static long toChunkKey(long packed) {
+		return packChunk(getChunkX(packed), getChunkZ(packed));
+	}
+
+	public static int getChunkKeyX(long chunkKey) {
+		return (int) (chunkKey >> 32);
+	}
+
+	public static int getChunkKeyZ(long chunkKey) {
+		return (int) chunkKey;
+	}
+
+	// ---- conversion ----
+
+	public static FishyLocationInt toLocation(FishyWorld world, long packed) {
+		return new FishyLocationInt(world, getX(packed), getY(packed), getZ(packed));
+	}
+
+	public static FishyPointInt toPoint(long packed) {
+		return new FishyPointInt(getX(packed), getY(packed), getZ(packed));
+	}
+
+	public static long fromChunk(FishyChunk chunk) {
+		return packChunk(chunk.getChunkX(), chunk.getChunkZ());
+	}
+
+	public static FishyChunk toChunk(FishyWorld world, long chunkKey) {
+		return new FishyChunk(world, getChunkKeyX(chunkKey), getChunkKeyZ(chunkKey));
+	}
+
+	public static String toString(long packed) {
+		return "<"
+		       + getX(packed)
+		       + ", "
+		       + getY(packed)
+		       + ", "
+		       + getZ(packed)
+		       + ">";
+	}
+}
@@ -0,0 +1,468 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.gmx.nosefish.fishylib.datastructures.LongSet;
+import net.gmx.nosefish.fishylib.worldmath.CircleRunner.IRunnableSpan;
+import net.gmx.nosefish.fishylib.worldmath.CircleRunner.IRunnableXY;
+
+/**
+ * Precomputed point offsets of a shape around its centre. Computing a
+ * shape once and replaying it around different centres costs only
+ * the callback loop.
+ * <p>
+ * Use <code>get</code> to obtain stencils. It keeps recently used stencils
+ * in a cache bounded by the total number of offsets it holds. Stencils
+ * that would take up more than that are never cached; <code>CircleRunner</code>
+ * traces such shapes directly instead.
+ * <p>
+ * Offsets are stored interleaved in one int array: (x, y) pairs for the
+ * 2D shapes, (x, y, z) triplets for the 3D shapes. Each point appears
+ * exactly once. 2D shapes can also be replayed as horizontal spans,
+ * stored as (y, xStart, xEnd) triplets. Stencils are immutable and thread-safe.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class ShapeStencil {
+
+	public static enum Shape {
+		/** 2D circle outline, midpoint algorithm */
+		CIRCLE(2),
+		/** 2D filled circle, midpoint algorithm */
+		DISC(2),
+		/** filled ball */
+		SPHERE(3),
+		/** surface of a ball: the ball's blocks that have a face outside of it */
+		SHELL(3),
+		/** filled vertical cylinder, y from 0 to height - 1 */
+		CYLINDER(3),
+		/** vertical cylinder without top, bottom and interior */
+		TUBE(3);
+
+		private final int dimensions;
+
+		private Shape(int dimensions) {
+			this.dimensions = dimensions;
+		}
+
+		public int getDimensions() {
+			return dimensions;
+		}
+	}
+
+	/** The cache drops the least recently used stencils above this number of ints (offsets and spans). */
+	public static final int MAX_CACHED_OFFSETS = 1 << 20;
+
+	/** Radius and height must be below this. */
+	public static final int MAX_SIZE = 1 << 29;
+
+	private static final Map<Long, ShapeStencil> cache = new LinkedHashMap<>(16, 0.75F, true);
+	private static int cachedOffsets = 0;
+
+	private final Shape shape;
+	private final int radius;
+	private final int height;
+	private final int[] offsets;
+	// null for 3D shapes
+	private final int[] spans;
+
+	private ShapeStencil(Shape shape, int radius, int height, int[] offsets) {
+		this.shape = shape;
+		this.radius = radius;
+		this.height = height;
+		this.offsets = offsets;
+		this.spans = (shape.getDimensions() == 2) ? spans(offsets) : null;
+	}
+
+	/**
+	 * Gets the stencil for a shape. For cylinders and tubes the height is 1.
+	 *
+	 * @param shape
+	 * @param radius must not be negative
+	 * @return the (possibly cached) stencil
+	 */
+	public static ShapeStencil get(Shape shape, int radius) {
+		return get(shape, radius, 1);
+	}
+
+	/**
+	 * Gets the stencil for a shape.
+	 *
+	 * @param shape
+	 * @param radius must not be negative
+	 * @param height only used for cylinders and tubes, must be positive
+	 * @return the (possibly cached) stencil
+	 * @throws IllegalArgumentException if the arguments are out of range,
+	 *         or the stencil would not fit into an array
+	 */
+	public static ShapeStencil get(Shape shape, int radius, int height) {
+		height = checkArguments(shape, radius, height);
+		long weight = maxWeight(shape, radius, height);
+		if (weight > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Shape too large: " + shape + " r=" + radius + " h=" + height);
+		}
+		return get(shape, radius, height, weight <= MAX_CACHED_OFFSETS);
+	}
+
+	/**
+	 * Gets the stencil for a shape, unless it is too large to be cached.
+	 *
+	 * @param shape
+	 * @param radius must not be negative
+	 * @param height only used for cylinders and tubes, must be positive
+	 * @return the cached stencil, or <code>null</code> if the shape is too large
+	 */
+	static ShapeStencil getIfCacheable(Shape shape, int radius, int height) {
+		height = checkArguments(shape, radius, height);
+		if (maxWeight(shape, radius, height) > MAX_CACHED_OFFSETS) {
+			return null;
+		}
+		return get(shape, radius, height, true);
+	}
+
+	private static ShapeStencil get(Shape shape, int radius, int height, boolean cacheable) {
+		Long key = Long.valueOf(((long) shape.ordinal() << 58) | ((long) radius << 29) | height);
+		synchronized (cache) {
+			ShapeStencil stencil = cache.get(key);
+			if (stencil != null) {
+				return stencil;
+			}
+		}
+		// compute outside the lock, worst case two threads do it twice
+		ShapeStencil stencil = new ShapeStencil(shape, radius, height, compute(shape, radius, height));
+		synchronized (cache) {
+			if (cacheable && stencil.weight() <= MAX_CACHED_OFFSETS && ! cache.containsKey(key)) {
+				cache.put(key, stencil);
+				cachedOffsets += stencil.weight();
+				Iterator<ShapeStencil> lru = cache.values().iterator();
+				while (cachedOffsets > MAX_CACHED_OFFSETS && lru.hasNext()) {
+					cachedOffsets -= lru.next().weight();
+					lru.remove();
+				}
+			}
+		}
+		return stencil;
+	}
+
+	/**
+	 * @return the height to use for the shape
+	 */
+	private static int checkArguments(Shape shape, int radius, int height) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("Negative radius: " + radius);
+		}
+		if (radius >= MAX_SIZE) {
+			throw new IllegalArgumentException("Radius too large: " + radius);
+		}
+		if (shape != Shape.CYLINDER && shape != Shape.TUBE) {
+			return 1;
+		}
+		if (height < 1) {
+			throw new IllegalArgumentException("Height must be positive: " + height);
+		}
+		if (height >= MAX_SIZE) {
+			throw new IllegalArgumentException("Height too large: " + height);
+		}
+		return height;
+	}
+
+	/**
+	 * An upper bound of the weight of a stencil, computed without building it.
+	 */
+	private static long maxWeight(Shape shape, int radius, int height) {
+		long diameter = 2L * radius + 1;
+		// outline points, each with at most one span
+		long outline = 5 * (8L * radius + 8);
+		// every point with its offsets, and one span per row
+		long disc = 2 * diameter * diameter + 3 * diameter;
+		switch (shape) {
+		case CIRCLE:   return outline;
+		case DISC:     return disc;
+		// the unit cubes around the points lie within r + 0.5 + sqrt(3) / 2 of the centre
+		case SPHERE:   return 3 * (long) Math.ceil(4.0 / 3.0 * Math.PI * Math.pow(radius + 1.5, 3));
+		case SHELL:    return 3 * (long) Math.ceil(4.0 / 3.0 * Math.PI
+		                       * (Math.pow(radius + 1.5, 3) - Math.pow(Math.max(radius - 1.5, 0), 3)));
+		case CYLINDER: return Math.min(disc, Long.MAX_VALUE / 3 / height) * 3 / 2 * height;
+		case TUBE:     return outline * 3 / 5 * height;
+		default: throw new IllegalArgumentException("Unknown shape: " + shape);
+		}
+	}
+
+	/**
+	 * Empties the stencil cache.
+	 */
+	public static void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+			cachedOffsets = 0;
+		}
+	}
+
+	public Shape getShape() {
+		return shape;
+	}
+
+	public int getRadius() {
+		return radius;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of points in the shape
+	 */
+	public int size() {
+		return offsets.length / shape.getDimensions();
+	}
+
+	/**
+	 * @return a copy of the interleaved offsets
+	 */
+	public int[] getOffsets() {
+		return Arrays.copyOf(offsets, offsets.length);
+	}
+
+	/**
+	 * Runs <code>toRun</code> for every point of a 2D shape around the centre.
+	 *
+	 * @param centreX
+	 * @param centreY
+	 * @param toRun
+	 * @throws IllegalStateException if the shape is 3D
+	 */
+	public void replay(int centreX, int centreY, IRunnableXY toRun) {
+		if (shape.getDimensions() != 2) {
+			throw new IllegalStateException(shape + " is not a 2D shape");
+		}
+		int[] o = offsets;
+		for (int i = 0; i < o.length; i += 2) {
+			toRun.run(centreX + o[i], centreY + o[i + 1]);
+		}
+	}
+
+	/**
+	 * @return the number of spans of a 2D shape, 0 for 3D shapes
+	 */
+	public int getSpanCount() {
+		return (spans == null) ? 0 : spans.length / 3;
+	}
+
+	/**
+	 * Runs <code>toRun</code> for every horizontal run of adjacent points
+	 * of a 2D shape around the centre, ordered by y, then x.
+	 *
+	 * @param centreX
+	 * @param centreY
+	 * @param toRun
+	 * @throws IllegalStateException if the shape is 3D
+	 */
+	public void replaySpans(int centreX, int centreY, IRunnableSpan toRun) {
+		if (spans == null) {
+			throw new IllegalStateException(shape + " is not a 2D shape");
+		}
+		int[] s = spans;
+		for (int i = 0; i < s.length; i += 3) {
+			toRun.run(centreY + s[i], centreX + s[i + 1], centreX + s[i + 2]);
+		}
+	}
+
+	/**
+	 * Runs <code>toRun</code> for every point of the shape around the centre.
+	 * 2D shapes lie in the horizontal plane: their x is mapped to x,
+	 * their y to z.
+	 *
+	 * @param centreX
+	 * @param centreY
+	 * @param centreZ
+	 * @param toRun
+	 */
+	public void replay(int centreX, int centreY, int centreZ, IntTriConsumer toRun) {
+		int[] o = offsets;
+		if (shape.getDimensions() == 2) {
+			for (int i = 0; i < o.length; i += 2) {
+				toRun.accept(centreX + o[i], centreY, centreZ + o[i + 1]);
+			}
+		} else {
+			for (int i = 0; i < o.length; i += 3) {
+				toRun.accept(centreX + o[i], centreY + o[i + 1], centreZ + o[i + 2]);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ShapeStencil " + shape + " r=" + radius + " h=" + height + " (" + size() + " points)";
+	}
+
+	private int weight() {
+		return offsets.length + ((spans == null) ? 0 : spans.length);
+	}
+
+	// ---- computation ----
+
+	private static int[] compute(Shape shape, int radius, int height) {
+		switch (shape) {
+		case CIRCLE:   return circle(radius, false);
+		case DISC:     return circle(radius, true);
+		case SPHERE:   return ball(radius, false);
+		case SHELL:    return ball(radius, true);
+		case CYLINDER: return cylinder(radius, height, true);
+		case TUBE:     return cylinder(radius, height, false);
+		default: throw new IllegalArgumentException("Unknown shape: " + shape);
+		}
+	}
+
+	/**
+	 * Collects the points of the midpoint algorithm, without duplicates,
+	 * sorted by y, then x.
+	 */
+	private static int[] circle(int radius, final boolean fill) {
+		long expected = fill ? 4L * radius * radius + 8 : 8L * radius + 8;
+		final LongSet points = new LongSet((int) Math.min(expected, 1 << 20));
+		CircleRunner.traceCircle(0, 0, radius, fill, new IRunnableXY() {
+			@Override
+			public void run(int x, int y) {
+				// sorts by y, then x; x is recovered from the low 32 bits
+				points.add(((long) y << 32) + x);
+			}
+		});
+		long[] sorted = points.toArray();
+		Arrays.sort(sorted);
+		int[] offsets = new int[sorted.length * 2];
+		for (int i = 0; i < sorted.length; i++) {
+			int x = (int) sorted[i];
+			offsets[2 * i]     = x;
+			offsets[2 * i + 1] = (int) ((sorted[i] - x) >> 32);
+		}
+		return offsets;
+	}
+
+	/**
+	 * Merges adjacent points in the same row of 2D offsets
+	 * sorted by y, then x.
+	 */
+	private static int[] spans(int[] offsets) {
+		IntArrayBuilder builder = new IntArrayBuilder();
+		int i = 0;
+		while (i < offsets.length) {
+			int y = offsets[i + 1];
+			int xStart = offsets[i];
+			int xEnd = xStart;
+			i += 2;
+			while (i < offsets.length && offsets[i + 1] == y && offsets[i] == xEnd + 1) {
+				xEnd++;
+				i += 2;
+			}
+			builder.add(y, xStart, xEnd);
+		}
+		return builder.toArray();
+	}
+
+	private static int[] ball(int radius, boolean hollow) {
+		final IntArrayBuilder builder = new IntArrayBuilder();
+		traceBall(0, 0, 0, radius, hollow, new IntTriConsumer() {
+			@Override
+			public void accept(int x, int y, int z) {
+				builder.add(x, y, z);
+			}
+		});
+		return builder.toArray();
+	}
+
+	/**
+	 * Runs toRun for the blocks whose centre lies within radius + 0.5 of the
+	 * centre, i.e. x^2 + y^2 + z^2 &lt;= r^2 + r, or only for those of them
+	 * that have a face outside of the ball. Sorted by y, then z, then x.
+	 * Every block is visited exactly once, and no time is spent on blocks
+	 * that are skipped.
+	 */
+	static void traceBall(int centreX, int centreY, int centreZ, int radius, boolean hollow, IntTriConsumer toRun) {
+		long limit = (long) radius * radius + radius;
+		for (int y = -radius; y <= radius; y++) {
+			for (int z = -radius; z <= radius; z++) {
+				int halfWidth = ballHalfWidth(y, z, limit);
+				if (halfWidth < 0) {
+					continue;
+				}
+				// blocks with abs(x) <= inner have all six neighbours in the ball
+				int inner = -1;
+				if (hollow) {
+					inner = Math.min(halfWidth - 1,
+							Math.min(Math.min(ballHalfWidth(y + 1, z, limit), ballHalfWidth(y - 1, z, limit)),
+									Math.min(ballHalfWidth(y, z + 1, limit), ballHalfWidth(y, z - 1, limit))));
+				}
+				if (inner < 0) {
+					for (int x = -halfWidth; x <= halfWidth; x++) {
+						toRun.accept(centreX + x, centreY + y, centreZ + z);
+					}
+				} else {
+					for (int x = -halfWidth; x < -inner; x++) {
+						toRun.accept(centreX + x, centreY + y, centreZ + z);
+					}
+					for (int x = inner + 1; x <= halfWidth; x++) {
+						toRun.accept(centreX + x, centreY + y, centreZ + z);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the largest x with x^2 + y^2 + z^2 &lt;= limit, -1 if there is none
+	 */
+	private static int ballHalfWidth(long y, long z, long limit) {
+		long rest = limit - y * y - z * z;
+		if (rest < 0) {
+			return -1;
+		}
+		long x = (long) Math.sqrt(rest);
+		while (x * x > rest) {
+			x--;
+		}
+		while ((x + 1) * (x + 1) <= rest) {
+			x++;
+		}
+		return (int) x;
+	}
+
+	/**
+	 * Stacks circles or discs along y. Sorted by y, then z, then x.
+	 */
+	private static int[] cylinder(int radius, int height, boolean fill) {
+		int[] section = circle(radius, fill);
+		int[] offsets = new int[section.length / 2 * 3 * height];
+		int i = 0;
+		for (int y = 0; y < height; y++) {
+			for (int k = 0; k < section.length; k += 2) {
+				offsets[i++] = section[k];
+				offsets[i++] = y;
+				offsets[i++] = section[k + 1];
+			}
+		}
+		return offsets;
+	}
+
+	private static final class IntArrayBuilder {
+		private int[] data = new int[48];
+		private int size = 0;
+
+		void add(int x, int y, int z) {
+			if (size + 3 > data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			data[size++] = x;
+			data[size++] = y;
+			data[size++] = z;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+/**
+ * Exact voxel traversal (Amanatides and Woo, "A Fast Voxel Traversal
+ * Algorithm for Ray Tracing"). Visits every block a ray passes through
+ * exactly once, in order, without allocating anything per block.
+ * <p>
+ * Use it for line of sight, "what block is the player looking at" and
+ * projectile checks instead of stepping along the ray in small increments,
+ * which skips blocks the ray only clips and visits others repeatedly.
+ * <p>
+ * Where the ray passes exactly through an edge or corner, it moves along
+ * x first, then y, then z, so it never visits two blocks at once.
+ *
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public final class VoxelRay {
+
+	/**
+	 * Callback for the traversal.
+	 */
+	public static interface Visitor {
+		/**
+		 * @param x
+		 * @param y
+		 * @param z
+		 * @param entryFace the face of the block the ray entered through,
+		 *        e.g. <code>WEST</code> for a ray going east; <code>ERROR</code>
+		 *        for the block containing the origin
+		 * @param distance distance from the origin to the entry point, in blocks
+		 * @return <code>true</code> to continue the traversal, <code>false</code> to stop
+		 */
+		public boolean visit(int x, int y, int z, FishyDirection entryFace, double distance);
+	}
+
+	private VoxelRay() {
+		// static methods only
+	}
+
+	/**
+	 * Traverses the blocks along a ray.
+	 *
+	 * @param origin the start of the ray
+	 * @param direction the direction of the ray, any length except 0
+	 * @param maxDistance how far to follow the ray, in blocks, must not be negative
+	 * @param visitor called for every block
+	 * @return <code>true</code> if the visitor stopped the traversal
+	 * @throws IllegalArgumentException if the origin is outside the int range or not finite,
+	 *         the direction is 0 or not finite, or maxDistance is negative or not finite
+	 */
+	public static boolean traverse(IFishyPoint origin, FishyVector direction, double maxDistance, Visitor visitor) {
+		return traverse(origin.getDoubleX(), origin.getDoubleY(), origin.getDoubleZ(),
+				direction.getDoubleX(), direction.getDoubleY(), direction.getDoubleZ(),
+				maxDistance, visitor);
+	}
+
+	/**
+	 * Traverses the blocks along a ray.
+	 *
+	 * @param originX
+	 * @param originY
+	 * @param originZ
+	 * @param directionX
+	 * @param directionY
+	 * @param directionZ the direction of the ray, any length except 0
+	 * @param maxDistance how far to follow the ray, in blocks, must not be negative
+	 * @param visitor called for every block
+	 * @return <code>true</code> if the visitor stopped the traversal
+	 * @throws IllegalArgumentException if the origin is outside the int range or not finite,
+	 *         the direction is 0 or not finite, or maxDistance is negative or not finite
+	 */
+	public static boolean traverse(double originX, double originY, double originZ,
+			double directionX, double directionY, double directionZ,
+			double maxDistance, Visitor visitor) {
+		if (! isBlockCoordinate(originX) || ! isBlockCoordinate(originY) || ! isBlockCoordinate(originZ)) {
+			throw new IllegalArgumentException("Invalid ray origin: ("
+					+ originX + ", " + originY + ", " + originZ + ")");
+		}
+		// scaled first, so that large but finite components don't overflow the length
+		double scale = Math.max(Math.abs(directionX), Math.max(Math.abs(directionY), Math.abs(directionZ)));
+		if (! (scale > 0.0) || Double.isInfinite(scale)) {
+			throw new IllegalArgumentException("Invalid ray direction: <"
+					+ directionX + ", " + directionY + ", " + directionZ + ">");
+		}
+		if (! (maxDistance >= 0.0) || Double.isInfinite(maxDistance)) {
+			throw new IllegalArgumentException("Invalid maximum distance: " + maxDistance);
+		}
+		double sx = directionX / scale;
+		double sy = directionY / scale;
+		double sz = directionZ / scale;
+		double length = Math.sqrt(sx * sx + sy * sy + sz * sz);
+		// unit direction, so that the ray parameter t is the distance in blocks
+		double dx = sx / length;
+		double dy = sy / length;
+		double dz = sz / length;
+
+		int x = (int) Math.floor(originX);
+		int y = (int) Math.floor(originY);
+		int z = (int) Math.floor(originZ);
+
+		int stepX = (dx > 0.0) ? 1 : (dx < 0.0) ? -1 : 0;
+		int stepY = (dy > 0.0) ? 1 : (dy < 0.0) ? -1 : 0;
+		int stepZ = (dz > 0.0) ? 1 : (dz < 0.0) ? -1 : 0;
+
+		// distance between two block boundaries on each axis
+		double deltaX = (stepX == 0) ? Double.POSITIVE_INFINITY : Math.abs(1.0 / dx);
+		double deltaY = (stepY == 0) ? Double.POSITIVE_INFINITY : Math.abs(1.0 / dy);
+		double deltaZ = (stepZ == 0) ? Double.POSITIVE_INFINITY : Math.abs(1.0 / dz);
+
+		// distance to the next block boundary on each axis
+		double nextX = firstBoundary(originX, x, stepX, deltaX);
+		double nextY = firstBoundary(originY, y, stepY, deltaY);
+		double nextZ = firstBoundary(originZ, z, stepZ, deltaZ);
+
+		// a ray going +x enters through the west face, and so on
+		FishyDirection faceX = (stepX > 0) ? FishyDirection.WEST : FishyDirection.EAST;
+		FishyDirection faceY = (stepY > 0) ? FishyDirection.DOWN : FishyDirection.UP;
+		FishyDirection faceZ = (stepZ > 0) ? FishyDirection.NORTH : FishyDirection.SOUTH;
+
+		FishyDirection entryFace = FishyDirection.ERROR;
+		double distance = 0.0;
+		while (true) {
+			if (! visitor.visit(x, y, z, entryFace, distance)) {
+				return true;
+			}
+			if (nextX <= nextY && nextX <= nextZ) {
+				distance = nextX;
+				x += stepX;
+				nextX += deltaX;
+				entryFace = faceX;
+			} else if (nextY <= nextZ) {
+				distance = nextY;
+				y += stepY;
+				nextY += deltaY;
+				entryFace = faceY;
+			} else {
+				distance = nextZ;
+				z += stepZ;
+				nextZ += deltaZ;
+				entryFace = faceZ;
+			}
+			if (distance > maxDistance) {
+				return false;
+			}
+		}
+	}
+
+	private static boolean isBlockCoordinate(double coordinate) {
+		return coordinate >= Integer.MIN_VALUE && coordinate < Integer.MAX_VALUE + 1.0;
+	}
+
+	private static double firstBoundary(double origin, int block, int step, double delta) {
+		if (step > 0) {
+			return (block + 1 - origin) * delta;
+		} else if (step < 0) {
+			return (origin - block) * delta;
+		} else {
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+}
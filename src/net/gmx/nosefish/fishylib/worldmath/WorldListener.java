@@ -0,0 +1,62 @@
+package net.gmx.nosefish.fishylib.worldmath;
+
+import net.canarymod.Canary;
+import net.canarymod.hook.HookHandler;
+import net.canarymod.hook.world.ChunkLoadedHook;
+import net.canarymod.hook.world.ChunkUnloadHook;
+import net.canarymod.hook.world.LoadWorldHook;
+import net.canarymod.hook.world.UnloadWorldHook;
+import net.canarymod.plugin.Plugin;
+import net.canarymod.plugin.PluginListener;
+import net.canarymod.plugin.Priority;
+
+/**
+ * Keeps the registry of loaded worlds and chunks in <code>FishyWorld</code> up to date.
+ * Registered by FishyLib on enable; other plugins don't need to do anything.
+ * 
+ * @author Stefan Steinheimer (nosefish)
+ *
+ */
+public class WorldListener implements PluginListener {
+	
+	/**
+	 * Starts tracking worlds. Call from the server thread.
+	 * 
+	 * @param plugin the plugin to register the listener for
+	 */
+	public static void register(Plugin plugin) {
+		// listen first, then fill: both happen in the server thread, so no load is missed
+		Canary.hooks().registerListener(new WorldListener(), plugin);
+		FishyWorld.startTracking(Canary.getServer().getWorldManager().getAllWorlds());
+	}
+	
+	/**
+	 * Stops tracking worlds. Unregisters all listeners of the plugin.
+	 * 
+	 * @param plugin the plugin the listener was registered for
+	 */
+	public static void unregister(Plugin plugin) {
+		Canary.hooks().unregisterPluginListeners(plugin);
+		FishyWorld.stopTracking();
+	}
+	
+	@HookHandler(priority = Priority.PASSIVE)
+	public void onWorldLoad(LoadWorldHook hook) {
+		FishyWorld.worldLoaded(hook.getWorld());
+	}
+	
+	@HookHandler(priority = Priority.PASSIVE)
+	public void onWorldUnload(UnloadWorldHook hook) {
+		FishyWorld.worldUnloaded(hook.getWorld());
+	}
+	
+	@HookHandler(priority = Priority.PASSIVE)
+	public void onChunkLoaded(ChunkLoadedHook hook) {
+		FishyWorld.chunkLoaded(hook.getWorld(), hook.getChunk().getX(), hook.getChunk().getZ());
+	}
+	
+	@HookHandler(priority = Priority.PASSIVE)
+	public void onChunkUnload(ChunkUnloadHook hook) {
+		FishyWorld.chunkUnloaded(hook.getWorld(), hook.getChunk().getX(), hook.getChunk().getZ());
+	}
+}